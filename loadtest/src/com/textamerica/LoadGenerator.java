@@ -0,0 +1,517 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+
+/**
+ * Drives a mix of TextAmerica calls against a {@link StandInServer} and reports throughput and latency percentiles
+ * per method.
+ * <p/>
+ * The same seeded sequence of calls is run in four modes:
+ * <ul>
+ * <li>sequential - one call at a time on a single thread</li>
+ * <li>pooled - all calls submitted to a fixed thread pool</li>
+ * <li>async - non-blocking calls on {@link HttpClientXmlRpcTransport}, with a fixed number outstanding</li>
+ * <li>batched - calls submitted to the thread pool in batches, each batch finishing before the next starts</li>
+ * </ul>
+ * Run with <code>ant loadtest</code>, or directly with the options below:
+ * <pre>
+ * java com.textamerica.LoadGenerator [-calls 1000] [-threads 16] [-batch 50] [-seed 42]
+ *     [-latency 20] [-sigma 0.5] [-faults 0.01] [-bandwidth 0] [-port 18090] [-modes sequential,pooled,async,batched]
+ * </pre>
+ * <code>-latency</code> is the median server latency in milliseconds, <code>-sigma</code> the shape of its
+ * log-normal tail, <code>-faults</code> the fraction of calls that fail and <code>-bandwidth</code> the server's
+ * bandwidth cap in bytes per second.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class LoadGenerator {
+
+    private static final String API_KEY = "loadtest";
+    private static final String LOGIN = "loadtest";
+    private static final String PASSWORD = "loadtest";
+
+    private final TextAmerica4J textAmerica4J;
+    private final HttpClientXmlRpcTransport asyncTransport;
+    private final List operations;
+    private final int threads;
+    private final int batch;
+
+    /**
+     * Create a load generator
+     *
+     * @param url        Endpoint URL
+     * @param operations Sequence of {@link Operation}s to run in each mode
+     * @param threads    Number of threads, or outstanding calls in async mode
+     * @param batch      Number of calls in a batch
+     * @throws Exception If the URL is malformed
+     */
+    public LoadGenerator(String url, List operations, int threads, int batch) throws Exception {
+        this.textAmerica4J = new TextAmerica4J(API_KEY, LOGIN, PASSWORD, new HttpXmlRpcTransport(url));
+        this.asyncTransport = new HttpClientXmlRpcTransport(url);
+        this.operations = operations;
+        this.threads = threads;
+        this.batch = batch;
+    }
+
+    /**
+     * Run the calls one at a time
+     *
+     * @return Results of the run
+     */
+    public Report runSequential() {
+        Report report = new Report("sequential");
+
+        for (int i = 0; i < operations.size(); i++) {
+            call((Operation) operations.get(i), report);
+        }
+
+        return report.finish();
+    }
+
+    /**
+     * Run all the calls on a fixed thread pool
+     *
+     * @return Results of the run
+     * @throws Exception If the run is interrupted
+     */
+    public Report runPooled() throws Exception {
+        Report report = new Report("pooled");
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            executor.invokeAll(createTasks(operations, report));
+        } finally {
+            executor.shutdown();
+        }
+
+        return report.finish();
+    }
+
+    /**
+     * Run the calls in batches on a fixed thread pool
+     *
+     * @return Results of the run
+     * @throws Exception If the run is interrupted
+     */
+    public Report runBatched() throws Exception {
+        Report report = new Report("batched");
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            for (int i = 0; i < operations.size(); i += batch) {
+                List operationBatch = operations.subList(i, Math.min(i + batch, operations.size()));
+                executor.invokeAll(createTasks(operationBatch, report));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        return report.finish();
+    }
+
+    /**
+     * Run the calls without blocking a thread per call
+     *
+     * @return Results of the run
+     * @throws Exception If the run is interrupted
+     */
+    public Report runAsync() throws Exception {
+        final Report report = new Report("async");
+        final Semaphore outstanding = new Semaphore(threads);
+        final CountDownLatch finished = new CountDownLatch(operations.size());
+
+        for (int i = 0; i < operations.size(); i++) {
+            final Operation operation = (Operation) operations.get(i);
+            outstanding.acquire();
+
+            final long started = System.nanoTime();
+            CompletableFuture future;
+            try {
+                future = asyncTransport.executeAsync(operation.getMethodName(), createParameters(operation), CallOptions.DEFAULT);
+            } catch (Exception e) {
+                future = new CompletableFuture();
+                future.completeExceptionally(e);
+            }
+
+            future.whenComplete(new BiConsumer() {
+                public void accept(Object value, Object throwable) {
+                    report.record(operation.getMethodName(), System.nanoTime() - started, throwable == null);
+                    outstanding.release();
+                    finished.countDown();
+                }
+            });
+        }
+
+        finished.await();
+
+        return report.finish();
+    }
+
+    private List createTasks(List operations, final Report report) {
+        List tasks = new ArrayList(operations.size());
+
+        for (int i = 0; i < operations.size(); i++) {
+            final Operation operation = (Operation) operations.get(i);
+            tasks.add(new Callable() {
+                public Object call() {
+                    LoadGenerator.this.call(operation, report);
+                    return null;
+                }
+            });
+        }
+
+        return tasks;
+    }
+
+    private void call(Operation operation, Report report) {
+        long started = System.nanoTime();
+        boolean succeeded;
+
+        try {
+            operation.invoke(textAmerica4J);
+            succeeded = true;
+        } catch (Exception e) {
+            succeeded = false;
+        }
+
+        report.record(operation.getMethodName(), System.nanoTime() - started, succeeded);
+    }
+
+    /**
+     * Build the parameters of a call for the async transport, as the public method of the client would
+     */
+    private Vector createParameters(Operation operation) {
+        Vector parameters = textAmerica4J.prepareDefaultRequestParameters();
+        List arguments = operation.getArguments();
+        for (int i = 0; i < arguments.size(); i++) {
+            Object argument = arguments.get(i);
+            parameters.add((argument instanceof File) ? new FileParameter((File) argument) : argument);
+        }
+
+        return parameters;
+    }
+
+    /**
+     * Create a seeded sequence of calls, weighted towards the listing and entry calls a moblog client makes most
+     *
+     * @param calls Number of calls
+     * @param seed  Seed for choosing the calls
+     * @param image Image to upload with entry updates
+     * @return List of {@link Operation}s
+     */
+    public static List createWorkload(int calls, long seed, File image) {
+        Operation[] mix = new Operation[]{
+            new Operation(TextAmerica4J.TA_MOBLOG_GETMYMOBLOGS, new Object[]{}),
+            new Operation(TextAmerica4J.TA_MOBLOG_GETMYMOBLOGS, new Object[]{}),
+            new Operation(TextAmerica4J.TA_MOBLOG_GETCOMMUNITYMOBLOGS, new Object[]{"30"}),
+            new Operation(TextAmerica4J.TA_MOBLOG_GETCOMMUNITYMOBLOGS, new Object[]{"30"}),
+            new Operation(TextAmerica4J.TA_MOBLOG_CHANGETITLE, new Object[]{Integer.valueOf(1), "Load test"}),
+            new Operation(TextAmerica4J.TA_ENTRY_UPDATE, new Object[]{Integer.valueOf(1), Integer.valueOf(0), "Entry",
+                "Load test entry", Integer.valueOf(0), image, "JPG"}),
+            new Operation(TextAmerica4J.TA_ENTRY_DELETE, new Object[]{Integer.valueOf(1), Integer.valueOf(1)}),
+            new Operation(TextAmerica4J.TA_KEYWORDS_ADD, new Object[]{Integer.valueOf(1), "load,test"}),
+            new Operation(TextAmerica4J.TA_FAVORITES_ADDMOBLOG, new Object[]{Integer.valueOf(1),
+                "http://moblog2.textamerica.com"}),
+            new Operation(TextAmerica4J.TA_BOOKMARKS_ASSIGN, new Object[]{Integer.valueOf(1), Integer.valueOf(2)})
+        };
+
+        Random random = new Random(seed);
+        List operations = new ArrayList(calls);
+        for (int i = 0; i < calls; i++) {
+            operations.add(mix[random.nextInt(mix.length)]);
+        }
+
+        return Collections.unmodifiableList(operations);
+    }
+
+    /**
+     * Start a stand-in server and run the load test
+     *
+     * @param args Command line options
+     * @throws Exception If there is an error
+     */
+    public static void main(String[] args) throws Exception {
+        Hashtable options = new Hashtable();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("-")) {
+                throw new IllegalArgumentException("Expected an option but found: " + args[i]);
+            }
+            options.put(args[i].substring(1), args[i + 1]);
+        }
+
+        int calls = Integer.parseInt(getOption(options, "calls", "1000"));
+        int threads = Integer.parseInt(getOption(options, "threads", "16"));
+        int batch = Integer.parseInt(getOption(options, "batch", "50"));
+        long seed = Long.parseLong(getOption(options, "seed", "42"));
+        double latency = Double.parseDouble(getOption(options, "latency", "20"));
+        double sigma = Double.parseDouble(getOption(options, "sigma", "0.5"));
+        double faults = Double.parseDouble(getOption(options, "faults", "0.01"));
+        long bandwidth = Long.parseLong(getOption(options, "bandwidth", "0"));
+        int port = Integer.parseInt(getOption(options, "port", "18090"));
+        List modes = Arrays.asList(getOption(options, "modes", "sequential,pooled,async,batched").split(","));
+
+        File image = createImage(seed);
+        StandInServer server = new StandInServer(port, StandInServer.LatencyDistribution.logNormal(latency, sigma),
+                faults, bandwidth, seed);
+        server.start();
+
+        try {
+            LoadGenerator loadGenerator = new LoadGenerator(server.getURL(), createWorkload(calls, seed, image), threads, batch);
+
+            if (modes.contains("sequential")) {
+                loadGenerator.runSequential().print();
+            }
+            if (modes.contains("pooled")) {
+                loadGenerator.runPooled().print();
+            }
+            if (modes.contains("async")) {
+                loadGenerator.runAsync().print();
+            }
+            if (modes.contains("batched")) {
+                loadGenerator.runBatched().print();
+            }
+        } finally {
+            server.shutdown();
+            image.delete();
+        }
+
+        System.exit(0);
+    }
+
+    private static String getOption(Hashtable options, String name, String defaultValue) {
+        String value = (String) options.get(name);
+
+        return (value == null) ? defaultValue : value;
+    }
+
+    private static File createImage(long seed) throws Exception {
+        File image = File.createTempFile("loadtest", ".jpg");
+        image.deleteOnExit();
+
+        byte[] data = new byte[32 * 1024];
+        new Random(seed).nextBytes(data);
+        data[0] = (byte) 0xFF;
+        data[1] = (byte) 0xD8;
+        data[2] = (byte) 0xFF;
+
+        OutputStream out = new FileOutputStream(image);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+
+        return image;
+    }
+
+    /**
+     * A call in the workload: a method name and the arguments of the public {@link TextAmerica4J} method that
+     * makes it, in order
+     */
+    public static class Operation {
+
+        private final String methodName;
+        private final List arguments;
+
+        public Operation(String methodName, Object[] arguments) {
+            this.methodName = methodName;
+            this.arguments = Collections.unmodifiableList(Arrays.asList(arguments));
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public List getArguments() {
+            return arguments;
+        }
+
+        /**
+         * Make the call through the public method of the client that sends it
+         *
+         * @param textAmerica4J Client
+         * @return Response
+         * @throws Exception If there is an error
+         */
+        public Object invoke(TextAmerica4J textAmerica4J) throws Exception {
+            if (TextAmerica4J.TA_MOBLOG_GETMYMOBLOGS.equals(methodName)) {
+                return textAmerica4J.getMyMoblogs();
+            } else if (TextAmerica4J.TA_MOBLOG_GETCOMMUNITYMOBLOGS.equals(methodName)) {
+                return textAmerica4J.getCommunityMoblogs((String) arguments.get(0));
+            } else if (TextAmerica4J.TA_MOBLOG_CHANGETITLE.equals(methodName)) {
+                return textAmerica4J.changeTitle((Integer) arguments.get(0), (String) arguments.get(1));
+            } else if (TextAmerica4J.TA_ENTRY_UPDATE.equals(methodName)) {
+                return textAmerica4J.entryUpdate((Integer) arguments.get(0), (Integer) arguments.get(1),
+                        (String) arguments.get(2), (String) arguments.get(3), (Integer) arguments.get(4),
+                        (File) arguments.get(5), (String) arguments.get(6));
+            } else if (TextAmerica4J.TA_ENTRY_DELETE.equals(methodName)) {
+                return textAmerica4J.entryDelete((Integer) arguments.get(0), (Integer) arguments.get(1));
+            } else if (TextAmerica4J.TA_KEYWORDS_ADD.equals(methodName)) {
+                return textAmerica4J.addKeywords((Integer) arguments.get(0), (String) arguments.get(1));
+            } else if (TextAmerica4J.TA_FAVORITES_ADDMOBLOG.equals(methodName)) {
+                return textAmerica4J.favoritesAddMoblog((Integer) arguments.get(0), (String) arguments.get(1));
+            } else if (TextAmerica4J.TA_BOOKMARKS_ASSIGN.equals(methodName)) {
+                return textAmerica4J.bookmarksAssign((Integer) arguments.get(0), (Integer) arguments.get(1));
+            }
+
+            throw new UnsupportedOperationException("Load generator cannot call " + methodName);
+        }
+    }
+
+    /**
+     * Latencies and failures of a run, per method
+     */
+    public static class Report {
+
+        private final String mode;
+        private final Hashtable latencies = new Hashtable();
+        private final Hashtable failures = new Hashtable();
+        private final long started = System.nanoTime();
+        private long elapsed;
+        private int calls;
+
+        Report(String mode) {
+            this.mode = mode;
+        }
+
+        synchronized void record(String methodName, long latency, boolean succeeded) {
+            Vector methodLatencies = (Vector) latencies.get(methodName);
+            if (methodLatencies == null) {
+                methodLatencies = new Vector();
+                latencies.put(methodName, methodLatencies);
+                failures.put(methodName, Integer.valueOf(0));
+            }
+
+            methodLatencies.add(Long.valueOf(latency));
+            if (!succeeded) {
+                failures.put(methodName, Integer.valueOf(((Integer) failures.get(methodName)).intValue() + 1));
+            }
+            calls++;
+        }
+
+        synchronized Report finish() {
+            elapsed = System.nanoTime() - started;
+
+            return this;
+        }
+
+        /**
+         * @return Calls per second over the whole run
+         */
+        public synchronized double getThroughput() {
+            return (elapsed == 0) ? 0 : calls * 1e9 / elapsed;
+        }
+
+        /**
+         * Print throughput and, per method, the number of calls and failures and the p50, p90, p99 and maximum
+         * latencies in milliseconds
+         */
+        public synchronized void print() {
+            System.out.println();
+            System.out.println(mode + ": " + calls + " calls in " + (elapsed / 1000000) + " ms, "
+                    + Math.round(getThroughput()) + " calls/s");
+            System.out.println(pad("method", 32) + pad("calls", 8) + pad("faults", 8)
+                    + pad("p50", 8) + pad("p90", 8) + pad("p99", 8) + pad("max", 8));
+
+            List methodNames = new ArrayList();
+            Enumeration keys = latencies.keys();
+            while (keys.hasMoreElements()) {
+                methodNames.add(keys.nextElement());
+            }
+            Collections.sort(methodNames);
+
+            for (int i = 0; i < methodNames.size(); i++) {
+                String methodName = (String) methodNames.get(i);
+                long[] sorted = toSortedArray((Vector) latencies.get(methodName));
+
+                System.out.println(pad(methodName, 32) + pad(Integer.toString(sorted.length), 8)
+                        + pad(failures.get(methodName).toString(), 8)
+                        + pad(toMillis(percentile(sorted, 0.50)), 8)
+                        + pad(toMillis(percentile(sorted, 0.90)), 8)
+                        + pad(toMillis(percentile(sorted, 0.99)), 8)
+                        + pad(toMillis(sorted[sorted.length - 1]), 8));
+            }
+        }
+
+        private static long[] toSortedArray(Vector values) {
+            long[] sorted = new long[values.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = ((Long) values.get(i)).longValue();
+            }
+            Arrays.sort(sorted);
+
+            return sorted;
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+
+            return sorted[Math.max(0, index)];
+        }
+
+        private static String toMillis(long nanos) {
+            return Long.toString(Math.round(nanos / 1e6));
+        }
+
+        private static String pad(String value, int width) {
+            StringBuffer padded = new StringBuffer(value);
+            while (padded.length() < width) {
+                padded.append(' ');
+            }
+
+            return padded.append(' ').toString();
+        }
+    }
+}
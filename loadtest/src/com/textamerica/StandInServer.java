@@ -0,0 +1,392 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import org.apache.xmlrpc.WebServer;
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.XmlRpcHandler;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Hashtable;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process stand-in for the TextAmerica XML-RPC API, for load testing without the live service.
+ * <p/>
+ * Every <code>ta.*</code> method called by {@link TextAmerica4J} is implemented with a plausible response:
+ * listings of generated moblogs, new IDs from counters for updates, and "OK" for the other calls. Each call can be
+ * delayed by a latency distribution, failed with an XML-RPC fault at a given rate, and slowed to a bandwidth cap
+ * based on the size of its parameters. Latencies and faults are drawn from a seeded generator, so a run with the
+ * same seed and the same sequence of calls behaves the same way.
+ * <p/>
+ * Parameters are checked against the signature of each method in the API: the API key, login and password
+ * followed by the method's own parameters. A call with the wrong number or types of parameters always fails with
+ * a fault, so a client that sends the wrong arguments is caught rather than measured.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class StandInServer implements XmlRpcHandler {
+
+    private static final int COMMUNITY_MOBLOGS = 1000;
+    private static final int DEFAULT_COMMUNITY_MOBLOGS = 30;
+    private static final String DEFAULT_SIGNATURE = "sss";
+    private static final long START_TIMEOUT = 5000;
+
+    // Signature of each method after the API key, login and password: i for an int, s for a string and b for
+    // base64 data. Alternative signatures are separated by |.
+    private static final Hashtable SIGNATURES = new Hashtable();
+
+    static {
+        SIGNATURES.put(TextAmerica4J.TA_MOBLOG_GETMYMOBLOGS, "");
+        SIGNATURES.put(TextAmerica4J.TA_MOBLOG_GETCOMMUNITYMOBLOGS, "|s");
+        SIGNATURES.put(TextAmerica4J.TA_MOBLOG_UPDATE, "issssss");
+        SIGNATURES.put(TextAmerica4J.TA_MOBLOG_CHANGETITLE, "is");
+        SIGNATURES.put(TextAmerica4J.TA_MOBLOG_CHANGETEXT, "is");
+        SIGNATURES.put(TextAmerica4J.TA_MOBLOG_CHANGEDOMAIN, "is");
+        SIGNATURES.put(TextAmerica4J.TA_MOBLOG_CHANGESECRETWORD, "is");
+        SIGNATURES.put(TextAmerica4J.TA_ENTRY_UPDATE, "iissibs");
+        SIGNATURES.put(TextAmerica4J.TA_ENTRY_DELETE, "ii");
+        SIGNATURES.put(TextAmerica4J.TA_KEYWORDS_ADD, "is");
+        SIGNATURES.put(TextAmerica4J.TA_FAVORITES_UPDATE, "is");
+        SIGNATURES.put(TextAmerica4J.TA_FAVORITES_DELETE, "is");
+        SIGNATURES.put(TextAmerica4J.TA_FAVORITES_ASSIGN, "ii");
+        SIGNATURES.put(TextAmerica4J.TA_FAVORITES_ADDMOBLOG, "is");
+        SIGNATURES.put(TextAmerica4J.TA_FAVORITES_REMOVEMOBLOG, "is");
+        SIGNATURES.put(TextAmerica4J.TA_BOOKMARKS_UPDATE, "is");
+        SIGNATURES.put(TextAmerica4J.TA_BOOKMARKS_ASSIGN, "ii");
+        SIGNATURES.put(TextAmerica4J.TA_BOOKMARKS_UNASSIGN, "ii");
+        SIGNATURES.put(TextAmerica4J.TA_BOOKMARKS_DELETE, "i");
+        SIGNATURES.put(TextAmerica4J.TA_BOOKMARKS_UPDATEURL, "is");
+        SIGNATURES.put(TextAmerica4J.TA_BOOKMARKS_REMOVEURL, "is");
+        SIGNATURES.put(TextAmerica4J.TA_TEMPLATE_UPDATESECTION, "iss");
+        SIGNATURES.put(TextAmerica4J.TA_TEMPLATE_SETTEMPLATE, "iii");
+    }
+
+    private final int port;
+    private final LatencyDistribution latencyDistribution;
+    private final double faultRate;
+    private final long bytesPerSecond;
+    private final Random random;
+
+    private WebServer webServer;
+    private int nextID = 1000;
+
+    /**
+     * Create a stand-in server
+     *
+     * @param port                Port to listen on
+     * @param latencyDistribution Distribution of the latency added to each call
+     * @param faultRate           Fraction of calls, from 0 to 1, that fail with a fault
+     * @param bytesPerSecond      Bandwidth cap for request parameters, 0 for no cap
+     * @param seed                Seed for latencies and faults
+     */
+    public StandInServer(int port, LatencyDistribution latencyDistribution, double faultRate, long bytesPerSecond, long seed) {
+        this.port = port;
+        this.latencyDistribution = latencyDistribution;
+        this.faultRate = faultRate;
+        this.bytesPerSecond = bytesPerSecond;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Start listening. The server binds its port on its own listener thread, so this waits until the port is bound;
+     * otherwise a call made straight after starting could be refused.
+     */
+    public synchronized void start() {
+        final CountDownLatch bound = new CountDownLatch(1);
+        webServer = new WebServer(port) {
+            protected ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws Exception {
+                ServerSocket serverSocket = super.createServerSocket(port, backlog, address);
+                bound.countDown();
+                return serverSocket;
+            }
+        };
+        webServer.addHandler("$default", this);
+        webServer.start();
+
+        try {
+            if (!bound.await(START_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Stand-in server did not start listening on port " + port);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stop listening
+     */
+    public synchronized void shutdown() {
+        if (webServer != null) {
+            webServer.shutdown();
+            webServer = null;
+        }
+    }
+
+    /**
+     * @return Endpoint URL of the server
+     */
+    public String getURL() {
+        return "http://localhost:" + port + "/";
+    }
+
+    public Object execute(String methodName, Vector parameters) throws Exception {
+        checkParameters(methodName, parameters);
+
+        long latency;
+        boolean fault;
+        synchronized (random) {
+            latency = latencyDistribution.sample(random);
+            fault = random.nextDouble() < faultRate;
+        }
+
+        long delay = latency;
+        if (bytesPerSecond > 0) {
+            delay += sizeOf(parameters) * 1000L / bytesPerSecond;
+        }
+
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+
+        if (fault) {
+            throw new XmlRpcException(1, "Injected fault for " + methodName);
+        }
+
+        return respond(methodName, parameters);
+    }
+
+    private Object respond(String methodName, Vector parameters) throws XmlRpcException {
+        if (TextAmerica4J.TA_MOBLOG_GETMYMOBLOGS.equals(methodName)) {
+            return createMoblogs(3, false);
+        } else if (TextAmerica4J.TA_MOBLOG_GETCOMMUNITYMOBLOGS.equals(methodName)) {
+            return createMoblogs(getCommunityMoblogCount(parameters), true);
+        } else if (TextAmerica4J.TA_MOBLOG_UPDATE.equals(methodName)
+                || TextAmerica4J.TA_MOBLOG_CHANGETITLE.equals(methodName)
+                || TextAmerica4J.TA_MOBLOG_CHANGETEXT.equals(methodName)
+                || TextAmerica4J.TA_MOBLOG_CHANGEDOMAIN.equals(methodName)
+                || TextAmerica4J.TA_MOBLOG_CHANGESECRETWORD.equals(methodName)) {
+            return parameters.get(3).toString();
+        } else if (TextAmerica4J.TA_ENTRY_UPDATE.equals(methodName)
+                || TextAmerica4J.TA_FAVORITES_UPDATE.equals(methodName)
+                || TextAmerica4J.TA_BOOKMARKS_UPDATE.equals(methodName)) {
+            return Integer.toString(createID());
+        } else if (TextAmerica4J.TA_ENTRY_DELETE.equals(methodName)
+                || TextAmerica4J.TA_KEYWORDS_ADD.equals(methodName)
+                || TextAmerica4J.TA_FAVORITES_DELETE.equals(methodName)
+                || TextAmerica4J.TA_FAVORITES_ASSIGN.equals(methodName)
+                || TextAmerica4J.TA_FAVORITES_ADDMOBLOG.equals(methodName)
+                || TextAmerica4J.TA_FAVORITES_REMOVEMOBLOG.equals(methodName)
+                || TextAmerica4J.TA_BOOKMARKS_ASSIGN.equals(methodName)
+                || TextAmerica4J.TA_BOOKMARKS_UNASSIGN.equals(methodName)
+                || TextAmerica4J.TA_BOOKMARKS_DELETE.equals(methodName)
+                || TextAmerica4J.TA_BOOKMARKS_UPDATEURL.equals(methodName)
+                || TextAmerica4J.TA_BOOKMARKS_REMOVEURL.equals(methodName)
+                || TextAmerica4J.TA_TEMPLATE_UPDATESECTION.equals(methodName)
+                || TextAmerica4J.TA_TEMPLATE_SETTEMPLATE.equals(methodName)) {
+            return TextAmerica4J.OK;
+        }
+
+        throw new XmlRpcException(0, "Unknown method: " + methodName);
+    }
+
+    /**
+     * Check the parameters of a call against the signature of its method
+     *
+     * @throws XmlRpcException If the method is unknown or the parameters do not match its signature
+     */
+    private static void checkParameters(String methodName, Vector parameters) throws XmlRpcException {
+        String signatures = (String) SIGNATURES.get(methodName);
+        if (signatures == null) {
+            throw new XmlRpcException(0, "Unknown method: " + methodName);
+        }
+
+        String[] alternatives = signatures.split("\\|", -1);
+        for (int i = 0; i < alternatives.length; i++) {
+            if (matches(DEFAULT_SIGNATURE + alternatives[i], parameters)) {
+                return;
+            }
+        }
+
+        throw new XmlRpcException(0, "Wrong parameters for " + methodName + ": " + describe(parameters));
+    }
+
+    private static boolean matches(String signature, Vector parameters) {
+        if (parameters.size() != signature.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < signature.length(); i++) {
+            Object parameter = parameters.get(i);
+            switch (signature.charAt(i)) {
+                case 'i':
+                    if (!(parameter instanceof Integer)) {
+                        return false;
+                    }
+                    break;
+                case 'b':
+                    if (!(parameter instanceof byte[]) && !(parameter instanceof String)) {
+                        return false;
+                    }
+                    break;
+                default:
+                    if (!(parameter instanceof String)) {
+                        return false;
+                    }
+            }
+        }
+
+        return true;
+    }
+
+    private static String describe(Vector parameters) {
+        StringBuffer description = new StringBuffer("(");
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) {
+                description.append(", ");
+            }
+            Object parameter = parameters.get(i);
+            description.append((parameter == null) ? "null" : parameter.getClass().getName());
+        }
+
+        return description.append(")").toString();
+    }
+
+    private synchronized int createID() {
+        return nextID++;
+    }
+
+    private static int getCommunityMoblogCount(Vector parameters) {
+        if (parameters.size() < 4) {
+            return DEFAULT_COMMUNITY_MOBLOGS;
+        }
+
+        String which = parameters.get(3).toString();
+        if ("all".equalsIgnoreCase(which)) {
+            return COMMUNITY_MOBLOGS;
+        }
+
+        try {
+            return Math.min(COMMUNITY_MOBLOGS, Integer.parseInt(which));
+        } catch (NumberFormatException e) {
+            return DEFAULT_COMMUNITY_MOBLOGS;
+        }
+    }
+
+    private static Vector createMoblogs(int count, boolean community) {
+        Vector moblogs = new Vector(count);
+
+        for (int i = 1; i <= count; i++) {
+            Hashtable moblog = new Hashtable();
+            moblog.put("MoblogID", Integer.valueOf(i));
+            moblog.put("title", "Moblog " + i);
+            moblog.put("url", "http://moblog" + i + ".textamerica.com");
+            if (community) {
+                moblog.put("postTo", "moblog" + i + "@textamerica.com");
+            }
+            moblogs.add(moblog);
+        }
+
+        return moblogs;
+    }
+
+    private static long sizeOf(Vector parameters) {
+        long size = 0;
+
+        for (int i = 0; i < parameters.size(); i++) {
+            Object parameter = parameters.get(i);
+            size += (parameter instanceof byte[]) ? ((byte[]) parameter).length : String.valueOf(parameter).length();
+        }
+
+        return size;
+    }
+
+    /**
+     * Distribution of the latency added to each call
+     */
+    public abstract static class LatencyDistribution {
+
+        /**
+         * Draw a latency
+         *
+         * @param random Seeded random number generator
+         * @return Latency in milliseconds
+         */
+        public abstract long sample(Random random);
+
+        /**
+         * @param latency Latency in milliseconds
+         * @return Distribution that always returns the same latency
+         */
+        public static LatencyDistribution fixed(final long latency) {
+            return new LatencyDistribution() {
+                public long sample(Random random) {
+                    return latency;
+                }
+            };
+        }
+
+        /**
+         * @param minimum Minimum latency in milliseconds
+         * @param maximum Maximum latency in milliseconds
+         * @return Distribution with latencies spread evenly between the minimum and maximum
+         */
+        public static LatencyDistribution uniform(final long minimum, final long maximum) {
+            return new LatencyDistribution() {
+                public long sample(Random random) {
+                    return minimum + (long) (random.nextDouble() * (maximum - minimum));
+                }
+            };
+        }
+
+        /**
+         * @param median Median latency in milliseconds
+         * @param sigma  Shape of the distribution; larger values give a longer tail
+         * @return Log-normal distribution, which has the long tail of real service latencies
+         */
+        public static LatencyDistribution logNormal(final double median, final double sigma) {
+            return new LatencyDistribution() {
+                public long sample(Random random) {
+                    return Math.round(median * Math.exp(sigma * random.nextGaussian()));
+                }
+            };
+        }
+    }
+}
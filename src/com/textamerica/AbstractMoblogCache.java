@@ -0,0 +1,274 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Base class for local {@link MoblogCache} backends. Listings expire a fixed time after they are stored, and the
+ * least recently used listings are removed once the total size of the cache exceeds its maximum. One generation is
+ * kept for the whole cache, so any invalidation or eviction drops the listings being read through it. Subclasses
+ * decide how listings are stored and how their size is measured.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public abstract class AbstractMoblogCache implements MoblogCache {
+
+    private final long timeToLive;
+    private final long maximumSize;
+    private final LinkedHashMap entries = new LinkedHashMap(16, 0.75f, true);
+    private final Vector invalidationListeners = new Vector();
+
+    private long size;
+    private long generation;
+
+    /**
+     * Create a cache
+     *
+     * @param timeToLive  Time in milliseconds a listing is kept after it is stored
+     * @param maximumSize Maximum total size of the stored listings, as measured by {@link #sizeOf(Object)}
+     */
+    protected AbstractMoblogCache(long timeToLive, long maximumSize) {
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("Time to live must be positive");
+        }
+
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+
+        this.timeToLive = timeToLive;
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Convert a listing to the form in which it is stored
+     *
+     * @param value Listing
+     * @return Stored form of the listing
+     */
+    protected abstract Object store(Object value);
+
+    /**
+     * Convert a stored listing back to a listing for a caller
+     *
+     * @param stored Stored form of the listing
+     * @return Listing
+     */
+    protected abstract Object load(Object stored);
+
+    /**
+     * @param stored Stored form of a listing
+     * @return Size of the stored listing
+     */
+    protected abstract long sizeOf(Object stored);
+
+    public Object get(String group, String key) {
+        Object stored;
+
+        synchronized (this) {
+            Key entryKey = new Key(group, key);
+            Entry entry = (Entry) entries.get(entryKey);
+            if (entry == null) {
+                return null;
+            }
+
+            if (entry.expires <= System.currentTimeMillis()) {
+                entries.remove(entryKey);
+                size -= entry.size;
+                return null;
+            }
+
+            stored = entry.stored;
+        }
+
+        return load(stored);
+    }
+
+    public void put(String group, String key, Object value) {
+        Object stored = store(value);
+        long storedSize = sizeOf(stored);
+        if (storedSize > maximumSize) {
+            return;
+        }
+
+        synchronized (this) {
+            add(group, key, stored, storedSize);
+        }
+    }
+
+    public synchronized long getGeneration(String group, String key) {
+        return generation;
+    }
+
+    public boolean put(String group, String key, Object value, long generation) {
+        Object stored = store(value);
+        long storedSize = sizeOf(stored);
+        if (storedSize > maximumSize) {
+            return false;
+        }
+
+        synchronized (this) {
+            if (this.generation != generation) {
+                return false;
+            }
+
+            add(group, key, stored, storedSize);
+        }
+
+        return true;
+    }
+
+    /**
+     * Add a stored listing and remove the least recently used listings over the maximum size. Called with the lock
+     * held.
+     */
+    private void add(String group, String key, Object stored, long storedSize) {
+        Entry previous = (Entry) entries.put(new Key(group, key),
+                new Entry(stored, storedSize, System.currentTimeMillis() + timeToLive));
+        if (previous != null) {
+            size -= previous.size;
+        }
+        size += storedSize;
+
+        Iterator iterator = entries.values().iterator();
+        while (size > maximumSize && iterator.hasNext()) {
+            Entry eldest = (Entry) iterator.next();
+            iterator.remove();
+            size -= eldest.size;
+        }
+    }
+
+    public void invalidate(String group, String key) {
+        evict(group, key);
+        fireInvalidated(group, key);
+    }
+
+    public synchronized void evict(String group, String key) {
+        generation++;
+
+        Iterator iterator = entries.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            Map.Entry mapEntry = (Map.Entry) iterator.next();
+            Key entryKey = (Key) mapEntry.getKey();
+            if (entryKey.group.equals(group) && (key == null || entryKey.key.equals(key))) {
+                size -= ((Entry) mapEntry.getValue()).size;
+                iterator.remove();
+            }
+        }
+    }
+
+    public void addInvalidationListener(InvalidationListener invalidationListener) {
+        invalidationListeners.add(invalidationListener);
+    }
+
+    public void removeInvalidationListener(InvalidationListener invalidationListener) {
+        invalidationListeners.remove(invalidationListener);
+    }
+
+    /**
+     * Notify the invalidation listeners
+     *
+     * @param group Group of the listing
+     * @param key   Key of the listing within the group, or <code>null</code> for every listing in the group
+     */
+    protected void fireInvalidated(String group, String key) {
+        Object[] listeners = invalidationListeners.toArray();
+
+        for (int i = 0; i < listeners.length; i++) {
+            ((InvalidationListener) listeners[i]).invalidated(group, key);
+        }
+    }
+
+    /**
+     * @return Number of listings stored, including any that have expired but not yet been removed
+     */
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return Total size of the stored listings
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    private static class Key {
+
+        final String group;
+        final String key;
+
+        Key(String group, String key) {
+            if (group == null || key == null) {
+                throw new IllegalArgumentException("Group and key cannot be null");
+            }
+
+            this.group = group;
+            this.key = key;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) o;
+            return group.equals(other.group) && key.equals(other.key);
+        }
+
+        public int hashCode() {
+            return group.hashCode() * 31 + key.hashCode();
+        }
+    }
+
+    private static class Entry {
+
+        final Object stored;
+        final long size;
+        final long expires;
+
+        Entry(Object stored, long size, long expires) {
+            this.stored = stored;
+            this.size = size;
+            this.expires = expires;
+        }
+    }
+}
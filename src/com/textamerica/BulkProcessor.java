@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * {@link Flow.Processor} that applies a TextAmerica call to every item it receives and publishes the results.
+ * <p/>
+ * Items are requested from upstream one at a time, and the next item is only requested once the remote call
+ * for the current item has returned and its result has been accepted downstream. Input is therefore pulled
+ * no faster than the TextAmerica moblog service and the downstream subscribers can take it. The first failed
+ * call cancels the upstream subscription and completes the processor exceptionally. Calls returning
+ * <code>null</code> publish nothing. Items that arrive after the processor has been closed are ignored.
+ * <p/>
+ * Results are delivered to subscribers on the executor given when the processor is created; there is no
+ * default, so that bulk calls never run on a pool shared with unrelated work.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public abstract class BulkProcessor extends SubmissionPublisher<Object> implements Flow.Processor<Object, Object> {
+
+    protected final TextAmerica4J textAmerica4J;
+
+    private Flow.Subscription subscription;
+
+    /**
+     * Create a processor for a given {@link TextAmerica4J} instance
+     *
+     * @param textAmerica4J {@link TextAmerica4J} instance
+     * @param executor      Executor used to deliver results to subscribers
+     */
+    protected BulkProcessor(TextAmerica4J textAmerica4J, Executor executor) {
+        super(executor, Flow.defaultBufferSize());
+
+        this.textAmerica4J = textAmerica4J;
+    }
+
+    /**
+     * Apply the remote call for a single item
+     *
+     * @param item Item received from upstream
+     * @return Result of the remote call
+     * @throws Exception If there is an error
+     */
+    protected abstract Object process(Object item) throws Exception;
+
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    public void onNext(Object item) {
+        if (isClosed()) {
+            subscription.cancel();
+            return;
+        }
+
+        Object result;
+        try {
+            result = process(item);
+        } catch (Exception e) {
+            subscription.cancel();
+            closeExceptionally(e);
+            return;
+        }
+
+        if (isClosed()) {
+            subscription.cancel();
+            return;
+        }
+
+        if (result != null) {
+            submit(result);
+        }
+
+        subscription.request(1);
+    }
+
+    public void onError(Throwable throwable) {
+        closeExceptionally(throwable);
+    }
+
+    public void onComplete() {
+        close();
+    }
+
+    /**
+     * Create a processor that calls {@link TextAmerica4J#entryUpdate(int, int, String, String, int, java.io.File, String)}
+     * for each {@link EntryUpdate} it receives and publishes the returned entry IDs
+     *
+     * @param textAmerica4J {@link TextAmerica4J} instance
+     * @param executor      Executor used to deliver results to subscribers
+     * @return Processor for entry updates
+     */
+    public static BulkProcessor entryUpdate(TextAmerica4J textAmerica4J, Executor executor) {
+        return new BulkProcessor(textAmerica4J, executor) {
+            protected Object process(Object item) throws Exception {
+                return ((EntryUpdate) item).execute(this.textAmerica4J);
+            }
+        };
+    }
+
+    /**
+     * Create a processor that calls {@link TextAmerica4J#favoritesAddMoblog(int, String)} for each moblog URL it
+     * receives and publishes the responses
+     *
+     * @param textAmerica4J {@link TextAmerica4J} instance
+     * @param listID        ID associated with the list. Use 0 to assign "My Favorites".
+     * @param executor      Executor used to deliver results to subscribers
+     * @return Processor for adding moblogs to a Favorites List
+     */
+    public static BulkProcessor favoritesAddMoblog(TextAmerica4J textAmerica4J, final int listID, Executor executor) {
+        return new BulkProcessor(textAmerica4J, executor) {
+            protected Object process(Object item) throws Exception {
+                return this.textAmerica4J.favoritesAddMoblog(listID, (String) item);
+            }
+        };
+    }
+}
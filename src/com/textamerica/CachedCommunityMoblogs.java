@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Serves the "all" community moblog listing from an on-disk {@link MoblogSnapshot}.
+ * <p/>
+ * On startup, {@link #open(Executor)} maps the last snapshot, which is available immediately, and revalidates
+ * it in the background by retrieving the full listing from the TextAmerica moblog service and writing a new
+ * snapshot. Readers see the previous snapshot until the new one has been written. A snapshot that cannot be read,
+ * such as one left corrupt by a failing disk, is discarded, and readers see no moblogs until revalidation
+ * completes. Refreshes are serialized, so each snapshot published is one complete listing.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class CachedCommunityMoblogs {
+
+    private static final String ALL = "all";
+
+    private final TextAmerica4J textAmerica4J;
+    private final File snapshotFile;
+
+    private volatile MoblogSnapshot snapshot;
+
+    /**
+     * Create a cached community moblog listing
+     *
+     * @param textAmerica4J {@link TextAmerica4J} instance
+     * @param snapshotFile  File where the snapshot is kept
+     */
+    public CachedCommunityMoblogs(TextAmerica4J textAmerica4J, File snapshotFile) {
+        this.textAmerica4J = textAmerica4J;
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * Load the existing snapshot, if there is one, and revalidate it in the background
+     *
+     * @param executor Executor used to revalidate the snapshot
+     * @return Future for the revalidated snapshot
+     * @throws IOException If an existing snapshot cannot be read and cannot be deleted
+     */
+    public Future open(Executor executor) throws IOException {
+        if (snapshotFile.exists()) {
+            try {
+                snapshot = MoblogSnapshot.load(snapshotFile);
+            } catch (IOException e) {
+                if (!snapshotFile.delete()) {
+                    throw e;
+                }
+            }
+        }
+
+        FutureTask revalidation = new FutureTask(new Callable() {
+            public Object call() throws Exception {
+                return refresh();
+            }
+        });
+        executor.execute(revalidation);
+
+        return revalidation;
+    }
+
+    /**
+     * Retrieve all community moblogs from the TextAmerica moblog service and replace the snapshot
+     *
+     * @return New snapshot
+     * @throws Exception If there is an error
+     */
+    public synchronized MoblogSnapshot refresh() throws Exception {
+        long created = System.currentTimeMillis();
+        Vector moblogs = textAmerica4J.getCommunityMoblogs(ALL);
+
+        MoblogSnapshot.write(moblogs, created, snapshotFile);
+        snapshot = MoblogSnapshot.load(snapshotFile);
+
+        return snapshot;
+    }
+
+    /**
+     * @return Current snapshot or <code>null</code> if none has been loaded yet
+     */
+    public MoblogSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Retrieve a moblog from the current snapshot
+     *
+     * @param moblogID Moblog ID
+     * @return Hashtable with the keys "MoblogID", "title", "url" and "postTo", or <code>null</code> if the moblog
+     *         is not in the snapshot
+     */
+    public Hashtable getMoblog(int moblogID) {
+        MoblogSnapshot current = snapshot;
+
+        return (current == null) ? null : current.getMoblog(moblogID);
+    }
+
+    /**
+     * Decode every moblog in the current snapshot
+     *
+     * @return Vector of Hashtables with the keys "MoblogID", "title", "url" and "postTo"
+     */
+    public Vector getMoblogs() {
+        MoblogSnapshot current = snapshot;
+
+        return (current == null) ? new Vector() : current.toVector();
+    }
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+/**
+ * Options that apply to individual calls made through {@link TextAmerica4J}, such as the time budget for a call.
+ * <p/>
+ * Options are immutable. Each <code>with</code> method returns a copy with the one option changed. Apply them to
+ * calls with {@link TextAmerica4J#withCallOptions(CallOptions)}. Options are honored by {@link XmlRpcTransport}
+ * implementations and ignored by other transports.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class CallOptions {
+
+    /**
+     * Value returned by {@link #getDeadline(long)} when a call has no time budget
+     */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /**
+     * Options with no timeout and no deadline
+     */
+    public static final CallOptions DEFAULT = new CallOptions(0, 0, NO_DEADLINE, null, null, null, 0);
+
+    // Budgets longer than about 73 years are treated as no deadline, so converting them to nanoseconds cannot overflow
+    private static final long MAXIMUM_BUDGET = Long.MAX_VALUE / 4 / 1000000L;
+
+    private final long timeout;
+    private final long deadline;
+    // Deadline of a call in progress in System.nanoTime() terms, set by withDeadlineFrom so it is converted only once
+    private final long fixedDeadline;
+    private final CallPriority priority;
+    private final UploadListener uploadListener;
+    private final TraceListener traceListener;
+    private final double traceSamplingRate;
+
+    private CallOptions(long timeout, long deadline, long fixedDeadline, CallPriority priority,
+                        UploadListener uploadListener, TraceListener traceListener, double traceSamplingRate) {
+        this.timeout = timeout;
+        this.deadline = deadline;
+        this.fixedDeadline = fixedDeadline;
+        this.priority = priority;
+        this.uploadListener = uploadListener;
+        this.traceListener = traceListener;
+        this.traceSamplingRate = traceSamplingRate;
+    }
+
+    /**
+     * Set the time budget of each call, covering connect, write and read
+     *
+     * @param timeout Timeout in milliseconds, 0 for no timeout
+     * @return Copy of these options with the timeout set
+     */
+    public CallOptions withTimeout(long timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Timeout cannot be negative: " + timeout);
+        }
+
+        return new CallOptions(timeout, deadline, fixedDeadline, priority, uploadListener, traceListener, traceSamplingRate);
+    }
+
+    /**
+     * Set an absolute deadline shared by every call made with these options. This is used to propagate the
+     * remaining budget of an enclosing request to the calls it makes.
+     *
+     * @param deadline Deadline as a time in milliseconds, as returned by {@link System#currentTimeMillis()}, 0 for no deadline
+     * @return Copy of these options with the deadline set
+     */
+    public CallOptions withDeadline(long deadline) {
+        return new CallOptions(timeout, deadline, fixedDeadline, priority, uploadListener, traceListener, traceSamplingRate);
+    }
+
+    /**
+     * Set the scheduling class of each call
+     *
+     * @param priority Scheduling class, <code>null</code> to let the transport choose one from the method name
+     * @return Copy of these options with the priority set
+     */
+    public CallOptions withPriority(CallPriority priority) {
+        return new CallOptions(timeout, deadline, fixedDeadline, priority, uploadListener, traceListener, traceSamplingRate);
+    }
+
+    /**
+     * Set the listener notified of progress while each request body is sent
+     *
+     * @param uploadListener Listener, <code>null</code> for none
+     * @return Copy of these options with the listener set
+     */
+    public CallOptions withUploadListener(UploadListener uploadListener) {
+        return new CallOptions(timeout, deadline, fixedDeadline, priority, uploadListener, traceListener, traceSamplingRate);
+    }
+
+    /**
+     * Set the listener notified with a {@link CallTrace} of the phase timings of a sample of calls
+     *
+     * @param traceListener     Listener, <code>null</code> for none
+     * @param traceSamplingRate Fraction of calls traced, from 0 to 1
+     * @return Copy of these options with the listener and sampling rate set
+     */
+    public CallOptions withTraceListener(TraceListener traceListener, double traceSamplingRate) {
+        if (!(traceSamplingRate >= 0 && traceSamplingRate <= 1)) {
+            throw new IllegalArgumentException("Trace sampling rate must be between 0 and 1: " + traceSamplingRate);
+        }
+
+        return new CallOptions(timeout, deadline, fixedDeadline, priority, uploadListener, traceListener, traceSamplingRate);
+    }
+
+    /**
+     * Fix the time budget of a call that has already started, so that the work done on its behalf, such as a
+     * call to an underlying transport, gets only what is left of the budget
+     *
+     * @param started Start of the call as returned by {@link System#nanoTime()}
+     * @return Copy of these options with no timeout and the call's deadline as their only deadline
+     */
+    public CallOptions withDeadlineFrom(long started) {
+        long callDeadline = getDeadline(started);
+        if (callDeadline == NO_DEADLINE) {
+            return this;
+        }
+
+        return new CallOptions(0, 0, callDeadline, priority, uploadListener, traceListener, traceSamplingRate);
+    }
+
+    /**
+     * @return Timeout of each call in milliseconds, 0 for no timeout
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return Absolute deadline in milliseconds, 0 for no deadline
+     */
+    public long getDeadline() {
+        if (fixedDeadline != NO_DEADLINE) {
+            long fixed = System.currentTimeMillis() + Math.max(1, (fixedDeadline - System.nanoTime()) / 1000000L);
+            return (deadline > 0) ? Math.min(deadline, fixed) : fixed;
+        }
+
+        return deadline;
+    }
+
+    /**
+     * @return Scheduling class of each call or <code>null</code> if the transport chooses one
+     */
+    public CallPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return Listener notified of progress while each request body is sent, or <code>null</code>
+     */
+    public UploadListener getUploadListener() {
+        return uploadListener;
+    }
+
+    /**
+     * @return Listener notified with the traces of sampled calls, or <code>null</code>
+     */
+    public TraceListener getTraceListener() {
+        return traceListener;
+    }
+
+    /**
+     * @return Fraction of calls traced, from 0 to 1
+     */
+    public double getTraceSamplingRate() {
+        return traceSamplingRate;
+    }
+
+    /**
+     * Compute the deadline of a call, the earlier of its timeout and the absolute deadline. A timeout or deadline
+     * too far away to be represented in nanoseconds is ignored.
+     *
+     * @param started Start of the call as returned by {@link System#nanoTime()}
+     * @return Deadline of the call in {@link System#nanoTime()} terms, or {@link #NO_DEADLINE}
+     */
+    public long getDeadline(long started) {
+        long callDeadline = fixedDeadline;
+
+        if (timeout > 0 && timeout <= MAXIMUM_BUDGET) {
+            callDeadline = Math.min(callDeadline, started + timeout * 1000000L);
+        }
+
+        // The absolute deadline is measured from now, not from the start of the call, which may be in the past
+        if (deadline > 0) {
+            long remaining = Math.max(-MAXIMUM_BUDGET, deadline - System.currentTimeMillis());
+            if (remaining <= MAXIMUM_BUDGET) {
+                callDeadline = Math.min(callDeadline, System.nanoTime() + remaining * 1000000L);
+            }
+        }
+
+        return callDeadline;
+    }
+}
@@ -0,0 +1,262 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Phase timings of a call, reported to a {@link TraceListener} for a sample of calls and recorded as a
+ * {@link CallTraceEvent} in Java Flight Recorder recordings.
+ * <p/>
+ * A call goes through up to five phases, each timed from the end of the one before:
+ * <ul>
+ * <li>encode - building the XML-RPC request</li>
+ * <li>connect - opening or reusing the connection</li>
+ * <li>send - writing the request body, including Base64 encoding of files, which are encoded as they are sent</li>
+ * <li>time to first byte - waiting for the response headers</li>
+ * <li>decode - reading and parsing the response</li>
+ * </ul>
+ * Phases a transport cannot observe are reported as -1 and their time is counted in the next phase;
+ * {@link HttpClientXmlRpcTransport}, for example, cannot observe connect and send separately from waiting for the
+ * response. A failed call reports the phases it completed.
+ * <p/>
+ * Calls that are neither sampled nor recorded by Java Flight Recorder create no trace. A sampled call costs a few
+ * clock reads and one allocation.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class CallTrace {
+
+    private final String methodName;
+    private final long startTime;
+    private final long started;
+    private final TraceListener traceListener;
+    private final CallTraceEvent event;
+
+    private long last;
+    private long requestBytes = -1;
+    private long responseBytes = -1;
+    private long encodeTime = -1;
+    private long connectTime = -1;
+    private long sendTime = -1;
+    private long timeToFirstByte = -1;
+    private long decodeTime = -1;
+    private long duration = -1;
+    private Throwable failure;
+
+    private CallTrace(String methodName, TraceListener traceListener, CallTraceEvent event) {
+        this.methodName = methodName;
+        this.traceListener = traceListener;
+        this.event = event;
+        this.startTime = System.currentTimeMillis();
+        this.started = System.nanoTime();
+        this.last = started;
+
+        if (event != null) {
+            event.begin();
+        }
+    }
+
+    /**
+     * Start tracing a call if it is sampled or recorded by Java Flight Recorder
+     *
+     * @param methodName XML-RPC method name
+     * @param options    Options of the call
+     * @return Trace, or <code>null</code> if the call is not traced
+     */
+    static CallTrace start(String methodName, CallOptions options) {
+        TraceListener traceListener = options.getTraceListener();
+        boolean sampled = traceListener != null && ThreadLocalRandom.current().nextDouble() < options.getTraceSamplingRate();
+
+        CallTraceEvent event = new CallTraceEvent();
+        if (!event.isEnabled()) {
+            if (!sampled) {
+                return null;
+            }
+            event = null;
+        }
+
+        return new CallTrace(methodName, sampled ? traceListener : null, event);
+    }
+
+    private long mark() {
+        long now = System.nanoTime();
+        long elapsed = now - last;
+        last = now;
+
+        return elapsed;
+    }
+
+    void encoded(long requestBytes) {
+        this.encodeTime = mark();
+        this.requestBytes = requestBytes;
+    }
+
+    void connected() {
+        connectTime = mark();
+    }
+
+    void sent() {
+        sendTime = mark();
+    }
+
+    void firstByte() {
+        timeToFirstByte = mark();
+    }
+
+    void decoded(long responseBytes) {
+        this.decodeTime = mark();
+        this.responseBytes = responseBytes;
+    }
+
+    void finish(Throwable failure) {
+        this.duration = System.nanoTime() - started;
+        this.failure = failure;
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.methodName = methodName;
+                event.requestBytes = requestBytes;
+                event.responseBytes = responseBytes;
+                event.encode = encodeTime;
+                event.connect = connectTime;
+                event.send = sendTime;
+                event.timeToFirstByte = timeToFirstByte;
+                event.decode = decodeTime;
+                event.failure = (failure == null) ? null : failure.toString();
+                event.commit();
+            }
+        }
+
+        if (traceListener != null) {
+            try {
+                traceListener.callTraced(this);
+            } catch (RuntimeException e) {
+                // A failing listener must not change the outcome of the call
+            }
+        }
+    }
+
+    /**
+     * @return XML-RPC method name
+     */
+    public String getMethodName() {
+        return methodName;
+    }
+
+    /**
+     * @return Start of the call in milliseconds, as returned by {@link System#currentTimeMillis()}
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return Size of the request body in bytes, -1 if the request was not encoded
+     */
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    /**
+     * @return Size of the response body in bytes, -1 if the response was not read
+     */
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    /**
+     * @return Time spent building the request in nanoseconds, -1 if not reached
+     */
+    public long getEncodeTime() {
+        return encodeTime;
+    }
+
+    /**
+     * @return Time spent connecting in nanoseconds, -1 if not reached or not observable
+     */
+    public long getConnectTime() {
+        return connectTime;
+    }
+
+    /**
+     * @return Time spent sending the request body in nanoseconds, -1 if not reached or not observable
+     */
+    public long getSendTime() {
+        return sendTime;
+    }
+
+    /**
+     * @return Time spent waiting for the response headers in nanoseconds, -1 if not reached
+     */
+    public long getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    /**
+     * @return Time spent reading and parsing the response in nanoseconds, -1 if not reached
+     */
+    public long getDecodeTime() {
+        return decodeTime;
+    }
+
+    /**
+     * @return Duration of the whole call in nanoseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return Exception that ended the call, or <code>null</code> if it succeeded
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    public String toString() {
+        return methodName + " " + toMillis(duration) + " ms (encode " + toMillis(encodeTime)
+                + ", connect " + toMillis(connectTime) + ", send " + toMillis(sendTime)
+                + ", first byte " + toMillis(timeToFirstByte) + ", decode " + toMillis(decodeTime)
+                + "; " + requestBytes + " bytes sent, " + responseBytes + " bytes received"
+                + ((failure == null) ? "" : "; failed: " + failure) + ")";
+    }
+
+    private static String toMillis(long nanos) {
+        return (nanos < 0) ? "-" : Double.toString(Math.round(nanos / 1000.0) / 1000.0);
+    }
+}
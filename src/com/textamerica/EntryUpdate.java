@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.io.File;
+
+/**
+ * Parameters for a single <code>ta.Entry.Update</code> call, used where entries are submitted in bulk.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ * @see TextAmerica4J#entryUpdate(int, int, String, String, int, java.io.File, String)
+ */
+public class EntryUpdate {
+
+    private final int moblogID;
+    private final int entryID;
+    private final String title;
+    private final String text;
+    private final int categoryID;
+    private final File imageData;
+    private final String fileType;
+
+    /**
+     * Create the parameters for an entry update
+     *
+     * @param moblogID   ID associated with your moblog
+     * @param entryID    ID associated with the entry you are updating. Use 0 to create a new entry.
+     * @param title      Title associated with the entry
+     * @param text       Description associated with this entry
+     * @param categoryID Category id to associate with this entry (Default is 0).
+     * @param imageData  Image or movie file
+     * @param fileType   Allowed values are: "JPG", "JPEG", "MP4", "3GP", "3G2", "MOV"
+     */
+    public EntryUpdate(int moblogID, int entryID, String title, String text, int categoryID, File imageData, String fileType) {
+        this.moblogID = moblogID;
+        this.entryID = entryID;
+        this.title = title;
+        this.text = text;
+        this.categoryID = categoryID;
+        this.imageData = imageData;
+        this.fileType = fileType;
+    }
+
+    /**
+     * @return ID associated with your moblog
+     */
+    public int getMoblogID() {
+        return moblogID;
+    }
+
+    /**
+     * @return ID associated with the entry you are updating, 0 for a new entry
+     */
+    public int getEntryID() {
+        return entryID;
+    }
+
+    /**
+     * @return Title associated with the entry
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return Description associated with this entry
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return Category id to associate with this entry
+     */
+    public int getCategoryID() {
+        return categoryID;
+    }
+
+    /**
+     * @return Image or movie file
+     */
+    public File getImageData() {
+        return imageData;
+    }
+
+    /**
+     * @return File type of the image or movie
+     */
+    public String getFileType() {
+        return fileType;
+    }
+
+    /**
+     * Execute this update against the TextAmerica moblog service
+     *
+     * @param textAmerica4J {@link TextAmerica4J} instance
+     * @return Entry ID
+     * @throws Exception If there is an error
+     */
+    public String execute(TextAmerica4J textAmerica4J) throws Exception {
+        return textAmerica4J.entryUpdate(moblogID, entryID, title, text, categoryID, imageData, fileType);
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Base64;
+
+/**
+ * Request parameter for a file that is Base64 encoded while the request is written, rather than held in memory
+ * as an encoded string. The encoding is identical to {@link org.apache.xmlrpc.Base64#encode(byte[])} of the
+ * whole file: lines of 76 characters, each terminated by a newline. It is produced by the JDK's MIME encoder, whose
+ * encoding loop is compiled to vector instructions by HotSpot on most platforms.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+class FileParameter {
+
+    private static final int CHUNK_SIZE = 57 * 1024;
+    private static final int LINE_LENGTH = 76;
+    private static final Base64.Encoder ENCODER = Base64.getMimeEncoder(LINE_LENGTH, new byte[]{'\n'});
+
+    private final File file;
+
+    FileParameter(File file) {
+        this.file = file;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return Number of bytes written by {@link #writeTo(OutputStream, UploadStatistics)}
+     */
+    long getEncodedLength() {
+        return getEncodedLength(file.length());
+    }
+
+    private static long getEncodedLength(long length) {
+        long characters = 4 * ((length + 2) / 3);
+
+        return characters + (characters + LINE_LENGTH - 1) / LINE_LENGTH;
+    }
+
+    /**
+     * Encode data as {@link org.apache.xmlrpc.Base64#encode(byte[])} does
+     *
+     * @param data Data
+     * @return Encoded data in lines of 76 characters, each terminated by a newline
+     */
+    static byte[] encode(byte[] data) {
+        byte[] encoded = new byte[(int) getEncodedLength(data.length)];
+        encode(data, encoded);
+
+        return encoded;
+    }
+
+    /**
+     * Encode data into a buffer large enough for it
+     *
+     * @return Number of bytes of the buffer used
+     */
+    private static int encode(byte[] data, byte[] encoded) {
+        if (data.length == 0) {
+            return 0;
+        }
+
+        // The MIME encoder separates lines but does not terminate the last one
+        int length = ENCODER.encode(data, encoded);
+        encoded[length] = '\n';
+
+        return length + 1;
+    }
+
+    /**
+     * Write the encoded file. The file is encoded in chunks that are a whole number of encoded lines, so the output
+     * is the same as encoding the file in one piece.
+     *
+     * @param out              Output stream
+     * @param uploadStatistics Statistics updated with the time spent encoding
+     * @throws IOException If there is an error reading the file or writing the output
+     */
+    void writeTo(OutputStream out, UploadStatistics uploadStatistics) throws IOException {
+        InputStream is = new FileInputStream(file);
+        try {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            byte[] encoded = new byte[(int) getEncodedLength(CHUNK_SIZE)];
+            int length;
+            while ((length = readChunk(is, chunk)) > 0) {
+                byte[] data = chunk;
+                if (length < CHUNK_SIZE) {
+                    data = new byte[length];
+                    System.arraycopy(chunk, 0, data, 0, length);
+                }
+
+                out.write(encoded, 0, encode(data, encoded, uploadStatistics));
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Open a stream of the encoded file, for transports that pull the request body rather than write it
+     *
+     * @param uploadStatistics Statistics updated with the time spent encoding
+     * @return Input stream of the encoded file
+     * @throws IOException If the file cannot be opened
+     */
+    InputStream openEncodedStream(final UploadStatistics uploadStatistics) throws IOException {
+        final InputStream is = new FileInputStream(file);
+
+        return new InputStream() {
+            private final byte[] chunk = new byte[CHUNK_SIZE];
+            private final byte[] encoded = new byte[(int) getEncodedLength(CHUNK_SIZE)];
+            private int encodedLength;
+            private int position;
+
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xff);
+            }
+
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (position == encodedLength) {
+                    int length = readChunk(is, chunk);
+                    if (length == 0) {
+                        return -1;
+                    }
+
+                    byte[] data = chunk;
+                    if (length < CHUNK_SIZE) {
+                        data = new byte[length];
+                        System.arraycopy(chunk, 0, data, 0, length);
+                    }
+
+                    encodedLength = encode(data, encoded, uploadStatistics);
+                    position = 0;
+                }
+
+                int bytesRead = Math.min(len, encodedLength - position);
+                System.arraycopy(encoded, position, b, off, bytesRead);
+                position += bytesRead;
+
+                return bytesRead;
+            }
+
+            public void close() throws IOException {
+                is.close();
+            }
+        };
+    }
+
+    private static int encode(byte[] data, byte[] encoded, UploadStatistics uploadStatistics) {
+        long started = System.nanoTime();
+        int length = encode(data, encoded);
+        uploadStatistics.recordEncode(data.length, System.nanoTime() - started);
+
+        return length;
+    }
+
+    private static int readChunk(InputStream is, byte[] chunk) throws IOException {
+        int length = 0;
+        int bytesRead;
+
+        while (length < chunk.length && -1 != (bytesRead = is.read(chunk, length, chunk.length - length))) {
+            length += bytesRead;
+        }
+
+        return length;
+    }
+}
@@ -0,0 +1,420 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Vector;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * XML-RPC transport over {@link HttpClient}, as an alternative to {@link HttpXmlRpcTransport}.
+ * <p/>
+ * By default the client prefers HTTP/2, negotiated with ALPN for https endpoints and by upgrade for http
+ * endpoints, and falls back to HTTP/1.1 when the endpoint does not support it. Over HTTP/2, concurrent calls are
+ * multiplexed on a small number of connections instead of needing one socket each. Calls can be made
+ * asynchronously with {@link #executeAsync(String, Vector, CallOptions)}. Files in the request are pulled from disk
+ * and encoded as the request body is sent.
+ * <p/>
+ * Request bodies with files are throttled, counted and reported in the same way as by {@link HttpXmlRpcTransport},
+ * including the global bandwidth limit set with {@link HttpXmlRpcTransport#setGlobalBandwidthLimit(TokenBucket)}.
+ * <p/>
+ * The time budget in {@link CallOptions} is applied as the request timeout, checked while files are streamed, and
+ * bounds the wait for the response. A call that runs out of budget, or whose future is cancelled, is cancelled in
+ * the client, which aborts its exchange.
+ * <p/>
+ * Calls are traced as set in {@link CallOptions#withTraceListener(TraceListener, double)}; connect and send are not
+ * observable separately and are counted in the time to first byte.
+ * <p/>
+ * Instances are safe for use by multiple concurrent threads. Creating a transport does no I/O;
+ * {@link #warmUp(CallOptions)} resolves the endpoint and opens a connection in the client's pool.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class HttpClientXmlRpcTransport implements XmlRpcTransport, Warmable {
+
+    private static final String CONTENT_TYPE = "text/xml";
+
+    private final URI uri;
+    private final HttpClient httpClient;
+    private final TokenBucket bandwidthLimit;
+    private final UploadStatistics uploadStatistics = new UploadStatistics();
+
+    /**
+     * Create a transport for a given endpoint that prefers HTTP/2
+     *
+     * @param url XML-RPC endpoint
+     * @throws MalformedURLException If the URL is invalid
+     */
+    public HttpClientXmlRpcTransport(String url) throws MalformedURLException {
+        this(toURI(url), HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build());
+    }
+
+    /**
+     * Create a transport for a given endpoint and client
+     *
+     * @param uri        XML-RPC endpoint
+     * @param httpClient Client used to send requests
+     */
+    public HttpClientXmlRpcTransport(URI uri, HttpClient httpClient) {
+        this(uri, httpClient, null);
+    }
+
+    /**
+     * Create a transport for a given endpoint and client with a bandwidth limit for request bodies
+     *
+     * @param uri            XML-RPC endpoint
+     * @param httpClient     Client used to send requests
+     * @param bandwidthLimit Bandwidth limit in bytes, <code>null</code> for no limit
+     */
+    public HttpClientXmlRpcTransport(URI uri, HttpClient httpClient, TokenBucket bandwidthLimit) {
+        this.uri = uri;
+        this.httpClient = httpClient;
+        this.bandwidthLimit = bandwidthLimit;
+    }
+
+    private static URI toURI(String url) throws MalformedURLException {
+        try {
+            return new URL(url).toURI();
+        } catch (URISyntaxException e) {
+            MalformedURLException malformedURLException = new MalformedURLException(e.getMessage());
+            malformedURLException.initCause(e);
+            throw malformedURLException;
+        }
+    }
+
+    /**
+     * @return XML-RPC endpoint
+     */
+    public URI getURI() {
+        return uri;
+    }
+
+    /**
+     * Throughput counters for the request bodies sent by this transport. The send rate is not available because the
+     * client does not expose the time spent writing to the network.
+     *
+     * @return Throughput counters
+     */
+    public UploadStatistics getUploadStatistics() {
+        return uploadStatistics;
+    }
+
+    public Object execute(String methodName, Vector parameters) throws Exception {
+        return execute(methodName, parameters, CallOptions.DEFAULT);
+    }
+
+    /**
+     * Resolve the endpoint, load the classes used to encode and decode calls and send a HEAD request to the
+     * endpoint, which opens a connection in the client's pool and negotiates the HTTP version. Any HTTP status is
+     * accepted.
+     *
+     * @param options Options whose time budget bounds the warm-up
+     * @throws IOException If the endpoint cannot be resolved or reached
+     */
+    public void warmUp(CallOptions options) throws IOException {
+        long deadline = ((options == null) ? CallOptions.DEFAULT : options).getDeadline(System.nanoTime());
+
+        InetAddress.getAllByName(uri.getHost());
+        XmlRpcWriter.warmUp();
+        XmlRpcResponseParser.warmUp();
+
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder(uri)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody());
+        if (deadline != CallOptions.NO_DEADLINE) {
+            requestBuilder.timeout(Duration.ofMillis(HttpXmlRpcTransport.toTimeout("warm-up", deadline)));
+        }
+
+        try {
+            httpClient.send(requestBuilder.build(), HttpResponse.BodyHandlers.discarding());
+        } catch (HttpTimeoutException e) {
+            SocketTimeoutException timeoutException = new SocketTimeoutException("Deadline exceeded for warm-up");
+            timeoutException.initCause(e);
+            throw timeoutException;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Warm-up was interrupted");
+        }
+    }
+
+    public Object execute(String methodName, Vector parameters, CallOptions options) throws Exception {
+        if (options == null) {
+            options = CallOptions.DEFAULT;
+        }
+
+        long deadline = options.getDeadline(System.nanoTime());
+        CompletableFuture result = executeAsync(methodName, parameters, options, deadline);
+
+        try {
+            if (deadline == CallOptions.NO_DEADLINE) {
+                return result.get();
+            }
+
+            return result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            throw new SocketTimeoutException("Deadline exceeded for " + methodName);
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            throw unwrap(methodName, e.getCause());
+        }
+    }
+
+    /**
+     * Execute an XML-RPC call asynchronously. Cancelling the returned future cancels the exchange.
+     *
+     * @param methodName XML-RPC method name
+     * @param parameters Parameters of the call
+     * @param options    Options for the call
+     * @return Future for the result of the call
+     * @throws Exception If the call cannot be started
+     */
+    public CompletableFuture executeAsync(String methodName, Vector parameters, CallOptions options) throws Exception {
+        if (options == null) {
+            options = CallOptions.DEFAULT;
+        }
+
+        return executeAsync(methodName, parameters, options, options.getDeadline(System.nanoTime()));
+    }
+
+    private CompletableFuture executeAsync(final String methodName, Vector parameters, CallOptions options, long deadline) throws Exception {
+        final CallTrace trace = CallTrace.start(methodName, options);
+        try {
+            return executeAsync(methodName, parameters, options, deadline, trace);
+        } catch (Exception e) {
+            if (trace != null) {
+                trace.finish(e);
+            }
+            throw e;
+        }
+    }
+
+    private CompletableFuture executeAsync(final String methodName, Vector parameters, CallOptions options,
+                                           final long deadline, final CallTrace trace) throws Exception {
+        Vector segments = XmlRpcWriter.toSegments(methodName, parameters);
+        long length = XmlRpcWriter.getLength(segments);
+        if (trace != null) {
+            trace.encoded(length);
+        }
+
+        final UploadMeter uploadMeter = new UploadMeter(methodName, deadline, length, options, bandwidthLimit,
+                uploadStatistics);
+
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder(uri)
+                .header("Content-Type", CONTENT_TYPE)
+                .POST(createBodyPublisher(segments, uploadMeter));
+
+        if (deadline != CallOptions.NO_DEADLINE) {
+            requestBuilder.timeout(Duration.ofMillis(HttpXmlRpcTransport.toTimeout(methodName, deadline)));
+        }
+
+        HttpResponse.BodyHandler bodyHandler = HttpResponse.BodyHandlers.ofByteArray();
+        if (trace != null) {
+            final HttpResponse.BodyHandler byteArrayHandler = bodyHandler;
+            bodyHandler = new HttpResponse.BodyHandler() {
+                public HttpResponse.BodySubscriber apply(HttpResponse.ResponseInfo responseInfo) {
+                    trace.firstByte();
+                    return byteArrayHandler.apply(responseInfo);
+                }
+            };
+        }
+
+        final CompletableFuture response = httpClient.sendAsync(requestBuilder.build(), bodyHandler);
+        final CompletableFuture result = response.thenApply(new Function() {
+            public Object apply(Object httpResponse) {
+                return parseResponse(methodName, (HttpResponse) httpResponse, trace);
+            }
+        });
+
+        result.whenComplete(new BiConsumer() {
+            public void accept(Object value, Object throwable) {
+                if (throwable instanceof CancellationException) {
+                    response.cancel(true);
+                }
+
+                if (trace != null) {
+                    if (throwable == null) {
+                        trace.finish(null);
+                    } else if (throwable instanceof CancellationException && deadline != CallOptions.NO_DEADLINE
+                            && System.nanoTime() - deadline >= 0) {
+                        trace.finish(new SocketTimeoutException("Deadline exceeded for " + methodName));
+                    } else {
+                        trace.finish(unwrap(methodName, (Throwable) throwable));
+                    }
+                }
+            }
+        });
+
+        return result;
+    }
+
+    private static Object parseResponse(String methodName, HttpResponse httpResponse, CallTrace trace) {
+        try {
+            if (httpResponse.statusCode() != 200) {
+                throw new IOException("Unexpected HTTP status " + httpResponse.statusCode() + " for " + methodName);
+            }
+
+            byte[] body = (byte[]) httpResponse.body();
+            Object result = XmlRpcResponseParser.parse(body, body.length);
+            if (trace != null) {
+                trace.decoded(body.length);
+            }
+
+            return result;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static Exception unwrap(String methodName, Throwable cause) {
+        while ((cause instanceof CompletionException || cause instanceof UncheckedIOException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+
+        if (cause instanceof HttpConnectTimeoutException) {
+            ConnectTimeoutException connectTimeoutException = new ConnectTimeoutException("Connect timed out for " + methodName);
+            connectTimeoutException.initCause(cause);
+            return connectTimeoutException;
+        }
+
+        if (cause instanceof HttpTimeoutException) {
+            SocketTimeoutException timeoutException = new SocketTimeoutException("Deadline exceeded for " + methodName);
+            timeoutException.initCause(cause);
+            return timeoutException;
+        }
+
+        if (cause instanceof Exception) {
+            return (Exception) cause;
+        }
+
+        return new IOException(String.valueOf(cause));
+    }
+
+    /**
+     * Create the body of a request. Requests without files are sent from memory. Requests with files are sent as a
+     * stream of their segments, with each file encoded as it is pulled, through the request's {@link UploadMeter}.
+     */
+    private HttpRequest.BodyPublisher createBodyPublisher(final Vector segments, final UploadMeter uploadMeter) {
+        if (segments.size() == 1 && segments.get(0) instanceof byte[]) {
+            return HttpRequest.BodyPublishers.ofByteArray((byte[]) segments.get(0));
+        }
+
+        return HttpRequest.BodyPublishers.fromPublisher(HttpRequest.BodyPublishers.ofInputStream(new Supplier() {
+            public Object get() {
+                return new UploadMeter.MeteredInputStream(new SegmentInputStream(segments, uploadStatistics), uploadMeter);
+            }
+        }), XmlRpcWriter.getLength(segments));
+    }
+
+    /**
+     * Input stream over the segments of a request, opening each file as it is reached
+     */
+    private static class SegmentInputStream extends InputStream {
+
+        private final Vector segments;
+        private final UploadStatistics uploadStatistics;
+
+        private int index;
+        private InputStream current;
+
+        SegmentInputStream(Vector segments, UploadStatistics uploadStatistics) {
+            this.segments = segments;
+            this.uploadStatistics = uploadStatistics;
+        }
+
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xff);
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (true) {
+                if (current == null) {
+                    if (index == segments.size()) {
+                        return -1;
+                    }
+
+                    Object segment = segments.get(index++);
+                    if (segment instanceof FileParameter) {
+                        current = ((FileParameter) segment).openEncodedStream(uploadStatistics);
+                    } else {
+                        current = new ByteArrayInputStream((byte[]) segment);
+                    }
+                }
+
+                int bytesRead = current.read(b, off, len);
+                if (bytesRead != -1) {
+                    return bytesRead;
+                }
+
+                current.close();
+                current = null;
+            }
+        }
+
+        public void close() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,421 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * XML-RPC transport over {@link HttpURLConnection} that enforces the time budget in {@link CallOptions}.
+ * <p/>
+ * The remaining budget is applied as the connect timeout and then as the read timeout, and it is checked before
+ * every write while the request is streamed, so a large upload stops as soon as its budget runs out. Request
+ * bodies are throttled to this transport's bandwidth limit and the global limit, counted in
+ * {@link #getUploadStatistics()} and reported to the call's {@link UploadListener}. In addition,
+ * a watchdog disconnects the call when its deadline passes, which aborts a write or read that is blocked in the
+ * socket. Requests that contain a file are streamed with a fixed content length rather than being buffered in
+ * memory. Calls are traced as set in {@link CallOptions#withTraceListener(TraceListener, double)}. Calls started
+ * with {@link #executeAsync(String, Vector, CallOptions, Executor)} abort their socket when they are cancelled.
+ * <p/>
+ * Instances are safe for use by multiple concurrent threads. Each call uses its own connection, and
+ * {@link HttpURLConnection} keeps idle connections alive for reuse. Creating a transport does no I/O;
+ * {@link #warmUp(CallOptions)} resolves the endpoint and leaves an open connection in the keep-alive cache.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class HttpXmlRpcTransport implements XmlRpcTransport, Warmable {
+
+    private static volatile TokenBucket globalBandwidthLimit;
+
+    private final URL url;
+    private final TokenBucket bandwidthLimit;
+    private final UploadStatistics uploadStatistics = new UploadStatistics();
+
+    /**
+     * Create a transport for a given endpoint
+     *
+     * @param url XML-RPC endpoint
+     * @throws MalformedURLException If the URL is invalid
+     */
+    public HttpXmlRpcTransport(String url) throws MalformedURLException {
+        this(new URL(url));
+    }
+
+    /**
+     * Create a transport for a given endpoint
+     *
+     * @param url XML-RPC endpoint
+     */
+    public HttpXmlRpcTransport(URL url) {
+        this(url, null);
+    }
+
+    /**
+     * Create a transport for a given endpoint with a bandwidth limit for request bodies
+     *
+     * @param url            XML-RPC endpoint
+     * @param bandwidthLimit Bandwidth limit in bytes, <code>null</code> for no limit
+     */
+    public HttpXmlRpcTransport(URL url, TokenBucket bandwidthLimit) {
+        this.url = url;
+        this.bandwidthLimit = bandwidthLimit;
+    }
+
+    /**
+     * Set a bandwidth limit for request bodies shared by all transports, in addition to any limit of each transport
+     *
+     * @param globalBandwidthLimit Bandwidth limit in bytes, <code>null</code> for no limit
+     */
+    public static void setGlobalBandwidthLimit(TokenBucket globalBandwidthLimit) {
+        HttpXmlRpcTransport.globalBandwidthLimit = globalBandwidthLimit;
+    }
+
+    /**
+     * @return Bandwidth limit for request bodies shared by all transports, or <code>null</code>
+     */
+    public static TokenBucket getGlobalBandwidthLimit() {
+        return globalBandwidthLimit;
+    }
+
+    /**
+     * @return XML-RPC endpoint
+     */
+    public URL getURL() {
+        return url;
+    }
+
+    /**
+     * @return Throughput counters for the request bodies sent by this transport
+     */
+    public UploadStatistics getUploadStatistics() {
+        return uploadStatistics;
+    }
+
+    /**
+     * Resolve the endpoint, load the classes used to encode and decode calls and send a HEAD request to the
+     * endpoint, which leaves its connection in the keep-alive cache for the first call. Any HTTP status is accepted.
+     *
+     * @param options Options whose time budget bounds the warm-up
+     * @throws IOException If the endpoint cannot be resolved or reached
+     */
+    public void warmUp(CallOptions options) throws IOException {
+        long deadline = ((options == null) ? CallOptions.DEFAULT : options).getDeadline(System.nanoTime());
+
+        InetAddress.getAllByName(url.getHost());
+        XmlRpcWriter.warmUp();
+        XmlRpcResponseParser.warmUp();
+        if (deadline != CallOptions.NO_DEADLINE) {
+            Watchdog.EXECUTOR.prestartCoreThread();
+        }
+
+        HttpURLConnection httpURLConnection = (HttpURLConnection) url.openConnection();
+        httpURLConnection.setRequestMethod("HEAD");
+        httpURLConnection.setUseCaches(false);
+        httpURLConnection.setConnectTimeout(toTimeout("warm-up", deadline));
+        httpURLConnection.setReadTimeout(toTimeout("warm-up", deadline));
+
+        InputStream in = (httpURLConnection.getResponseCode() < 400)
+                ? httpURLConnection.getInputStream() : httpURLConnection.getErrorStream();
+        if (in != null) {
+            byte[] buffer = new byte[512];
+            while (in.read(buffer) != -1) {
+                // Reading the response to the end returns the connection to the keep-alive cache
+            }
+            in.close();
+        }
+    }
+
+    public Object execute(String methodName, Vector parameters) throws Exception {
+        return execute(methodName, parameters, CallOptions.DEFAULT);
+    }
+
+    public Object execute(String methodName, Vector parameters, CallOptions options) throws Exception {
+        return new Call(methodName, parameters, options).call();
+    }
+
+    /**
+     * Execute an XML-RPC call asynchronously. Cancelling the returned future aborts the call's connection.
+     *
+     * @param methodName XML-RPC method name
+     * @param parameters Parameters of the call
+     * @param options    Options for the call
+     * @param executor   Executor that runs the call
+     * @return Future for the result of the call
+     */
+    public Future executeAsync(String methodName, Vector parameters, CallOptions options, Executor executor) {
+        final Call call = new Call(methodName, parameters, options);
+        FutureTask future = new FutureTask(call) {
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                if (cancelled) {
+                    call.abort();
+                }
+
+                return cancelled;
+            }
+        };
+        executor.execute(future);
+
+        return future;
+    }
+
+    /**
+     * Convert the time left until a deadline into a socket timeout
+     *
+     * @param methodName XML-RPC method name
+     * @param deadline   Deadline in {@link System#nanoTime()} terms
+     * @return Timeout in milliseconds, 0 for no timeout
+     * @throws SocketTimeoutException If the deadline has passed
+     */
+    static int toTimeout(String methodName, long deadline) throws SocketTimeoutException {
+        if (deadline == CallOptions.NO_DEADLINE) {
+            return 0;
+        }
+
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            throw new SocketTimeoutException("Deadline exceeded for " + methodName);
+        }
+
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+    }
+
+    /**
+     * A single call, which may be aborted from another thread
+     */
+    private class Call implements Callable {
+
+        private final String methodName;
+        private final Vector parameters;
+        private final CallOptions options;
+
+        private volatile HttpURLConnection connection;
+        private volatile boolean aborted;
+
+        Call(String methodName, Vector parameters, CallOptions options) {
+            this.methodName = methodName;
+            this.parameters = parameters;
+            this.options = (options == null) ? CallOptions.DEFAULT : options;
+        }
+
+        public Object call() throws Exception {
+            long deadline = options.getDeadline(System.nanoTime());
+            toTimeout(methodName, deadline);
+
+            HttpURLConnection httpURLConnection = (HttpURLConnection) url.openConnection();
+            connection = httpURLConnection;
+            if (aborted) {
+                throw new IOException("Call to " + methodName + " was cancelled");
+            }
+
+            CallTrace trace = CallTrace.start(methodName, options);
+            Exception failure = null;
+
+            ScheduledFuture watchdog = null;
+            if (deadline != CallOptions.NO_DEADLINE) {
+                watchdog = Watchdog.EXECUTOR.schedule(new Runnable() {
+                    public void run() {
+                        abort();
+                    }
+                }, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+
+            try {
+                return execute(httpURLConnection, deadline, trace);
+            } catch (IOException e) {
+                failure = e;
+                if (aborted && deadline != CallOptions.NO_DEADLINE && System.nanoTime() - deadline >= 0) {
+                    SocketTimeoutException timeoutException = new SocketTimeoutException("Deadline exceeded for " + methodName);
+                    timeoutException.initCause(e);
+                    failure = timeoutException;
+                }
+
+                throw failure;
+            } catch (Exception e) {
+                failure = e;
+                throw e;
+            } finally {
+                if (watchdog != null) {
+                    watchdog.cancel(false);
+                }
+
+                if (trace != null) {
+                    trace.finish(failure);
+                }
+            }
+        }
+
+        private Object execute(HttpURLConnection httpURLConnection, long deadline, CallTrace trace) throws Exception {
+            httpURLConnection.setRequestMethod("POST");
+            httpURLConnection.setDoInput(true);
+            httpURLConnection.setDoOutput(true);
+            httpURLConnection.setUseCaches(false);
+            httpURLConnection.setAllowUserInteraction(false);
+            httpURLConnection.setRequestProperty("Content-Type", "text/xml");
+
+            Vector segments = XmlRpcWriter.toSegments(methodName, parameters);
+            long length = XmlRpcWriter.getLength(segments);
+            httpURLConnection.setFixedLengthStreamingMode(length);
+            if (trace != null) {
+                trace.encoded(length);
+            }
+
+            httpURLConnection.setConnectTimeout(toTimeout(methodName, deadline));
+            try {
+                httpURLConnection.connect();
+            } catch (SocketTimeoutException e) {
+                ConnectTimeoutException connectTimeoutException = new ConnectTimeoutException("Connect timed out for " + methodName);
+                connectTimeoutException.initCause(e);
+                throw connectTimeoutException;
+            }
+            if (trace != null) {
+                trace.connected();
+            }
+
+            UploadMeter uploadMeter = new UploadMeter(methodName, deadline, length, options, bandwidthLimit, uploadStatistics);
+            OutputStream out = new UploadMeter.MeteredOutputStream(httpURLConnection.getOutputStream(), uploadMeter);
+            try {
+                XmlRpcWriter.write(out, segments, uploadStatistics);
+            } catch (IOException e) {
+                // Closing a partially written fixed-length body would fail and hide the original exception
+                httpURLConnection.disconnect();
+                throw e;
+            }
+            out.close();
+            uploadMeter.finished();
+            if (trace != null) {
+                trace.sent();
+            }
+
+            httpURLConnection.setReadTimeout(toTimeout(methodName, deadline));
+            InputStream in = httpURLConnection.getInputStream();
+            if (trace == null) {
+                try {
+                    return XmlRpcResponseParser.parse(in);
+                } finally {
+                    in.close();
+                }
+            }
+
+            trace.firstByte();
+            CountingInputStream countingInputStream = new CountingInputStream(in);
+            try {
+                Object result = XmlRpcResponseParser.parse(countingInputStream);
+                trace.decoded(countingInputStream.count);
+                return result;
+            } finally {
+                countingInputStream.close();
+            }
+        }
+
+        void abort() {
+            aborted = true;
+
+            HttpURLConnection httpURLConnection = connection;
+            if (httpURLConnection != null) {
+                httpURLConnection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes of a traced response
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            int bytesRead = super.read(b, off, len);
+            if (bytesRead > 0) {
+                count += bytesRead;
+            }
+
+            return bytesRead;
+        }
+    }
+
+    /**
+     * Holder for the watchdog, created when the first call with a deadline is made rather than when the class
+     * is loaded
+     */
+    private static class Watchdog {
+
+        static final ScheduledThreadPoolExecutor EXECUTOR = createWatchdog();
+
+        private static ScheduledThreadPoolExecutor createWatchdog() {
+            ScheduledThreadPoolExecutor watchdog = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "TextAmerica4J deadline watchdog");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            watchdog.setRemoveOnCancelPolicy(true);
+
+            return watchdog;
+        }
+    }
+}
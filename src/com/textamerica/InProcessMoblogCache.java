@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * {@link MoblogCache} that keeps listings on the heap of this process. Listings are copied when they are stored
+ * and when they are retrieved, so callers can modify the listings they pass in and get back.
+ * <p/>
+ * This is the default local backend, and serves as an in-memory stand-in for a shared backend in tests.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class InProcessMoblogCache extends AbstractMoblogCache {
+
+    /**
+     * Create a cache
+     *
+     * @param timeToLive     Time in milliseconds a listing is kept after it is stored
+     * @param maximumEntries Maximum number of listings kept
+     */
+    public InProcessMoblogCache(long timeToLive, int maximumEntries) {
+        super(timeToLive, maximumEntries);
+    }
+
+    protected Object store(Object value) {
+        return copy(value);
+    }
+
+    protected Object load(Object stored) {
+        return copy(stored);
+    }
+
+    protected long sizeOf(Object stored) {
+        return 1;
+    }
+
+    private static Object copy(Object value) {
+        if (value instanceof Vector) {
+            Vector vector = (Vector) value;
+            Vector copy = new Vector(vector.size());
+            for (int i = 0; i < vector.size(); i++) {
+                copy.add(copy(vector.get(i)));
+            }
+
+            return copy;
+        } else if (value instanceof Hashtable) {
+            Hashtable hashtable = (Hashtable) value;
+            Hashtable copy = new Hashtable(Math.max(11, hashtable.size() * 2));
+            Enumeration keys = hashtable.keys();
+            while (keys.hasMoreElements()) {
+                Object key = keys.nextElement();
+                copy.put(key, copy(hashtable.get(key)));
+            }
+
+            return copy;
+        } else if (value instanceof Date) {
+            return ((Date) value).clone();
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,301 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.Vector;
+
+/**
+ * Keeps a local index of community moblogs, keyed by MoblogID, up to date with
+ * {@link TextAmerica4J#getCommunityMoblogs(String)}.
+ * <p/>
+ * The first sync, and every sync after the full refresh interval has elapsed, retrieves "all" community
+ * moblogs and replaces the index. Every other sync passes the day before the previous sync, the high-water mark,
+ * as a date in the service's time zone, so that only moblogs created on or after that date are retrieved and
+ * merged into the index. Going back a day means a clock or time zone difference between the client and the
+ * service cannot skip moblogs; the moblogs retrieved twice are merged by MoblogID.
+ * <p/>
+ * The high-water mark and the time of the last full refresh are persisted to a state file, and the index to a
+ * {@link MoblogSnapshot} next to it with the suffix ".index", which keeps the MoblogID, title, url and postTo of
+ * each moblog, so that they survive restarts. If the index
+ * snapshot is missing or unreadable, the index starts empty and the first sync is a full refresh, unless it has
+ * first been seeded with {@link #merge(Vector)}.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class IncrementalMoblogSync {
+
+    private static final String ALL = "all";
+    private static final String MOBLOG_ID = "MoblogID";
+    private static final String DATE_FORMAT = "MM/dd/yyyy";
+    private static final long OVERLAP = 24 * 60 * 60 * 1000L;
+    private static final String INDEX_SUFFIX = ".index";
+    private static final String[] INDEXED_VALUES = {"title", "url", "postTo"};
+
+    /**
+     * Time zone in which the TextAmerica moblog service interprets dates
+     */
+    public static final TimeZone SERVICE_TIME_ZONE = TimeZone.getTimeZone("America/Los_Angeles");
+
+    private static final String HIGH_WATER_MARK = "highWaterMark";
+    private static final String LAST_FULL_REFRESH = "lastFullRefresh";
+
+    private final TextAmerica4J textAmerica4J;
+    private final File stateFile;
+    private final File indexFile;
+    private final long fullRefreshInterval;
+
+    private Hashtable index = new Hashtable();
+    private long highWaterMark;
+    private long lastFullRefresh;
+
+    /**
+     * Create an incremental sync
+     *
+     * @param textAmerica4J       {@link TextAmerica4J} instance
+     * @param stateFile           File where the high-water mark is persisted
+     * @param fullRefreshInterval Milliseconds between full refreshes of the index
+     * @throws IOException If there is an error reading an existing state file
+     */
+    public IncrementalMoblogSync(TextAmerica4J textAmerica4J, File stateFile, long fullRefreshInterval) throws IOException {
+        this.textAmerica4J = textAmerica4J;
+        this.stateFile = stateFile;
+        this.indexFile = new File(stateFile.getPath() + INDEX_SUFFIX);
+        this.fullRefreshInterval = fullRefreshInterval;
+
+        loadState();
+    }
+
+    /**
+     * Retrieve the moblogs created since the last sync, or all moblogs if a full refresh is due, and merge them
+     * into the index
+     *
+     * @return Vector of Hashtables for the moblogs retrieved by this sync
+     * @throws Exception If there is an error
+     */
+    public synchronized Vector sync() throws Exception {
+        long syncStarted = System.currentTimeMillis();
+        Vector moblogs;
+        boolean changed;
+
+        if (isFullRefreshDue(syncStarted)) {
+            moblogs = textAmerica4J.getCommunityMoblogs(ALL);
+
+            Hashtable refreshedIndex = new Hashtable();
+            addToIndex(refreshedIndex, moblogs);
+            index = refreshedIndex;
+            lastFullRefresh = syncStarted;
+            changed = true;
+        } else {
+            moblogs = textAmerica4J.getCommunityMoblogs(formatHighWaterMark(new Date(highWaterMark - OVERLAP)));
+            changed = addToIndex(index, moblogs);
+        }
+
+        // The index is saved first, so a crash in between leaves an older high-water mark, never a lost moblog
+        if (changed) {
+            MoblogSnapshot.write(new Vector(index.values()), syncStarted, indexFile);
+        }
+        highWaterMark = syncStarted;
+        saveState();
+
+        return (moblogs == null) ? new Vector() : moblogs;
+    }
+
+    /**
+     * Merge moblogs retrieved elsewhere, such as from a snapshot, into the index
+     *
+     * @param moblogs Vector of Hashtables where each hashtable contains at least the "MoblogID" key
+     */
+    public synchronized void merge(Vector moblogs) {
+        addToIndex(index, moblogs);
+    }
+
+    /**
+     * Retrieve a moblog from the index
+     *
+     * @param moblogID Moblog ID
+     * @return Hashtable for the moblog or <code>null</code> if it is not in the index
+     */
+    public synchronized Hashtable getMoblog(int moblogID) {
+        return (Hashtable) index.get(Integer.valueOf(moblogID));
+    }
+
+    /**
+     * Retrieve all moblogs in the index
+     *
+     * @return Vector of Hashtables for every moblog in the index
+     */
+    public synchronized Vector getMoblogs() {
+        return new Vector(index.values());
+    }
+
+    /**
+     * @return Number of moblogs in the index
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * @return Time of the last sync in milliseconds, or 0 if there has not been one
+     */
+    public synchronized long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * @return Time of the last full refresh in milliseconds, or 0 if there has not been one
+     */
+    public synchronized long getLastFullRefresh() {
+        return lastFullRefresh;
+    }
+
+    /**
+     * Format the high-water mark as the date value passed to <code>ta.Moblog.GetCommunityMoblogs</code>
+     *
+     * @param date High-water mark, already moved back by a day
+     * @return Date value for the "which" parameter, in {@link #SERVICE_TIME_ZONE}
+     */
+    protected String formatHighWaterMark(Date date) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
+        dateFormat.setTimeZone(SERVICE_TIME_ZONE);
+
+        return dateFormat.format(date);
+    }
+
+    private boolean isFullRefreshDue(long now) {
+        return index.isEmpty() || highWaterMark == 0 || (now - lastFullRefresh) >= fullRefreshInterval;
+    }
+
+    /**
+     * @return <code>true</code> if any moblogs were added or differ from their indexed copies in a value kept in
+     *         the index snapshot
+     */
+    private static boolean addToIndex(Hashtable index, Vector moblogs) {
+        boolean changed = false;
+        if (moblogs == null) {
+            return changed;
+        }
+
+        Iterator moblogIterator = moblogs.iterator();
+        while (moblogIterator.hasNext()) {
+            Hashtable moblog = (Hashtable) moblogIterator.next();
+            Integer moblogID = MoblogListing.toMoblogID(moblog.get(MOBLOG_ID));
+
+            if (moblogID != null) {
+                Hashtable indexed = (Hashtable) index.put(moblogID, moblog);
+                if (indexed == null || !isSame(indexed, moblog)) {
+                    changed = true;
+                }
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Compare the values of a moblog that are kept in the index snapshot, where missing values are empty strings
+     */
+    private static boolean isSame(Hashtable indexed, Hashtable moblog) {
+        for (int i = 0; i < INDEXED_VALUES.length; i++) {
+            Object indexedValue = indexed.get(INDEXED_VALUES[i]);
+            Object value = moblog.get(INDEXED_VALUES[i]);
+            if (!((indexedValue == null) ? "" : indexedValue.toString()).equals((value == null) ? "" : value.toString())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void loadState() throws IOException {
+        if (!stateFile.exists()) {
+            return;
+        }
+
+        Properties state = new Properties();
+        InputStream is = new FileInputStream(stateFile);
+        try {
+            state.load(is);
+        } finally {
+            is.close();
+        }
+
+        highWaterMark = Long.parseLong(state.getProperty(HIGH_WATER_MARK, "0"));
+        lastFullRefresh = Long.parseLong(state.getProperty(LAST_FULL_REFRESH, "0"));
+
+        if (indexFile.exists()) {
+            try {
+                addToIndex(index, MoblogSnapshot.load(indexFile).toVector());
+            } catch (IOException e) {
+                // An unreadable index leaves it empty, so the next sync is a full refresh
+                index.clear();
+            }
+        }
+    }
+
+    private void saveState() throws IOException {
+        Properties state = new Properties();
+        state.setProperty(HIGH_WATER_MARK, Long.toString(highWaterMark));
+        state.setProperty(LAST_FULL_REFRESH, Long.toString(lastFullRefresh));
+
+        File temporaryStateFile = new File(stateFile.getPath() + ".tmp");
+        OutputStream os = new FileOutputStream(temporaryStateFile);
+        try {
+            state.store(os, "TextAmerica4J community moblog sync state");
+        } finally {
+            os.close();
+        }
+
+        if (!temporaryStateFile.renameTo(stateFile)) {
+            stateFile.delete();
+            if (!temporaryStateFile.renameTo(stateFile)) {
+                throw new IOException("Unable to write sync state to " + stateFile);
+            }
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.util.Collection;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adds keywords to many entries with as few {@link TextAmerica4J#addKeywords(Integer, String)} calls as possible.
+ * <p/>
+ * Keywords are normalized (trimmed, lower case, commas treated as whitespace and internal whitespace collapsed to
+ * single spaces) and deduplicated per entry. Keywords added for the same entry are merged until the number of entries waiting reaches the batch
+ * size; the batch is then dispatched with one call per entry, running in parallel on an executor up to a maximum
+ * concurrency and, optionally, no faster than a {@link TokenBucket} allows. {@link #add(int, Collection)} blocks
+ * while the maximum number of calls is in flight, so a fast producer cannot queue unbounded work. If it is
+ * interrupted while waiting, the entries not yet dispatched are kept with the keywords waiting to be merged.
+ * <pre>
+ * KeywordTagger tagger = new KeywordTagger(textAmerica4J, executor, 8, 1000, new TokenBucket(20, 20));
+ * while (...) {
+ *     tagger.add(entryID, keywords);
+ * }
+ * tagger.flush();
+ * </pre>
+ * Failed calls do not stop the tagger; they are available from {@link #getFailures()} and can be retried by
+ * adding their keywords again. An entry's failure is cleared once a later call for the entry succeeds. A tagger is
+ * safe for use by concurrent threads.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class KeywordTagger {
+
+    private static final String KEYWORD_SEPARATOR = ",";
+
+    private final TextAmerica4J textAmerica4J;
+    private final Executor executor;
+    private final int maximumConcurrency;
+    private final int batchSize;
+    private final TokenBucket callRateLimit;
+    private final Semaphore calls;
+
+    private final AtomicLong callCount = new AtomicLong();
+    private final AtomicLong keywordCount = new AtomicLong();
+    private final Hashtable failures = new Hashtable();
+
+    private LinkedHashMap pending = new LinkedHashMap();
+
+    /**
+     * Create a tagger
+     *
+     * @param textAmerica4J      {@link TextAmerica4J} instance
+     * @param executor           Executor that runs the calls
+     * @param maximumConcurrency Maximum number of calls in flight
+     * @param batchSize          Number of entries whose keywords are merged before they are dispatched
+     * @param callRateLimit      Limit on calls per second, one permit per call, or <code>null</code> for none
+     */
+    public KeywordTagger(TextAmerica4J textAmerica4J, Executor executor, int maximumConcurrency, int batchSize,
+                         TokenBucket callRateLimit) {
+        if (textAmerica4J == null || executor == null) {
+            throw new IllegalArgumentException("TextAmerica4J instance and executor cannot be null");
+        }
+
+        if (maximumConcurrency <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Maximum concurrency and batch size must be positive");
+        }
+
+        this.textAmerica4J = textAmerica4J;
+        this.executor = executor;
+        this.maximumConcurrency = maximumConcurrency;
+        this.batchSize = batchSize;
+        this.callRateLimit = callRateLimit;
+        this.calls = new Semaphore(maximumConcurrency);
+    }
+
+    /**
+     * Add keywords to an entry
+     *
+     * @param entryID  ID associated with the image that keywords are being added to
+     * @param keywords Keywords separated by commas
+     * @throws InterruptedException If interrupted while waiting for calls in flight
+     */
+    public void add(int entryID, String keywords) throws InterruptedException {
+        LinkedHashSet keywordSet = new LinkedHashSet();
+
+        if (keywords != null) {
+            StringTokenizer tokenizer = new StringTokenizer(keywords, KEYWORD_SEPARATOR);
+            while (tokenizer.hasMoreTokens()) {
+                keywordSet.add(tokenizer.nextToken());
+            }
+        }
+
+        add(entryID, keywordSet);
+    }
+
+    /**
+     * Add keywords to an entry
+     *
+     * @param entryID  ID associated with the image that keywords are being added to
+     * @param keywords Collection of keyword Strings
+     * @throws InterruptedException If interrupted while waiting for calls in flight
+     */
+    public void add(int entryID, Collection keywords) throws InterruptedException {
+        Map batch = null;
+
+        synchronized (this) {
+            Integer key = Integer.valueOf(entryID);
+            LinkedHashSet entryKeywords = (LinkedHashSet) pending.get(key);
+
+            Iterator iterator = keywords.iterator();
+            while (iterator.hasNext()) {
+                String keyword = normalize(iterator.next());
+                if (keyword.length() > 0) {
+                    if (entryKeywords == null) {
+                        entryKeywords = new LinkedHashSet();
+                        pending.put(key, entryKeywords);
+                    }
+                    entryKeywords.add(keyword);
+                }
+            }
+
+            if (pending.size() >= batchSize) {
+                batch = pending;
+                pending = new LinkedHashMap();
+            }
+        }
+
+        if (batch != null) {
+            dispatch(batch);
+        }
+    }
+
+    /**
+     * Dispatch the keywords waiting to be merged and wait until every call has finished
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        Map batch;
+
+        synchronized (this) {
+            batch = pending;
+            pending = new LinkedHashMap();
+        }
+
+        dispatch(batch);
+
+        calls.acquire(maximumConcurrency);
+        calls.release(maximumConcurrency);
+    }
+
+    /**
+     * @return Number of successful calls
+     */
+    public long getCallCount() {
+        return callCount.get();
+    }
+
+    /**
+     * @return Number of keywords added by successful calls
+     */
+    public long getKeywordCount() {
+        return keywordCount.get();
+    }
+
+    /**
+     * @return Hashtable of the Exception thrown for each entry ID whose last call failed
+     */
+    public Hashtable getFailures() {
+        return new Hashtable(failures);
+    }
+
+    private void dispatch(Map batch) throws InterruptedException {
+        Iterator entries = batch.entrySet().iterator();
+
+        while (entries.hasNext()) {
+            Map.Entry entry = (Map.Entry) entries.next();
+            final Integer entryID = (Integer) entry.getKey();
+            final LinkedHashSet keywords = (LinkedHashSet) entry.getValue();
+
+            try {
+                calls.acquire();
+            } catch (InterruptedException e) {
+                requeue(entry, entries);
+                throw e;
+            }
+
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            call(entryID, keywords);
+                        } finally {
+                            calls.release();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                calls.release();
+                failures.put(entryID, e);
+            }
+        }
+    }
+
+    /**
+     * Put entries that were not dispatched back with the keywords waiting to be merged, ahead of any added since
+     *
+     * @param entry   First entry not dispatched
+     * @param entries Iterator over the entries after it
+     */
+    private synchronized void requeue(Map.Entry entry, Iterator entries) {
+        LinkedHashMap requeued = new LinkedHashMap();
+        requeued.put(entry.getKey(), entry.getValue());
+        while (entries.hasNext()) {
+            Map.Entry next = (Map.Entry) entries.next();
+            requeued.put(next.getKey(), next.getValue());
+        }
+
+        Iterator added = pending.entrySet().iterator();
+        while (added.hasNext()) {
+            Map.Entry next = (Map.Entry) added.next();
+            LinkedHashSet keywords = (LinkedHashSet) requeued.get(next.getKey());
+            if (keywords == null) {
+                requeued.put(next.getKey(), next.getValue());
+            } else {
+                keywords.addAll((LinkedHashSet) next.getValue());
+            }
+        }
+
+        pending = requeued;
+    }
+
+    private void call(Integer entryID, LinkedHashSet keywords) {
+        StringBuffer joinedKeywords = new StringBuffer();
+        Iterator iterator = keywords.iterator();
+        while (iterator.hasNext()) {
+            if (joinedKeywords.length() > 0) {
+                joinedKeywords.append(KEYWORD_SEPARATOR);
+            }
+            joinedKeywords.append(iterator.next());
+        }
+
+        try {
+            if (callRateLimit != null) {
+                callRateLimit.acquire(1);
+            }
+
+            textAmerica4J.addKeywords(entryID, joinedKeywords.toString());
+
+            failures.remove(entryID);
+            callCount.incrementAndGet();
+            keywordCount.addAndGet(keywords.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failures.put(entryID, e);
+        } catch (Exception e) {
+            failures.put(entryID, e);
+        }
+    }
+
+    private static String normalize(Object keyword) {
+        if (keyword == null) {
+            return "";
+        }
+
+        StringBuffer normalizedKeyword = new StringBuffer();
+        String text = keyword.toString().toLowerCase(Locale.ENGLISH);
+        boolean space = false;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c) || c == ',') {
+                space = normalizedKeyword.length() > 0;
+            } else {
+                if (space) {
+                    normalizedKeyword.append(' ');
+                    space = false;
+                }
+                normalizedKeyword.append(c);
+            }
+        }
+
+        return normalizedKeyword.toString();
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+/**
+ * Cache of moblog listings retrieved with {@link TextAmerica4J#getMyMoblogs()} and
+ * {@link TextAmerica4J#getCommunityMoblogs(String)}, applied with {@link TextAmerica4J#withCache(MoblogCache)}.
+ * <p/>
+ * Listings are stored under a group, the XML-RPC method that returned them, and a key within the group: the login
+ * for {@link #MY_MOBLOGS} and the <code>which</code> parameter for {@link #COMMUNITY_MOBLOGS}. Values are Vectors
+ * of Hashtables of Strings and Integers, and implementations must not share them with callers, since callers are
+ * free to modify the listings they receive.
+ * <p/>
+ * When a moblog is changed through TextAmerica4J, the affected listings are invalidated with
+ * {@link #invalidate(String, String)}, which removes them and notifies the {@link InvalidationListener}s. A backend
+ * shared by several nodes also notifies its listeners of the invalidations made on other nodes, which is how
+ * {@link TieredMoblogCache} learns to drop its local copies. {@link #evict(String, String)} removes listings without
+ * notifying anyone, to drop a copy that only this cache holds. {@link InProcessMoblogCache} and
+ * {@link OffHeapMoblogCache} are local backends; {@link TieredMoblogCache} puts a local cache in front of a shared
+ * one.
+ * <p/>
+ * Listings are read through the cache by taking its generation with {@link #getGeneration(String, String)} before
+ * the listing is retrieved from the service, and storing the listing with
+ * {@link #put(String, String, Object, long)}, which drops it if the listing was invalidated in the meantime. A
+ * listing fetched before a change therefore cannot replace the invalidation made after it.
+ * <p/>
+ * Implementations must be safe for use by concurrent threads.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public interface MoblogCache {
+
+    /**
+     * Group of the listings returned by {@link TextAmerica4J#getMyMoblogs()}, keyed by login
+     */
+    String MY_MOBLOGS = TextAmerica4J.TA_MOBLOG_GETMYMOBLOGS;
+
+    /**
+     * Group of the listings returned by {@link TextAmerica4J#getCommunityMoblogs(String)}, keyed by the
+     * <code>which</code> parameter, "" if it is blank
+     */
+    String COMMUNITY_MOBLOGS = TextAmerica4J.TA_MOBLOG_GETCOMMUNITYMOBLOGS;
+
+    /**
+     * Retrieve a listing
+     *
+     * @param group Group of the listing
+     * @param key   Key of the listing within the group
+     * @return Copy of the listing, or <code>null</code> if it is not cached or has expired
+     */
+    Object get(String group, String key);
+
+    /**
+     * Store a listing
+     *
+     * @param group Group of the listing
+     * @param key   Key of the listing within the group
+     * @param value Listing
+     */
+    void put(String group, String key, Object value);
+
+    /**
+     * Take the generation of a listing, which changes whenever the listing is invalidated or evicted. An
+     * implementation may use one generation for a whole group or for the whole cache.
+     *
+     * @param group Group of the listing
+     * @param key   Key of the listing within the group
+     * @return Generation of the listing
+     */
+    long getGeneration(String group, String key);
+
+    /**
+     * Store a listing unless it has been invalidated or evicted since its generation was taken
+     *
+     * @param group      Group of the listing
+     * @param key        Key of the listing within the group
+     * @param value      Listing
+     * @param generation Generation taken with {@link #getGeneration(String, String)} before the listing was retrieved
+     * @return <code>true</code> if the listing was stored, <code>false</code> if it was dropped
+     */
+    boolean put(String group, String key, Object value, long generation);
+
+    /**
+     * Remove a listing, or a whole group, because it has changed, and notify the invalidation listeners. A shared
+     * backend also notifies the listeners on other nodes.
+     *
+     * @param group Group of the listing
+     * @param key   Key of the listing within the group, or <code>null</code> for every listing in the group
+     */
+    void invalidate(String group, String key);
+
+    /**
+     * Remove a listing, or a whole group, without notifying the invalidation listeners. Used to drop copies held
+     * only by this cache, such as the local copies of a {@link TieredMoblogCache}.
+     *
+     * @param group Group of the listing
+     * @param key   Key of the listing within the group, or <code>null</code> for every listing in the group
+     */
+    void evict(String group, String key);
+
+    /**
+     * @param invalidationListener Listener notified of invalidations
+     */
+    void addInvalidationListener(InvalidationListener invalidationListener);
+
+    /**
+     * @param invalidationListener Listener to remove
+     */
+    void removeInvalidationListener(InvalidationListener invalidationListener);
+}
@@ -0,0 +1,323 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.Vector;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory search index over moblog listings, for autocomplete and search without scanning a listing.
+ * <p/>
+ * Moblogs are indexed by MoblogID, by title and URL prefix and by the words of their titles. Titles and URLs are
+ * compared in lower case, and URLs without their "http://", "https://" and "www." prefixes, so "moblog" finds
+ * "http://www.moblog.textamerica.com". Title and URL prefixes are ranges of sorted maps and words are looked up in
+ * an inverted index, so queries take microseconds regardless of the number of moblogs.
+ * <p/>
+ * The index is built incrementally: {@link #merge(Vector)} adds new moblogs and re-indexes changed ones, so it can
+ * be fed each result of {@link IncrementalMoblogSync#sync()} or {@link TextAmerica4J#getCommunityMoblogs(String)}.
+ * <pre>
+ * MoblogIndex moblogIndex = new MoblogIndex();
+ * moblogIndex.merge(incrementalMoblogSync.sync());
+ * Vector matches = moblogIndex.findByTitlePrefix("vaca", 10);
+ * </pre>
+ * Results are the Hashtables that were merged, which must not be modified. Records whose MoblogID is not numeric
+ * are not indexed. The index is safe for use by concurrent threads; queries proceed in parallel.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class MoblogIndex {
+
+    private static final String MOBLOG_ID = "MoblogID";
+    private static final String TITLE = "title";
+    private static final String URL = "url";
+
+    private static final char SEPARATOR = '\u0000';
+    private static final char RANGE_END = '\uffff';
+    private static final String[] URL_PREFIXES = {"http://", "https://", "www."};
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final HashMap moblogs = new HashMap();
+    private final TreeMap titles = new TreeMap();
+    private final TreeMap urls = new TreeMap();
+    private final HashMap tokens = new HashMap();
+
+    /**
+     * Add moblogs to the index, replacing any already indexed with the same MoblogID
+     *
+     * @param moblogs Vector of Hashtables where each hashtable contains the keys "MoblogID", "title" and "url"
+     */
+    public void merge(Vector moblogs) {
+        if (moblogs == null) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < moblogs.size(); i++) {
+                Hashtable moblog = (Hashtable) moblogs.get(i);
+                Integer moblogID = MoblogListing.toMoblogID(moblog.get(MOBLOG_ID));
+
+                if (moblogID != null) {
+                    unindex(moblogID);
+                    index(moblogID, moblog);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a moblog from the index
+     *
+     * @param moblogID Moblog ID
+     * @return <code>true</code> if the moblog was in the index
+     */
+    public boolean remove(int moblogID) {
+        lock.writeLock().lock();
+        try {
+            return unindex(Integer.valueOf(moblogID));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieve a moblog from the index
+     *
+     * @param moblogID Moblog ID
+     * @return Hashtable for the moblog or <code>null</code> if it is not in the index
+     */
+    public Hashtable getMoblog(int moblogID) {
+        lock.readLock().lock();
+        try {
+            return (Hashtable) moblogs.get(Integer.valueOf(moblogID));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find moblogs whose title starts with a prefix, ignoring case
+     *
+     * @param prefix Title prefix
+     * @param limit  Maximum number of moblogs to return
+     * @return Vector of Hashtables for the matching moblogs, ordered by title
+     */
+    public Vector findByTitlePrefix(String prefix, int limit) {
+        return findByPrefix(titles, normalizeTitle(prefix), limit);
+    }
+
+    /**
+     * Find moblogs whose URL starts with a prefix, ignoring case and any "http://", "https://" or "www." prefix
+     *
+     * @param prefix URL prefix
+     * @param limit  Maximum number of moblogs to return
+     * @return Vector of Hashtables for the matching moblogs, ordered by URL
+     */
+    public Vector findByURLPrefix(String prefix, int limit) {
+        return findByPrefix(urls, normalizeURL(prefix), limit);
+    }
+
+    /**
+     * Find moblogs whose titles contain every word of a query, ignoring case
+     *
+     * @param query Words to search for
+     * @param limit Maximum number of moblogs to return
+     * @return Vector of Hashtables for the matching moblogs, ordered by MoblogID
+     */
+    public Vector search(String query, int limit) {
+        List queryTokens = tokenize(query);
+        Vector matches = new Vector();
+        if (queryTokens.isEmpty()) {
+            return matches;
+        }
+
+        lock.readLock().lock();
+        try {
+            TreeSet[] postings = new TreeSet[queryTokens.size()];
+            int smallest = 0;
+            for (int i = 0; i < postings.length; i++) {
+                postings[i] = (TreeSet) tokens.get(queryTokens.get(i));
+                if (postings[i] == null) {
+                    return matches;
+                }
+                if (postings[i].size() < postings[smallest].size()) {
+                    smallest = i;
+                }
+            }
+
+            Iterator candidates = postings[smallest].iterator();
+            while (candidates.hasNext() && matches.size() < limit) {
+                Object moblogID = candidates.next();
+                boolean matchesAll = true;
+                for (int i = 0; i < postings.length && matchesAll; i++) {
+                    matchesAll = postings[i].contains(moblogID);
+                }
+
+                if (matchesAll) {
+                    matches.add(moblogs.get(moblogID));
+                }
+            }
+
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of moblogs in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return moblogs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Vector findByPrefix(TreeMap keys, String prefix, int limit) {
+        Vector matches = new Vector();
+
+        lock.readLock().lock();
+        try {
+            SortedMap range = keys.subMap(prefix, prefix + RANGE_END);
+            Iterator moblogIDs = range.values().iterator();
+            while (moblogIDs.hasNext() && matches.size() < limit) {
+                matches.add(moblogs.get(moblogIDs.next()));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return matches;
+    }
+
+    private void index(Integer moblogID, Hashtable moblog) {
+        moblogs.put(moblogID, moblog);
+        titles.put(toKey(normalizeTitle(moblog.get(TITLE)), moblogID), moblogID);
+        urls.put(toKey(normalizeURL(moblog.get(URL)), moblogID), moblogID);
+
+        List titleTokens = tokenize(moblog.get(TITLE));
+        for (int i = 0; i < titleTokens.size(); i++) {
+            TreeSet postings = (TreeSet) tokens.get(titleTokens.get(i));
+            if (postings == null) {
+                postings = new TreeSet();
+                tokens.put(titleTokens.get(i), postings);
+            }
+            postings.add(moblogID);
+        }
+    }
+
+    private boolean unindex(Integer moblogID) {
+        Hashtable moblog = (Hashtable) moblogs.remove(moblogID);
+        if (moblog == null) {
+            return false;
+        }
+
+        titles.remove(toKey(normalizeTitle(moblog.get(TITLE)), moblogID));
+        urls.remove(toKey(normalizeURL(moblog.get(URL)), moblogID));
+
+        List titleTokens = tokenize(moblog.get(TITLE));
+        for (int i = 0; i < titleTokens.size(); i++) {
+            TreeSet postings = (TreeSet) tokens.get(titleTokens.get(i));
+            if (postings != null) {
+                postings.remove(moblogID);
+                if (postings.isEmpty()) {
+                    tokens.remove(titleTokens.get(i));
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static String toKey(String value, Integer moblogID) {
+        return value + SEPARATOR + moblogID;
+    }
+
+    private static String normalizeTitle(Object title) {
+        return (title == null) ? "" : title.toString().trim().toLowerCase(Locale.ENGLISH);
+    }
+
+    private static String normalizeURL(Object url) {
+        String normalizedURL = (url == null) ? "" : url.toString().trim().toLowerCase(Locale.ENGLISH);
+
+        for (int i = 0; i < URL_PREFIXES.length; i++) {
+            if (normalizedURL.startsWith(URL_PREFIXES[i])) {
+                normalizedURL = normalizedURL.substring(URL_PREFIXES[i].length());
+            }
+        }
+
+        return normalizedURL;
+    }
+
+    private static List tokenize(Object text) {
+        List textTokens = new ArrayList();
+        if (text == null) {
+            return textTokens;
+        }
+
+        String lowerCaseText = text.toString().toLowerCase(Locale.ENGLISH);
+        int start = -1;
+        for (int i = 0; i <= lowerCaseText.length(); i++) {
+            boolean wordCharacter = i < lowerCaseText.length() && Character.isLetterOrDigit(lowerCaseText.charAt(i));
+            if (wordCharacter && start < 0) {
+                start = i;
+            } else if (!wordCharacter && start >= 0) {
+                String token = lowerCaseText.substring(start, i);
+                if (!textTokens.contains(token)) {
+                    textTokens.add(token);
+                }
+                start = -1;
+            }
+        }
+
+        return textTokens;
+    }
+}
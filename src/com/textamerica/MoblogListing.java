@@ -0,0 +1,480 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Moblog listing, such as the one returned by {@link TextAmerica4J#getCommunityMoblogs(String)}, held in a compact
+ * columnar layout in a direct or memory-mapped buffer rather than as Hashtables and Strings on the heap. A listing
+ * of a million moblogs is a handful of objects, so keeping it resident adds almost nothing to garbage collection
+ * work.
+ * <p/>
+ * The MoblogIDs are stored in ascending order, followed, for each of "title", "url" and "postTo", by a table of
+ * record offsets and the UTF-8 encoded values. Moblogs are located by a binary search over the MoblogID column and
+ * their values decoded on demand, either by position or through a reusable {@link Flyweight}.
+ * <p/>
+ * Records whose MoblogID is not numeric are dropped, and missing values are read back as empty strings. Listings
+ * are immutable and safe for use by multiple concurrent threads; flyweights are not.
+ * <pre>
+ * MoblogListing listing = MoblogListing.create(textAmerica4J.getCommunityMoblogs("all"));
+ * MoblogListing.Flyweight moblog = listing.flyweight();
+ * for (int i = 0; i &lt; listing.size(); i++) {
+ *     moblog.moveTo(i);
+ *     ...
+ * }
+ * </pre>
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ * @see MoblogSnapshot
+ */
+public class MoblogListing {
+
+    private static final String UTF8 = "UTF-8";
+
+    private static final String MOBLOG_ID = "MoblogID";
+    private static final String[] COLUMNS = {"title", "url", "postTo"};
+
+    private static final int TITLE = 0;
+    private static final int URL = 1;
+    private static final int POST_TO = 2;
+
+    private final ByteBuffer buffer;
+    private final int base;
+    private final int count;
+    private final int end;
+    private final int[] offsetPositions = new int[COLUMNS.length];
+    private final int[] dataPositions = new int[COLUMNS.length];
+
+    /**
+     * Read a listing laid out in a buffer
+     *
+     * @param buffer Buffer holding the listing
+     * @param base   Position of the listing in the buffer
+     * @param count  Number of moblogs in the listing
+     * @throws IllegalArgumentException If the count is negative or the buffer is too small to hold the listing
+     */
+    MoblogListing(ByteBuffer buffer, int base, int count) {
+        this.buffer = buffer;
+        this.base = base;
+        this.count = count;
+
+        if (base < 0 || count < 0) {
+            throw new IllegalArgumentException("Moblog listing is corrupt");
+        }
+
+        // Positions are computed as longs so that a corrupt count or length cannot wrap around
+        long position = base + 4L * count;
+        for (int column = 0; column < COLUMNS.length; column++) {
+            long dataPosition = position + 4L * (count + 1L);
+            if (dataPosition > buffer.capacity()) {
+                throw new IllegalArgumentException("Moblog listing is truncated");
+            }
+            offsetPositions[column] = (int) position;
+            dataPositions[column] = (int) dataPosition;
+
+            int length = buffer.getInt(offsetPositions[column] + 4 * count);
+            if (length < 0) {
+                throw new IllegalArgumentException("Moblog listing is corrupt");
+            }
+            position = dataPosition + length;
+        }
+
+        if (position > buffer.capacity()) {
+            throw new IllegalArgumentException("Moblog listing is truncated");
+        }
+
+        end = (int) position;
+        checkOffsets();
+    }
+
+    /**
+     * Copy a listing into a direct buffer
+     *
+     * @param moblogs Vector of Hashtables where each hashtable contains the keys "MoblogID", "title", "url" and "postTo"
+     * @return Listing
+     * @throws UnsupportedEncodingException If UTF-8 is not supported
+     */
+    public static MoblogListing create(Vector moblogs) throws UnsupportedEncodingException {
+        Object[][] records = toRecords(moblogs);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(getLength(records));
+        put(buffer, records);
+        buffer.flip();
+
+        return new MoblogListing(buffer.asReadOnlyBuffer(), 0, records.length);
+    }
+
+    /**
+     * Convert a listing to records of MoblogID and UTF-8 encoded values, in ascending order of MoblogID
+     *
+     * @param moblogs Vector of Hashtables
+     * @return Records
+     * @throws UnsupportedEncodingException If UTF-8 is not supported
+     */
+    static Object[][] toRecords(Vector moblogs) throws UnsupportedEncodingException {
+        Object[][] records = new Object[(moblogs == null) ? 0 : moblogs.size()][];
+        int count = 0;
+
+        for (int i = 0; i < records.length; i++) {
+            Hashtable moblog = (Hashtable) moblogs.get(i);
+            Integer moblogID = toMoblogID(moblog.get(MOBLOG_ID));
+            if (moblogID == null) {
+                continue;
+            }
+
+            Object[] record = new Object[COLUMNS.length + 1];
+            record[0] = moblogID;
+            for (int column = 0; column < COLUMNS.length; column++) {
+                Object value = moblog.get(COLUMNS[column]);
+                record[column + 1] = (value == null) ? new byte[0] : value.toString().getBytes(UTF8);
+            }
+            records[count++] = record;
+        }
+
+        Object[][] sorted = new Object[count][];
+        System.arraycopy(records, 0, sorted, 0, count);
+        Arrays.sort(sorted, new Comparator() {
+            public int compare(Object first, Object second) {
+                return ((Integer) ((Object[]) first)[0]).compareTo((Integer) ((Object[]) second)[0]);
+            }
+        });
+
+        return sorted;
+    }
+
+    /**
+     * @param records Records from {@link #toRecords(Vector)}
+     * @return Number of bytes needed to lay out the records
+     */
+    static int getLength(Object[][] records) {
+        int length = 4 * records.length;
+
+        for (int column = 0; column < COLUMNS.length; column++) {
+            length += 4 * (records.length + 1);
+            for (int i = 0; i < records.length; i++) {
+                length += ((byte[]) records[i][column + 1]).length;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Lay out records at the position of a buffer
+     *
+     * @param buffer  Buffer with at least {@link #getLength(Object[][])} bytes remaining
+     * @param records Records from {@link #toRecords(Vector)}
+     */
+    static void put(ByteBuffer buffer, Object[][] records) {
+        for (int i = 0; i < records.length; i++) {
+            buffer.putInt(((Integer) records[i][0]).intValue());
+        }
+
+        for (int column = 0; column < COLUMNS.length; column++) {
+            int offset = 0;
+            for (int i = 0; i < records.length; i++) {
+                buffer.putInt(offset);
+                offset += ((byte[]) records[i][column + 1]).length;
+            }
+            buffer.putInt(offset);
+
+            for (int i = 0; i < records.length; i++) {
+                buffer.put((byte[]) records[i][column + 1]);
+            }
+        }
+    }
+
+    static Integer toMoblogID(Object moblogID) {
+        if (moblogID instanceof Integer) {
+            return (Integer) moblogID;
+        }
+
+        if (moblogID != null) {
+            try {
+                return Integer.valueOf(moblogID.toString().trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return Number of moblogs in the listing
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return Number of bytes the listing occupies in its buffer
+     */
+    public int getLength() {
+        return end - base;
+    }
+
+    /**
+     * Find the position of a moblog in the listing
+     *
+     * @param moblogID Moblog ID
+     * @return Position of the moblog or -1 if it is not in the listing
+     */
+    public int indexOf(int moblogID) {
+        int low = 0;
+        int high = count - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleID = getMoblogID(middle);
+
+            if (middleID < moblogID) {
+                low = middle + 1;
+            } else if (middleID > moblogID) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param index Position of the moblog in the listing
+     * @return Moblog ID
+     */
+    public int getMoblogID(int index) {
+        checkIndex(index);
+
+        return buffer.getInt(base + 4 * index);
+    }
+
+    /**
+     * @param index Position of the moblog in the listing
+     * @return Title of the moblog
+     */
+    public String getTitle(int index) {
+        return getString(TITLE, index);
+    }
+
+    /**
+     * @param index Position of the moblog in the listing
+     * @return URL of the moblog
+     */
+    public String getURL(int index) {
+        return getString(URL, index);
+    }
+
+    /**
+     * @param index Position of the moblog in the listing
+     * @return Post to address of the moblog
+     */
+    public String getPostTo(int index) {
+        return getString(POST_TO, index);
+    }
+
+    /**
+     * Decode a moblog in the listing
+     *
+     * @param moblogID Moblog ID
+     * @return Hashtable with the keys "MoblogID", "title", "url" and "postTo", or <code>null</code> if the moblog
+     *         is not in the listing
+     */
+    public Hashtable getMoblog(int moblogID) {
+        int index = indexOf(moblogID);
+
+        return (index < 0) ? null : decode(index);
+    }
+
+    /**
+     * Decode every moblog in the listing
+     *
+     * @return Vector of Hashtables with the keys "MoblogID", "title", "url" and "postTo", ordered by MoblogID
+     */
+    public Vector toVector() {
+        Vector moblogs = new Vector(count);
+
+        for (int i = 0; i < count; i++) {
+            moblogs.add(decode(i));
+        }
+
+        return moblogs;
+    }
+
+    /**
+     * @return New flyweight positioned before the first moblog in the listing
+     */
+    public Flyweight flyweight() {
+        return new Flyweight();
+    }
+
+    private Hashtable decode(int index) {
+        Hashtable moblog = new Hashtable(8);
+
+        moblog.put(MOBLOG_ID, Integer.valueOf(getMoblogID(index)));
+        for (int column = 0; column < COLUMNS.length; column++) {
+            moblog.put(COLUMNS[column], getString(column, index));
+        }
+
+        return moblog;
+    }
+
+    private String getString(int column, int index) {
+        checkIndex(index);
+
+        int offsetPosition = offsetPositions[column] + 4 * index;
+        int start = buffer.getInt(offsetPosition);
+        int end = buffer.getInt(offsetPosition + 4);
+
+        byte[] bytes = new byte[end - start];
+        ByteBuffer view = buffer.duplicate();
+        view.position(dataPositions[column] + start);
+        view.get(bytes);
+
+        try {
+            return new String(bytes, UTF8);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    /**
+     * Check once that every offset table starts at zero and ascends to the length of its column, so that values
+     * decoded later lie within the column's data
+     *
+     * @throws IllegalArgumentException If an offset is out of order or outside the column
+     */
+    private void checkOffsets() {
+        for (int column = 0; column < COLUMNS.length; column++) {
+            int previous = 0;
+            for (int i = 0; i <= count; i++) {
+                int offset = buffer.getInt(offsetPositions[column] + 4 * i);
+                if (offset < previous || (i == 0 && offset != 0)) {
+                    throw new IllegalArgumentException("Moblog listing has an invalid offset in column "
+                            + COLUMNS[column] + " at " + i);
+                }
+                previous = offset;
+            }
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+    }
+
+    /**
+     * Reusable view of one moblog in the listing. Moving a flyweight allocates nothing; values are decoded only
+     * when they are read.
+     */
+    public class Flyweight {
+
+        private int index = -1;
+
+        Flyweight() {
+        }
+
+        /**
+         * Move to a moblog in the listing
+         *
+         * @param index Position of the moblog in the listing
+         * @return This flyweight
+         */
+        public Flyweight moveTo(int index) {
+            checkIndex(index);
+            this.index = index;
+
+            return this;
+        }
+
+        /**
+         * Move to the next moblog in the listing
+         *
+         * @return <code>true</code> if there was a next moblog
+         */
+        public boolean next() {
+            if (index + 1 >= count) {
+                return false;
+            }
+
+            index++;
+            return true;
+        }
+
+        /**
+         * @return Position of the moblog in the listing
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return Moblog ID
+         */
+        public int getMoblogID() {
+            return MoblogListing.this.getMoblogID(index);
+        }
+
+        /**
+         * @return Title of the moblog
+         */
+        public String getTitle() {
+            return MoblogListing.this.getTitle(index);
+        }
+
+        /**
+         * @return URL of the moblog
+         */
+        public String getURL() {
+            return MoblogListing.this.getURL(index);
+        }
+
+        /**
+         * @return Post to address of the moblog
+         */
+        public String getPostTo() {
+            return MoblogListing.this.getPostTo(index);
+        }
+    }
+}
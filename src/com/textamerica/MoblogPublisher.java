@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the results of {@link TextAmerica4J#getCommunityMoblogs(String)} as a {@link Flow.Publisher}.
+ * <p/>
+ * The remote call is not made until a subscriber first signals demand, and each subscriber gets its own
+ * call. Moblogs are then delivered one {@link Hashtable} at a time, never more than the subscriber has
+ * requested, and each moblog is released as soon as it has been delivered. The service returns the listing
+ * in a single response, so the listing itself is still fetched in one piece. The remote call is made on the
+ * executor given when the publisher is created, so blocking I/O stays off pools shared with other work.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class MoblogPublisher implements Flow.Publisher<Hashtable> {
+
+    private final TextAmerica4J textAmerica4J;
+    private final String which;
+    private final Executor executor;
+
+    /**
+     * Create a publisher for community moblogs
+     *
+     * @param textAmerica4J {@link TextAmerica4J} instance
+     * @param which         Which moblogs to retrieve, as passed to {@link TextAmerica4J#getCommunityMoblogs(String)}
+     * @param executor      Executor used to make the remote call and deliver moblogs
+     */
+    public MoblogPublisher(TextAmerica4J textAmerica4J, String which, Executor executor) {
+        if (executor == null) {
+            throw new NullPointerException("Executor cannot be null");
+        }
+
+        this.textAmerica4J = textAmerica4J;
+        this.which = which;
+        this.executor = executor;
+    }
+
+    /**
+     * Subscribe to the community moblogs
+     *
+     * @param subscriber Subscriber
+     */
+    public void subscribe(Flow.Subscriber<? super Hashtable> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber cannot be null");
+        }
+
+        subscriber.onSubscribe(new MoblogSubscription(subscriber));
+    }
+
+    /**
+     * Subscription that fetches the moblogs on first demand and delivers them as requested. Delivery is
+     * serialized through a work-in-progress counter so that at most one thread drains at a time.
+     */
+    private class MoblogSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super Hashtable> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger workInProgress = new AtomicInteger();
+
+        private volatile boolean cancelled;
+        private volatile Throwable pendingError;
+
+        private Vector moblogs;
+        private int index;
+        private boolean done;
+
+        MoblogSubscription(Flow.Subscriber<? super Hashtable> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        public void request(long n) {
+            if (n <= 0) {
+                pendingError = new IllegalArgumentException("Requested number of moblogs must be positive: " + n);
+            } else {
+                long current;
+                long updated;
+                do {
+                    current = demand.get();
+                    updated = current + n;
+                    if (updated < 0) {
+                        updated = Long.MAX_VALUE;
+                    }
+                } while (!demand.compareAndSet(current, updated));
+            }
+
+            schedule();
+        }
+
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (workInProgress.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = workInProgress.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            if (done) {
+                return;
+            }
+
+            if (cancelled) {
+                finish();
+                return;
+            }
+
+            if (pendingError != null) {
+                finish();
+                subscriber.onError(pendingError);
+                return;
+            }
+
+            long requested = demand.get();
+            if (requested == 0) {
+                return;
+            }
+
+            if (moblogs == null) {
+                try {
+                    Vector communityMoblogs = textAmerica4J.getCommunityMoblogs(which);
+                    moblogs = (communityMoblogs == null) ? new Vector() : communityMoblogs;
+                } catch (Exception e) {
+                    finish();
+                    subscriber.onError(e);
+                    return;
+                }
+            }
+
+            long emitted = 0;
+            while (emitted != requested && index < moblogs.size()) {
+                if (cancelled) {
+                    finish();
+                    return;
+                }
+
+                Hashtable moblog = (Hashtable) moblogs.set(index++, null);
+                subscriber.onNext(moblog);
+                emitted++;
+            }
+
+            if (index == moblogs.size()) {
+                finish();
+                if (!cancelled) {
+                    subscriber.onComplete();
+                }
+                return;
+            }
+
+            if (requested != Long.MAX_VALUE) {
+                demand.addAndGet(-emitted);
+            }
+        }
+
+        private void finish() {
+            done = true;
+            moblogs = null;
+        }
+    }
+}
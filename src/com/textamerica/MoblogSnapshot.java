@@ -0,0 +1,236 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Compact, memory-mapped snapshot of a moblog listing such as the one returned by
+ * {@link TextAmerica4J#getCommunityMoblogs(String)}.
+ * <p/>
+ * The snapshot file is a header (magic number, version, record count and creation time) followed by the
+ * columnar layout of a {@link MoblogListing}. Loading a snapshot maps the file and checks its header and offset
+ * tables without decoding any values. Moblogs are located by a binary search over the MoblogID column and
+ * decoded on demand.
+ * <p/>
+ * Records whose MoblogID is not numeric are not written, and missing values are read back as empty strings.
+ * Snapshots are immutable and safe for use by multiple concurrent threads.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ * @see MoblogListing
+ */
+public class MoblogSnapshot {
+
+    private static final int MAGIC = 0x54413453;
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 20;
+
+    private final MoblogListing listing;
+    private final long created;
+
+    private MoblogSnapshot(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a moblog snapshot");
+        }
+
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported moblog snapshot version: " + buffer.getInt(4));
+        }
+
+        created = buffer.getLong(12);
+
+        // Each moblog takes at least 16 bytes, its ID and an offset in each column
+        int count = buffer.getInt(8);
+        if (count < 0 || count > (buffer.capacity() - HEADER_LENGTH) / 16) {
+            throw new IOException("Moblog snapshot has an invalid record count: " + count);
+        }
+
+        try {
+            listing = new MoblogListing(buffer, HEADER_LENGTH, count);
+        } catch (RuntimeException e) {
+            IOException exception = new IOException("Moblog snapshot is corrupt");
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    /**
+     * Map a snapshot file into memory
+     *
+     * @param file Snapshot file
+     * @return Snapshot
+     * @throws IOException If the file cannot be read or is not a valid snapshot
+     */
+    public static MoblogSnapshot load(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            return new MoblogSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Write a snapshot file. The snapshot is written to a new temporary file which then atomically replaces
+     * <code>file</code>, so readers never see a partially written snapshot and concurrent writers never write
+     * to the same temporary file.
+     *
+     * @param moblogs Vector of Hashtables where each hashtable contains the keys "MoblogID", "title", "url" and "postTo"
+     * @param created Creation time of the listing in milliseconds
+     * @param file    Snapshot file
+     * @throws IOException If there is an error writing the file
+     */
+    public static void write(Vector moblogs, long created, File file) throws IOException {
+        Object[][] records = MoblogListing.toRecords(moblogs);
+
+        ByteBuffer snapshot = ByteBuffer.allocate(HEADER_LENGTH + MoblogListing.getLength(records));
+        snapshot.putInt(MAGIC).putInt(VERSION).putInt(records.length).putLong(created);
+        MoblogListing.put(snapshot, records);
+        snapshot.flip();
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        File temporaryFile = File.createTempFile(file.getName() + ".", ".tmp", directory);
+        try {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(temporaryFile, "rw");
+            try {
+                FileChannel channel = randomAccessFile.getChannel();
+                while (snapshot.hasRemaining()) {
+                    channel.write(snapshot);
+                }
+                channel.force(true);
+            } finally {
+                randomAccessFile.close();
+            }
+
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            temporaryFile.delete();
+        }
+    }
+
+    /**
+     * @return Listing in the snapshot, backed by the mapped file
+     */
+    public MoblogListing getListing() {
+        return listing;
+    }
+
+    /**
+     * @return Number of moblogs in the snapshot
+     */
+    public int size() {
+        return listing.size();
+    }
+
+    /**
+     * @return Creation time of the listing in milliseconds
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * Find the position of a moblog in the snapshot
+     *
+     * @param moblogID Moblog ID
+     * @return Position of the moblog or -1 if it is not in the snapshot
+     */
+    public int indexOf(int moblogID) {
+        return listing.indexOf(moblogID);
+    }
+
+    /**
+     * @param index Position of the moblog in the snapshot
+     * @return Moblog ID
+     */
+    public int getMoblogID(int index) {
+        return listing.getMoblogID(index);
+    }
+
+    /**
+     * @param index Position of the moblog in the snapshot
+     * @return Title of the moblog
+     */
+    public String getTitle(int index) {
+        return listing.getTitle(index);
+    }
+
+    /**
+     * @param index Position of the moblog in the snapshot
+     * @return URL of the moblog
+     */
+    public String getURL(int index) {
+        return listing.getURL(index);
+    }
+
+    /**
+     * @param index Position of the moblog in the snapshot
+     * @return Post to address of the moblog
+     */
+    public String getPostTo(int index) {
+        return listing.getPostTo(index);
+    }
+
+    /**
+     * Decode a moblog in the snapshot
+     *
+     * @param moblogID Moblog ID
+     * @return Hashtable with the keys "MoblogID", "title", "url" and "postTo", or <code>null</code> if the moblog
+     *         is not in the snapshot
+     */
+    public Hashtable getMoblog(int moblogID) {
+        return listing.getMoblog(moblogID);
+    }
+
+    /**
+     * Decode every moblog in the snapshot
+     *
+     * @return Vector of Hashtables with the keys "MoblogID", "title", "url" and "postTo", ordered by MoblogID
+     */
+    public Vector toVector() {
+        return listing.toVector();
+    }
+}
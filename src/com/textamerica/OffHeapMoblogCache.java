@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * {@link MoblogCache} that keeps listings serialized in direct buffers, outside the Java heap. A cached
+ * <code>getCommunityMoblogs("all")</code> listing is a single buffer rather than many small Hashtables and Strings,
+ * so it adds almost nothing to garbage collection work; the objects are only created again when it is retrieved.
+ * <p/>
+ * The maximum size of the cache is the total number of bytes in its buffers.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class OffHeapMoblogCache extends AbstractMoblogCache {
+
+    private static final String UTF_8 = "UTF-8";
+
+    private static final byte VECTOR = 'v';
+    private static final byte HASHTABLE = 'h';
+    private static final byte STRING = 's';
+    private static final byte INTEGER = 'i';
+    private static final byte BOOLEAN = 'b';
+    private static final byte DOUBLE = 'd';
+    private static final byte DATE = 't';
+    private static final byte BYTES = 'x';
+
+    /**
+     * Create a cache
+     *
+     * @param timeToLive   Time in milliseconds a listing is kept after it is stored
+     * @param maximumBytes Maximum total size of the buffers
+     */
+    public OffHeapMoblogCache(long timeToLive, long maximumBytes) {
+        super(timeToLive, maximumBytes);
+    }
+
+    protected Object store(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            write(out, value);
+            out.flush();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to serialize listing: " + e.getMessage());
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.size());
+        buffer.put(bytes.toByteArray());
+        buffer.flip();
+
+        return buffer.asReadOnlyBuffer();
+    }
+
+    protected Object load(Object stored) {
+        try {
+            return read(((ByteBuffer) stored).duplicate());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    protected long sizeOf(Object stored) {
+        return ((ByteBuffer) stored).capacity();
+    }
+
+    private static void write(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof Vector) {
+            Vector vector = (Vector) value;
+            out.writeByte(VECTOR);
+            out.writeInt(vector.size());
+            for (int i = 0; i < vector.size(); i++) {
+                write(out, vector.get(i));
+            }
+        } else if (value instanceof Hashtable) {
+            Hashtable hashtable = (Hashtable) value;
+            out.writeByte(HASHTABLE);
+            out.writeInt(hashtable.size());
+            Enumeration keys = hashtable.keys();
+            while (keys.hasMoreElements()) {
+                Object key = keys.nextElement();
+                write(out, key);
+                write(out, hashtable.get(key));
+            }
+        } else if (value instanceof String) {
+            byte[] utf8 = ((String) value).getBytes(UTF_8);
+            out.writeByte(STRING);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt(((Integer) value).intValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean(((Boolean) value).booleanValue());
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Double) value).doubleValue());
+        } else if (value instanceof Date) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof byte[]) {
+            byte[] data = (byte[]) value;
+            out.writeByte(BYTES);
+            out.writeInt(data.length);
+            out.write(data);
+        } else {
+            throw new IllegalArgumentException("Unsupported listing value: "
+                    + ((value == null) ? "null" : value.getClass().getName()));
+        }
+    }
+
+    private static Object read(ByteBuffer buffer) throws UnsupportedEncodingException {
+        byte type = buffer.get();
+
+        if (type == VECTOR) {
+            int size = buffer.getInt();
+            Vector vector = new Vector(size);
+            for (int i = 0; i < size; i++) {
+                vector.add(read(buffer));
+            }
+
+            return vector;
+        } else if (type == HASHTABLE) {
+            int size = buffer.getInt();
+            Hashtable hashtable = new Hashtable(Math.max(11, size * 2));
+            for (int i = 0; i < size; i++) {
+                Object key = read(buffer);
+                hashtable.put(key, read(buffer));
+            }
+
+            return hashtable;
+        } else if (type == STRING) {
+            byte[] utf8 = new byte[buffer.getInt()];
+            buffer.get(utf8);
+
+            return new String(utf8, UTF_8);
+        } else if (type == INTEGER) {
+            return Integer.valueOf(buffer.getInt());
+        } else if (type == BOOLEAN) {
+            return (buffer.get() != 0) ? Boolean.TRUE : Boolean.FALSE;
+        } else if (type == DOUBLE) {
+            return Double.valueOf(buffer.getDouble());
+        } else if (type == DATE) {
+            return new Date(buffer.getLong());
+        } else if (type == BYTES) {
+            byte[] data = new byte[buffer.getInt()];
+            buffer.get(data);
+
+            return data;
+        }
+
+        throw new IllegalStateException("Corrupt cached listing");
+    }
+}
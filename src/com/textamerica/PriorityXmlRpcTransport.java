@@ -0,0 +1,253 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.LinkedList;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * XML-RPC transport that schedules calls on another transport by {@link CallPriority}, so that interactive calls
+ * are not held up behind large uploads and bulk synchronization.
+ * <p/>
+ * Each priority class has its own concurrency budget, and the transport as a whole has a total budget. A call
+ * runs immediately if both budgets have room, and otherwise waits in its class's queue. When a call finishes, the
+ * waiting classes with room in their budget are served by smooth weighted round-robin, so that interactive calls
+ * get the largest share without starving bulk calls entirely. Time spent waiting counts against the call's
+ * deadline.
+ * <p/>
+ * The priority of a call is taken from its {@link CallOptions}. If none is set, <code>ta.Entry.Update</code> is
+ * bulk, changes to a moblog and <code>ta.Moblog.GetMyMoblogs</code> are interactive, and other calls are normal.
+ * <p/>
+ * Instances are safe for use by multiple concurrent threads.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class PriorityXmlRpcTransport implements XmlRpcTransport, Warmable {
+
+    private static final int INTERACTIVE_WEIGHT = 8;
+    private static final int NORMAL_WEIGHT = 4;
+    private static final int BULK_WEIGHT = 1;
+
+    private final XmlRpcTransport transport;
+    private final int maximumConcurrency;
+    private final int[] limits;
+    private final int[] weights = {INTERACTIVE_WEIGHT, NORMAL_WEIGHT, BULK_WEIGHT};
+
+    private final LinkedList[] queues = new LinkedList[CallPriority.values().length];
+    private final int[] active = new int[queues.length];
+    private final int[] currentWeights = new int[queues.length];
+    private int totalActive;
+
+    /**
+     * Create a scheduling transport
+     *
+     * @param transport              Transport that executes the calls
+     * @param maximumConcurrency     Maximum number of calls in progress in total
+     * @param interactiveConcurrency Maximum number of interactive calls in progress
+     * @param normalConcurrency      Maximum number of normal calls in progress
+     * @param bulkConcurrency        Maximum number of bulk calls in progress
+     */
+    public PriorityXmlRpcTransport(XmlRpcTransport transport, int maximumConcurrency, int interactiveConcurrency,
+                                   int normalConcurrency, int bulkConcurrency) {
+        if (maximumConcurrency < 1 || interactiveConcurrency < 1 || normalConcurrency < 1 || bulkConcurrency < 1) {
+            throw new IllegalArgumentException("Concurrency limits must be positive");
+        }
+
+        this.transport = transport;
+        this.maximumConcurrency = maximumConcurrency;
+        this.limits = new int[]{interactiveConcurrency, normalConcurrency, bulkConcurrency};
+
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new LinkedList();
+        }
+    }
+
+    /**
+     * Warm up the wrapped transport, if it supports warming up
+     *
+     * @param options Options whose time budget bounds the warm-up
+     * @throws IOException If the endpoint cannot be reached
+     */
+    public void warmUp(CallOptions options) throws IOException {
+        if (transport instanceof Warmable) {
+            ((Warmable) transport).warmUp(options);
+        }
+    }
+
+    public Object execute(String methodName, Vector parameters) throws Exception {
+        return execute(methodName, parameters, CallOptions.DEFAULT);
+    }
+
+    public Object execute(String methodName, Vector parameters, CallOptions options) throws Exception {
+        if (options == null) {
+            options = CallOptions.DEFAULT;
+        }
+
+        long started = System.nanoTime();
+        int priority = getPriority(methodName, options).ordinal();
+
+        acquire(methodName, priority, options.getDeadline(started));
+        try {
+            return transport.execute(methodName, parameters, options.withDeadlineFrom(started));
+        } finally {
+            release(priority);
+        }
+    }
+
+    /**
+     * Determine the priority of a call
+     *
+     * @param methodName XML-RPC method name
+     * @param options    Options for the call
+     * @return Priority from the options, or the default priority of the method
+     */
+    protected CallPriority getPriority(String methodName, CallOptions options) {
+        if (options.getPriority() != null) {
+            return options.getPriority();
+        }
+
+        if (TextAmerica4J.TA_ENTRY_UPDATE.equals(methodName)) {
+            return CallPriority.BULK;
+        }
+
+        if (TextAmerica4J.TA_MOBLOG_GETMYMOBLOGS.equals(methodName)
+                || TextAmerica4J.TA_MOBLOG_UPDATE.equals(methodName)
+                || TextAmerica4J.TA_MOBLOG_CHANGETITLE.equals(methodName)
+                || TextAmerica4J.TA_MOBLOG_CHANGETEXT.equals(methodName)
+                || TextAmerica4J.TA_MOBLOG_CHANGEDOMAIN.equals(methodName)
+                || TextAmerica4J.TA_MOBLOG_CHANGESECRETWORD.equals(methodName)) {
+            return CallPriority.INTERACTIVE;
+        }
+
+        return CallPriority.NORMAL;
+    }
+
+    private synchronized void acquire(String methodName, int priority, long deadline) throws InterruptedException, SocketTimeoutException {
+        if (queues[priority].isEmpty() && hasCapacity(priority)) {
+            start(priority);
+            return;
+        }
+
+        Waiter waiter = new Waiter();
+        queues[priority].addLast(waiter);
+
+        try {
+            while (!waiter.started) {
+                if (deadline == CallOptions.NO_DEADLINE) {
+                    wait();
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        queues[priority].remove(waiter);
+                        throw new SocketTimeoutException("Deadline exceeded waiting to schedule " + methodName);
+                    }
+
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            }
+        } catch (InterruptedException e) {
+            if (waiter.started) {
+                release(priority);
+            } else {
+                queues[priority].remove(waiter);
+            }
+
+            throw e;
+        }
+    }
+
+    private synchronized void release(int priority) {
+        active[priority]--;
+        totalActive--;
+
+        dispatch();
+    }
+
+    private boolean hasCapacity(int priority) {
+        return totalActive < maximumConcurrency && active[priority] < limits[priority];
+    }
+
+    private void start(int priority) {
+        active[priority]++;
+        totalActive++;
+    }
+
+    /**
+     * Start waiting calls while there is capacity, choosing among the eligible classes by smooth weighted round-robin
+     */
+    private void dispatch() {
+        boolean started = false;
+
+        while (totalActive < maximumConcurrency) {
+            int selected = -1;
+            int totalWeight = 0;
+
+            for (int i = 0; i < queues.length; i++) {
+                if (!queues[i].isEmpty() && active[i] < limits[i]) {
+                    currentWeights[i] += weights[i];
+                    totalWeight += weights[i];
+                    if (selected == -1 || currentWeights[i] > currentWeights[selected]) {
+                        selected = i;
+                    }
+                }
+            }
+
+            if (selected == -1) {
+                break;
+            }
+
+            currentWeights[selected] -= totalWeight;
+            ((Waiter) queues[selected].removeFirst()).started = true;
+            start(selected);
+            started = true;
+        }
+
+        if (started) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Call waiting in a queue
+     */
+    private static class Waiter {
+
+        boolean started;
+    }
+}
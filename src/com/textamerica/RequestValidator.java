@@ -0,0 +1,245 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Validates the parameters of TextAmerica calls before any I/O, so that requests the TextAmerica moblog service
+ * would reject fail immediately rather than after a round-trip or a full media upload.
+ * <p/>
+ * The allowed values are held in sets built once when the class is loaded. File types, section IDs and the
+ * approval and comment flags are compared without regard to case. Media files are checked by reading their first
+ * bytes: JPEG files must start with the JPEG start-of-image marker and movie files with an ISO base media or
+ * QuickTime atom.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public final class RequestValidator {
+
+    private static final Set IMAGE_FILE_TYPES = createSet(new String[]{"JPG", "JPEG"});
+    private static final Set MOVIE_FILE_TYPES = createSet(new String[]{"MP4", "3GP", "3G2", "MOV"});
+    private static final Set SECTION_IDS = createSet(new String[]{"HEADER", "FOOTER", "FRONTPAGE", "DETAILS", "ENTRY", "COMMENT", "RESULT"});
+    private static final Set APPROVAL_TYPES = createSet(new String[]{"C", "P"});
+    private static final Set ALLOW_COMMENTS = createSet(new String[]{"Y", "N"});
+    private static final Set MOVIE_ATOMS = createSet(new String[]{"ftyp", "moov", "mdat", "wide", "free", "skip", "pnot"});
+
+    private static final byte[] JPEG_MAGIC = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+    private static final int ATOM_TYPE_OFFSET = 4;
+    private static final int HEADER_LENGTH = 8;
+
+    private RequestValidator() {
+    }
+
+    private static Set createSet(String[] values) {
+        return new HashSet(Arrays.asList(values));
+    }
+
+    private static String normalize(String value) {
+        return value.toUpperCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Check that an ID has been given
+     *
+     * @param name Name of the parameter
+     * @param id   ID
+     * @throws IllegalArgumentException If the ID is <code>null</code>
+     */
+    public static void requireID(String name, Integer id) {
+        if (id == null) {
+            throw new IllegalArgumentException(name + " cannot be null");
+        }
+    }
+
+    /**
+     * Check that a string has been given. XML-RPC cannot send <code>null</code> values.
+     *
+     * @param name  Name of the parameter
+     * @param value Value
+     * @throws IllegalArgumentException If the value is <code>null</code>
+     */
+    public static void requireString(String name, String value) {
+        if (value == null) {
+            throw new IllegalArgumentException(name + " cannot be null");
+        }
+    }
+
+    /**
+     * Check that a string has been given and is not blank
+     *
+     * @param name  Name of the parameter
+     * @param value Value
+     * @throws IllegalArgumentException If the value is <code>null</code> or blank
+     */
+    public static void requireNonBlank(String name, String value) {
+        if (value == null || "".equals(value.trim())) {
+            throw new IllegalArgumentException(name + " cannot be null or blank");
+        }
+    }
+
+    /**
+     * Check a file type for <code>ta.Entry.Update</code>
+     *
+     * @param fileType File type
+     * @throws IllegalArgumentException If the file type is not one of "JPG", "JPEG", "MP4", "3GP", "3G2", "MOV"
+     */
+    public static void requireFileType(String fileType) {
+        requireString("FileType", fileType);
+
+        String normalizedFileType = normalize(fileType);
+        if (!IMAGE_FILE_TYPES.contains(normalizedFileType) && !MOVIE_FILE_TYPES.contains(normalizedFileType)) {
+            throw new IllegalArgumentException("FileType must be one of JPG, JPEG, MP4, 3GP, 3G2, MOV: " + fileType);
+        }
+    }
+
+    /**
+     * Check a section ID for <code>ta.Template.UpdateSection</code>
+     *
+     * @param sectionID Section ID
+     * @throws IllegalArgumentException If the section ID is not one of "header", "footer", "frontpage", "details",
+     *                                  "entry", "comment", "result"
+     */
+    public static void requireSectionID(String sectionID) {
+        requireString("SectionID", sectionID);
+
+        if (!SECTION_IDS.contains(normalize(sectionID))) {
+            throw new IllegalArgumentException("SectionID must be one of header, footer, frontpage, details, entry, comment, result: " + sectionID);
+        }
+    }
+
+    /**
+     * Check an approval type for <code>ta.Moblog.Update</code>. A blank value leaves the default.
+     *
+     * @param approvalType Approval type
+     * @throws IllegalArgumentException If the approval type is not blank, "C" or "P"
+     */
+    public static void requireApprovalType(String approvalType) {
+        requireFlag("ApprovalType", approvalType, APPROVAL_TYPES, "C or P");
+    }
+
+    /**
+     * Check a comments flag for <code>ta.Moblog.Update</code>. A blank value leaves the default.
+     *
+     * @param allowComments Comments flag
+     * @throws IllegalArgumentException If the flag is not blank, "Y" or "N"
+     */
+    public static void requireAllowComments(String allowComments) {
+        requireFlag("AllowComments", allowComments, ALLOW_COMMENTS, "Y or N");
+    }
+
+    private static void requireFlag(String name, String value, Set allowedValues, String description) {
+        requireString(name, value);
+
+        if (!"".equals(value) && !allowedValues.contains(normalize(value))) {
+            throw new IllegalArgumentException(name + " must be " + description + ": " + value);
+        }
+    }
+
+    /**
+     * Check that a media file exists and that its content matches its file type
+     *
+     * @param imageData Image or movie file
+     * @param fileType  File type, already checked with {@link #requireFileType(String)}
+     * @throws IllegalArgumentException If the file is missing or empty or its content does not match the file type
+     */
+    public static void requireMedia(File imageData, String fileType) {
+        if (imageData == null) {
+            throw new IllegalArgumentException("ImageData cannot be null");
+        }
+
+        if (!imageData.isFile() || !imageData.canRead()) {
+            throw new IllegalArgumentException("ImageData is not a readable file: " + imageData);
+        }
+
+        byte[] header = new byte[HEADER_LENGTH];
+        int length;
+        try {
+            length = readHeader(imageData, header);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("ImageData cannot be read: " + imageData + ": " + e.getMessage());
+        }
+
+        if (length == 0) {
+            throw new IllegalArgumentException("ImageData is empty: " + imageData);
+        }
+
+        if (IMAGE_FILE_TYPES.contains(normalize(fileType))) {
+            if (!startsWith(header, length, JPEG_MAGIC)) {
+                throw new IllegalArgumentException("ImageData is not a JPEG image: " + imageData);
+            }
+        } else if (length < HEADER_LENGTH || !MOVIE_ATOMS.contains(new String(header, ATOM_TYPE_OFFSET, 4, StandardCharsets.ISO_8859_1))) {
+            throw new IllegalArgumentException("ImageData is not an MP4, 3GP, 3G2 or MOV movie: " + imageData);
+        }
+    }
+
+    private static int readHeader(File file, byte[] header) throws IOException {
+        InputStream is = new FileInputStream(file);
+        try {
+            int length = 0;
+            int bytesRead;
+            while (length < header.length && -1 != (bytesRead = is.read(header, length, header.length - length))) {
+                length += bytesRead;
+            }
+
+            return length;
+        } finally {
+            is.close();
+        }
+    }
+
+    private static boolean startsWith(byte[] header, int length, byte[] magic) {
+        if (length < magic.length) {
+            return false;
+        }
+
+        for (int i = 0; i < magic.length; i++) {
+            if (header[i] != magic[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,506 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.Vector;
+
+/**
+ * XML-RPC transport that spreads calls over several endpoints, such as mirrors or regional endpoints of the
+ * TextAmerica moblog service, and fails over between them.
+ * <p/>
+ * Each call goes to the available endpoint with the lowest score, the number of calls it has in progress plus one,
+ * multiplied by its average latency. Busy endpoints and slow endpoints are both avoided. An endpoint whose latency
+ * is not known is scored with the average latency of the endpoints whose latency is known, so it is neither
+ * favoured nor avoided until it has answered. Latency is an exponentially weighted moving average of completed
+ * calls; samples older than ten seconds are forgotten, so an endpoint that was slow at a busy time is tried again
+ * later.
+ * <p/>
+ * An endpoint that fails a number of calls in a row with an <code>IOException</code> is taken out of rotation for
+ * the ejection time. It is then given a single probe call, while other calls keep avoiding it, and returns to
+ * rotation if the probe succeeds or is ejected again if it fails or times out. Faults returned by the service
+ * count as successes. Other timeouts after connecting count as neither, since a slow call says little about the
+ * endpoint's health. If no endpoint is available, calls go to the one due back soonest.
+ * {@link #checkHealth(CallOptions)} probes every endpoint and updates its state straight away, and can be run
+ * periodically to find failures and recoveries between calls.
+ * <p/>
+ * A call that cannot connect to its endpoint, because the connection is refused or times out or the host cannot be
+ * resolved, so was never sent, is retried on the next best endpoint that has not been tried, while the call's
+ * deadline allows. Calls that fail after connecting are not retried, because <code>ta.Entry.Update</code> and the
+ * other changes are not idempotent.
+ * <pre>
+ * RoutingXmlRpcTransport transport = new RoutingXmlRpcTransport(new URL[]{
+ *     new URL(TextAmerica4J.API_ENDPOINT), new URL("http://mirror.example.com")});
+ * TextAmerica4J textAmerica4J = new TextAmerica4J(apiKey, login, password, transport);
+ * </pre>
+ * <p/>
+ * Instances are safe for use by multiple concurrent threads.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class RoutingXmlRpcTransport implements XmlRpcTransport, Warmable {
+
+    /**
+     * Consecutive failures after which an endpoint is ejected, unless given to the constructor
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+    /**
+     * Milliseconds an endpoint stays ejected, unless given to the constructor
+     */
+    public static final long DEFAULT_EJECTION_TIME = 30000;
+
+    private static final double LATENCY_WEIGHT = 0.3;
+    private static final long LATENCY_LIFETIME = 10000000000L;
+    private static final long MINIMUM_LATENCY = 1000000L;
+
+    // Outcomes of a call
+    private static final int COMPLETED = 0;
+    private static final int FAILED = 1;
+    private static final int TIMED_OUT = 2;
+
+    private final Endpoint[] endpoints;
+    private final int failureThreshold;
+    private final long ejectionTime;
+
+    // Guarded by this
+    private int nextEndpoint;
+
+    /**
+     * Create a routing transport over HTTP endpoints with the default failure threshold and ejection time
+     *
+     * @param urls Endpoint URLs
+     */
+    public RoutingXmlRpcTransport(URL[] urls) {
+        this(createTransports(urls));
+    }
+
+    /**
+     * Create a routing transport with the default failure threshold and ejection time
+     *
+     * @param transports Transport to each endpoint
+     */
+    public RoutingXmlRpcTransport(XmlRpcTransport[] transports) {
+        this(transports, DEFAULT_FAILURE_THRESHOLD, DEFAULT_EJECTION_TIME);
+    }
+
+    /**
+     * Create a routing transport
+     *
+     * @param transports       Transport to each endpoint
+     * @param failureThreshold Number of consecutive failures after which an endpoint is ejected
+     * @param ejectionTime     Milliseconds an ejected endpoint is kept out of rotation
+     */
+    public RoutingXmlRpcTransport(XmlRpcTransport[] transports, int failureThreshold, long ejectionTime) {
+        if (transports == null || transports.length == 0) {
+            throw new IllegalArgumentException("At least one endpoint is required");
+        }
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("Failure threshold must be at least 1: " + failureThreshold);
+        }
+        if (ejectionTime < 0) {
+            throw new IllegalArgumentException("Ejection time cannot be negative: " + ejectionTime);
+        }
+
+        this.endpoints = new Endpoint[transports.length];
+        for (int i = 0; i < transports.length; i++) {
+            endpoints[i] = new Endpoint(i, transports[i]);
+        }
+        this.failureThreshold = failureThreshold;
+        this.ejectionTime = ejectionTime * 1000000L;
+    }
+
+    private static XmlRpcTransport[] createTransports(URL[] urls) {
+        if (urls == null) {
+            throw new IllegalArgumentException("At least one endpoint is required");
+        }
+
+        XmlRpcTransport[] transports = new XmlRpcTransport[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            transports[i] = new HttpXmlRpcTransport(urls[i]);
+        }
+
+        return transports;
+    }
+
+    /**
+     * @return Number of endpoints
+     */
+    public int getEndpointCount() {
+        return endpoints.length;
+    }
+
+    /**
+     * @param index Index of the endpoint, in the order given to the constructor
+     * @return Transport to the endpoint
+     */
+    public XmlRpcTransport getTransport(int index) {
+        return endpoints[index].transport;
+    }
+
+    /**
+     * @param index Index of the endpoint, in the order given to the constructor
+     * @return <code>true</code> if the endpoint is in rotation
+     */
+    public synchronized boolean isHealthy(int index) {
+        return !endpoints[index].isEjected(System.nanoTime());
+    }
+
+    /**
+     * @param index Index of the endpoint, in the order given to the constructor
+     * @return Number of calls in progress on the endpoint
+     */
+    public synchronized int getOutstandingCount(int index) {
+        return endpoints[index].outstanding;
+    }
+
+    /**
+     * @param index Index of the endpoint, in the order given to the constructor
+     * @return Average latency of the endpoint in milliseconds, or 0 if it is not known
+     */
+    public synchronized double getLatency(int index) {
+        Endpoint endpoint = endpoints[index];
+        if (!endpoint.hasLatency(System.nanoTime())) {
+            return 0;
+        }
+
+        return endpoint.latency / 1000000.0;
+    }
+
+    /**
+     * Warm up every endpoint that supports warming up. Endpoints that cannot be reached are ejected.
+     *
+     * @param options Options whose time budget bounds the warm-up of each endpoint
+     * @throws IOException If no endpoint can be reached
+     */
+    public void warmUp(CallOptions options) throws IOException {
+        IOException failure = null;
+        boolean reached = false;
+
+        for (int i = 0; i < endpoints.length; i++) {
+            try {
+                if (probe(endpoints[i], options)) {
+                    reached = true;
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        if (!reached && failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Probe every endpoint whose transport is {@link Warmable} with a warm-up request. Endpoints that answer are
+     * returned to rotation and endpoints that do not are ejected.
+     *
+     * @param options Options whose time budget bounds the probe of each endpoint
+     * @return Number of endpoints in rotation afterwards
+     */
+    public int checkHealth(CallOptions options) {
+        for (int i = 0; i < endpoints.length; i++) {
+            try {
+                probe(endpoints[i], options);
+            } catch (IOException e) {
+                // Ejected by probe
+            }
+        }
+
+        int healthy = 0;
+        for (int i = 0; i < endpoints.length; i++) {
+            if (isHealthy(i)) {
+                healthy++;
+            }
+        }
+
+        return healthy;
+    }
+
+    /**
+     * Warm up an endpoint, recording the outcome
+     *
+     * @return <code>true</code> if the endpoint was probed, <code>false</code> if its transport is not warmable
+     * @throws IOException If the endpoint cannot be reached
+     */
+    private boolean probe(Endpoint endpoint, CallOptions options) throws IOException {
+        if (!(endpoint.transport instanceof Warmable)) {
+            return false;
+        }
+
+        try {
+            ((Warmable) endpoint.transport).warmUp(options);
+        } catch (IOException e) {
+            synchronized (this) {
+                endpoint.eject(System.nanoTime());
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            endpoint.restore();
+        }
+
+        return true;
+    }
+
+    public Object execute(String methodName, Vector parameters) throws Exception {
+        return execute(methodName, parameters, CallOptions.DEFAULT);
+    }
+
+    public Object execute(String methodName, Vector parameters, CallOptions options) throws Exception {
+        if (options == null) {
+            options = CallOptions.DEFAULT;
+        }
+
+        long started = System.nanoTime();
+        long deadline = options.getDeadline(started);
+        boolean[] tried = new boolean[endpoints.length];
+
+        while (true) {
+            Endpoint endpoint = select(tried);
+            long callStarted = System.nanoTime();
+            boolean completed = false;
+            try {
+                Object result = endpoint.transport.execute(methodName, parameters, options.withDeadlineFrom(started));
+                completed = true;
+
+                return result;
+            } catch (IOException e) {
+                boolean notSent = isNotSent(e);
+                if (e instanceof SocketTimeoutException && !notSent) {
+                    release(endpoint, callStarted, TIMED_OUT);
+                    throw e;
+                }
+
+                release(endpoint, callStarted, FAILED);
+                if (!notSent || !hasUntried(tried) || deadline - System.nanoTime() <= 0) {
+                    throw e;
+                }
+            } catch (Exception e) {
+                // A fault is an answer from a working endpoint
+                completed = true;
+                throw e;
+            } finally {
+                if (completed) {
+                    release(endpoint, callStarted, COMPLETED);
+                }
+            }
+        }
+    }
+
+    /**
+     * Determine whether a failed call never reached its endpoint
+     *
+     * @param e Failure
+     * @return <code>true</code> if the endpoint could not be resolved or connected to in time
+     */
+    protected boolean isNotSent(IOException e) {
+        return e instanceof ConnectException || e instanceof ConnectTimeoutException
+                || e instanceof NoRouteToHostException || e instanceof UnknownHostException;
+    }
+
+    private boolean hasUntried(boolean[] tried) {
+        for (int i = 0; i < tried.length; i++) {
+            if (!tried[i]) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Choose the endpoint for a call and count the call against it. Endpoints with equal scores are taken in turn.
+     * An endpoint whose ejection time has passed is chosen as its own probe, after which it is unavailable until the
+     * probe completes.
+     *
+     * @param tried Endpoints already tried for the call, updated with the endpoint chosen
+     * @return Endpoint with the lowest score among those available and not tried, or the unavailable endpoint due
+     *         back soonest if there is none
+     */
+    private synchronized Endpoint select(boolean[] tried) {
+        long now = System.nanoTime();
+        Endpoint selected = null;
+        Endpoint soonest = null;
+        double selectedScore = 0;
+        double neutralLatency = getNeutralLatency(now);
+
+        for (int i = 0; i < endpoints.length; i++) {
+            Endpoint endpoint = endpoints[(nextEndpoint + i) % endpoints.length];
+            if (tried[endpoint.index]) {
+                continue;
+            }
+
+            if (!endpoint.isAvailable(now)) {
+                if (soonest == null || endpoint.ejectedUntil - soonest.ejectedUntil < 0) {
+                    soonest = endpoint;
+                }
+                continue;
+            }
+
+            double latency = endpoint.hasLatency(now) ? Math.max(MINIMUM_LATENCY, endpoint.latency) : neutralLatency;
+            double score = (endpoint.outstanding + 1) * latency;
+            if (selected == null || score < selectedScore) {
+                selected = endpoint;
+                selectedScore = score;
+            }
+        }
+
+        if (selected == null) {
+            selected = soonest;
+        } else if (selected.ejectedUntil != 0) {
+            selected.probing = true;
+        }
+
+        nextEndpoint = (nextEndpoint + 1) % endpoints.length;
+        tried[selected.index] = true;
+        selected.outstanding++;
+
+        return selected;
+    }
+
+    /**
+     * @return Average latency of the endpoints whose latency is known, or {@link #MINIMUM_LATENCY} if there are none.
+     *         Called with the lock held.
+     */
+    private double getNeutralLatency(long now) {
+        double total = 0;
+        int known = 0;
+
+        for (int i = 0; i < endpoints.length; i++) {
+            if (endpoints[i].hasLatency(now)) {
+                total += Math.max(MINIMUM_LATENCY, endpoints[i].latency);
+                known++;
+            }
+        }
+
+        return (known == 0) ? MINIMUM_LATENCY : total / known;
+    }
+
+    /**
+     * Record the end of a call on an endpoint. A call that completed, with a result or a fault, restores the
+     * endpoint and one that failed counts against it. A call that timed out after it was sent says nothing about
+     * the endpoint's health, so only its latency is recorded, unless it was a probe, which must answer to restore
+     * the endpoint.
+     *
+     * @param endpoint    Endpoint
+     * @param callStarted Start of the call as returned by {@link System#nanoTime()}
+     * @param outcome     COMPLETED, FAILED or TIMED_OUT
+     */
+    private synchronized void release(Endpoint endpoint, long callStarted, int outcome) {
+        long now = System.nanoTime();
+        endpoint.outstanding--;
+
+        if (outcome != FAILED) {
+            long latency = now - callStarted;
+            if (!endpoint.hasLatency(now)) {
+                endpoint.latency = latency;
+            } else {
+                endpoint.latency += LATENCY_WEIGHT * (latency - endpoint.latency);
+            }
+            endpoint.sampled = now;
+        }
+
+        if (outcome == COMPLETED) {
+            endpoint.restore();
+        } else if (outcome == FAILED) {
+            endpoint.failures++;
+            if (endpoint.failures >= failureThreshold) {
+                endpoint.eject(now);
+            }
+        } else if (endpoint.probing) {
+            endpoint.eject(now);
+        }
+    }
+
+    /**
+     * State of one endpoint, guarded by the transport
+     */
+    private class Endpoint {
+
+        final int index;
+        final XmlRpcTransport transport;
+        int outstanding;
+        int failures;
+        double latency;
+        long sampled;
+        long ejectedUntil;
+        boolean probing;
+
+        Endpoint(int index, XmlRpcTransport transport) {
+            this.index = index;
+            this.transport = transport;
+        }
+
+        boolean isEjected(long now) {
+            return ejectedUntil != 0 && now - ejectedUntil < 0;
+        }
+
+        /**
+         * @return <code>true</code> if the endpoint is in rotation, or its ejection time has passed and its probe
+         *         has not been sent
+         */
+        boolean isAvailable(long now) {
+            return ejectedUntil == 0 || (now - ejectedUntil >= 0 && !probing);
+        }
+
+        boolean hasLatency(long now) {
+            return latency != 0 && now - sampled <= LATENCY_LIFETIME;
+        }
+
+        void eject(long now) {
+            failures = Math.max(failures, failureThreshold);
+            probing = false;
+            ejectedUntil = now + ejectionTime;
+            if (ejectedUntil == 0) {
+                ejectedUntil = 1;
+            }
+        }
+
+        void restore() {
+            failures = 0;
+            probing = false;
+            ejectedUntil = 0;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+/**
+ * Notified when entries queued in an {@link UploadSpool} have been uploaded or have failed
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public interface SpoolListener {
+
+    /**
+     * Called on a spool worker thread after an entry has been uploaded. The entry's media file is the spool's copy,
+     * which is deleted once all listeners have been notified.
+     *
+     * @param sequence    Sequence number returned when the entry was submitted
+     * @param entryUpdate Entry
+     * @param entryID     Entry ID returned by the TextAmerica moblog service
+     */
+    void entryUploaded(long sequence, EntryUpdate entryUpdate, String entryID);
+
+    /**
+     * Called on a spool worker thread when the service has answered an entry with a fault, or the entry has been
+     * rejected locally, after which it is removed from the spool. Entries are not given up on for other failures.
+     *
+     * @param sequence    Sequence number returned when the entry was submitted
+     * @param entryUpdate Entry
+     * @param exception   <code>XmlRpcException</code> with the fault, or <code>IllegalArgumentException</code>
+     */
+    void entryFailed(long sequence, EntryUpdate entryUpdate, Exception exception);
+}
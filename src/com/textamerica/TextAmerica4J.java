@@ -34,10 +34,11 @@
  */
 package com.textamerica;
 
-import org.apache.xmlrpc.Base64;
-import org.apache.xmlrpc.XmlRpcClient;
+import org.apache.xmlrpc.XmlRpcHandler;
 
 import java.io.*;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.Vector;
 
 /**
@@ -46,6 +47,51 @@ import java.util.Vector;
  * <p/>
  * Usage:
  * <p/>
+ * <pre>
+ * TextAmerica4J textAmerica4J = new TextAmerica4J(apiKey, login, password);
+ * Vector moblogs = textAmerica4J.getMyMoblogs();
+ * </pre>
+ * <p/>
+ * Thread safety:
+ * <p/>
+ * Instances are immutable and safe for use by multiple concurrent threads without external
+ * synchronization. The credentials are fixed at construction and each call builds its own request
+ * parameters. The default transport, {@link HttpXmlRpcTransport}, gives every call its own
+ * connection, so concurrent calls proceed in parallel rather than being serialized. A custom
+ * transport passed to {@link #TextAmerica4J(String, String, String, XmlRpcHandler)} must offer the
+ * same guarantee.
+ * <p/>
+ * Validation:
+ * <p/>
+ * Parameters are checked with {@link RequestValidator} before any I/O. Missing values, unknown file types, section
+ * IDs or flags, and media files whose content does not match their file type are rejected immediately with an
+ * {@link IllegalArgumentException}, rather than by the TextAmerica moblog service after a round-trip or upload.
+ * <p/>
+ * Per-call options:
+ * <p/>
+ * {@link #withCallOptions(CallOptions)} returns a view of an instance that applies {@link CallOptions}, such as a
+ * timeout or a deadline, to every call made through it. Views share the credentials and transport of the
+ * instance they were created from.
+ * <pre>
+ * String entryID = textAmerica4J.withCallOptions(CallOptions.DEFAULT.withTimeout(30000)).entryUpdate(...);
+ * </pre>
+ * <p/>
+ * Caching:
+ * <p/>
+ * {@link #withCache(MoblogCache)} returns a view that serves moblog listings from a {@link MoblogCache} and
+ * invalidates them when a moblog is changed through the view. Backends can be local to a process or shared by
+ * several nodes, which then receive each other's invalidations.
+ * <pre>
+ * TextAmerica4J cached = textAmerica4J.withCache(new InProcessMoblogCache(5 * 60 * 1000, 100));
+ * </pre>
+ * <p/>
+ * Start-up:
+ * <p/>
+ * Creating an instance does no I/O. The first call resolves the endpoint, connects and loads the XML classes,
+ * unless {@link #warmUp()} has done so beforehand. Static initializers in this package do no I/O and start no
+ * threads, so the classes can be stored in a class data sharing archive by a training run that calls
+ * <code>warmUp()</code>, with <code>-XX:ArchiveClassesAtExit=textamerica4j.jsa</code>, and loaded from it at start-up
+ * with <code>-XX:SharedArchiveFile=textamerica4j.jsa</code>.
  *
  * @author David Czarnecki
  * @version $Id: TextAmerica4J.java,v 1.2 2005/04/20 14:55:02 czarneckid Exp $
@@ -53,55 +99,180 @@ import java.util.Vector;
  */
 public class TextAmerica4J {
 
-    private static final String API_ENDPOINT = "http://xml.api.textamerica.com";
-
-    private static final String TA_MOBLOG_GETMYMOBLOGS = "ta.Moblog.GetMyMoblogs";
-    private static final String TA_MOBLOG_GETCOMMUNITYMOBLOGS = "ta.Moblog.GetCommunityMoblogs";
-    private static final String TA_MOBLOG_UPDATE = "ta.Moblog.Update";
-    private static final String TA_MOBLOG_CHANGETITLE = "ta.Moblog.ChangeTitle";
-    private static final String TA_MOBLOG_CHANGETEXT = "ta.Moblog.ChangeText";
-    private static final String TA_MOBLOG_CHANGEDOMAIN = "ta.Moblog.ChangeDomain";
-    private static final String TA_MOBLOG_CHANGESECRETWORD = "ta.Moblog.ChangeSecretWord";
-
-    private static final String TA_ENTRY_UPDATE = "ta.Entry.Update";
-    private static final String TA_ENTRY_DELETE = "ta.Entry.Delete";
-
-    private static final String TA_KEYWORDS_ADD = "ta.Keywords.Add";
-
-    private static final String TA_FAVORITES_UPDATE = "ta.Favorites.Update";
-    private static final String TA_FAVORITES_DELETE = "ta.Favorites.Delete";
-    private static final String TA_FAVORITES_ASSIGN = "ta.Favorites.Assign";
-    private static final String TA_FAVORITES_ADDMOBLOG = "ta.Favorites.AddMoblog";
-    private static final String TA_FAVORITES_REMOVEMOBLOG = "ta.Favorites.RemoveMoblog";
-
-    private static final String TA_BOOKMARKS_UPDATE = "ta.Bookmarks.Update";
-    private static final String TA_BOOKMARKS_ASSIGN = "ta.Bookmarks.Assign";
-    private static final String TA_BOOKMARKS_UNASSIGN = "ta.Bookmarks.UnAssign";
-    private static final String TA_BOOKMARKS_DELETE = "ta.Bookmarks.Delete";
-    private static final String TA_BOOKMARKS_UPDATEURL = "ta.Bookmarks.UpdateURL";
-    private static final String TA_BOOKMARKS_REMOVEURL = "ta.Bookmarks.RemoveURL";
-
-    private static final String TA_TEMPLATE_UPDATESECTION = "ta.Template.UpdateSection";
-    private static final String TA_TEMPLATE_SETTEMPLATE = "ta.Template.SetTemplate";
+    /**
+     * Endpoint of the TextAmerica moblog service used by {@link #TextAmerica4J(String, String, String)}. Other
+     * endpoints, such as mirrors, can be used with a {@link RoutingXmlRpcTransport}.
+     */
+    public static final String API_ENDPOINT = "http://xml.api.textamerica.com";
 
-    private String apiKey;
-    private String login;
-    private String password;
-    private XmlRpcClient xmlRpcClient;
+    /**
+     * Result of calls that return "OK". Compare results with <code>equals</code>.
+     */
+    public static final String OK = "OK";
+
+    static final String TA_MOBLOG_GETMYMOBLOGS = "ta.Moblog.GetMyMoblogs";
+    static final String TA_MOBLOG_GETCOMMUNITYMOBLOGS = "ta.Moblog.GetCommunityMoblogs";
+    static final String TA_MOBLOG_UPDATE = "ta.Moblog.Update";
+    static final String TA_MOBLOG_CHANGETITLE = "ta.Moblog.ChangeTitle";
+    static final String TA_MOBLOG_CHANGETEXT = "ta.Moblog.ChangeText";
+    static final String TA_MOBLOG_CHANGEDOMAIN = "ta.Moblog.ChangeDomain";
+    static final String TA_MOBLOG_CHANGESECRETWORD = "ta.Moblog.ChangeSecretWord";
+
+    static final String TA_ENTRY_UPDATE = "ta.Entry.Update";
+    static final String TA_ENTRY_DELETE = "ta.Entry.Delete";
+
+    static final String TA_KEYWORDS_ADD = "ta.Keywords.Add";
+
+    static final String TA_FAVORITES_UPDATE = "ta.Favorites.Update";
+    static final String TA_FAVORITES_DELETE = "ta.Favorites.Delete";
+    static final String TA_FAVORITES_ASSIGN = "ta.Favorites.Assign";
+    static final String TA_FAVORITES_ADDMOBLOG = "ta.Favorites.AddMoblog";
+    static final String TA_FAVORITES_REMOVEMOBLOG = "ta.Favorites.RemoveMoblog";
+
+    static final String TA_BOOKMARKS_UPDATE = "ta.Bookmarks.Update";
+    static final String TA_BOOKMARKS_ASSIGN = "ta.Bookmarks.Assign";
+    static final String TA_BOOKMARKS_UNASSIGN = "ta.Bookmarks.UnAssign";
+    static final String TA_BOOKMARKS_DELETE = "ta.Bookmarks.Delete";
+    static final String TA_BOOKMARKS_UPDATEURL = "ta.Bookmarks.UpdateURL";
+    static final String TA_BOOKMARKS_REMOVEURL = "ta.Bookmarks.RemoveURL";
+
+    static final String TA_TEMPLATE_UPDATESECTION = "ta.Template.UpdateSection";
+    static final String TA_TEMPLATE_SETTEMPLATE = "ta.Template.SetTemplate";
+
+    private final String apiKey;
+    private final String login;
+    private final String password;
+    private final XmlRpcHandler xmlRpcClient;
+    private final CallOptions callOptions;
+    private final MoblogCache cache;
 
     /**
-     * Create an instance to interact with TextAmerica moblog service
+     * Create an instance to interact with TextAmerica moblog service. No connection is made until the first call
+     * or {@link #warmUp()}.
      *
      * @param apiKey   API key
      * @param login    Login ID
      * @param password Password
-     * @throws Exception If there is an exception creating an XML-RPC client
      */
-    public TextAmerica4J(String apiKey, String login, String password) throws Exception {
+    public TextAmerica4J(String apiKey, String login, String password) {
+        this(apiKey, login, password, new HttpXmlRpcTransport(createEndpointURL()));
+    }
+
+    /**
+     * Create an instance to interact with TextAmerica moblog service over a given transport
+     *
+     * @param apiKey       API key
+     * @param login        Login ID
+     * @param password     Password
+     * @param xmlRpcClient Transport used to execute XML-RPC calls. Must be safe for use by concurrent threads.
+     */
+    public TextAmerica4J(String apiKey, String login, String password, XmlRpcHandler xmlRpcClient) {
+        if (xmlRpcClient == null) {
+            throw new IllegalArgumentException("XML-RPC client cannot be null");
+        }
+
         this.apiKey = apiKey;
         this.login = login;
         this.password = password;
-        xmlRpcClient = new XmlRpcClient(API_ENDPOINT);
+        this.xmlRpcClient = xmlRpcClient;
+        this.callOptions = CallOptions.DEFAULT;
+        this.cache = null;
+    }
+
+    /**
+     * Create a view of an instance with different call options or cache
+     *
+     * @param textAmerica4J Instance whose credentials and transport are shared
+     * @param callOptions   Options applied to every call
+     * @param cache         Cache of moblog listings, or <code>null</code> for none
+     */
+    private TextAmerica4J(TextAmerica4J textAmerica4J, CallOptions callOptions, MoblogCache cache) {
+        this.apiKey = textAmerica4J.apiKey;
+        this.login = textAmerica4J.login;
+        this.password = textAmerica4J.password;
+        this.xmlRpcClient = textAmerica4J.xmlRpcClient;
+        this.callOptions = callOptions;
+        this.cache = cache;
+    }
+
+    private static URL createEndpointURL() {
+        try {
+            return new URL(API_ENDPOINT);
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException("Invalid API endpoint: " + API_ENDPOINT);
+        }
+    }
+
+    /**
+     * Prepare for the first call so that it costs about the same as later ones: load and initialize the classes used
+     * to validate, encode and decode calls and, if the transport is {@link Warmable}, as the default transport is,
+     * resolve the endpoint and open a connection to it. The time budget of the call options bounds the warm-up.
+     * Calling this method is optional.
+     *
+     * @throws IOException If the endpoint cannot be reached
+     */
+    public void warmUp() throws IOException {
+        initializeClasses(new Class[]{RequestValidator.class});
+
+        if (xmlRpcClient instanceof Warmable) {
+            ((Warmable) xmlRpcClient).warmUp(callOptions);
+        }
+    }
+
+    /**
+     * Load and run the static initializers of classes used on the first call. A class literal alone loads a class
+     * without initializing it, so each class is initialized explicitly.
+     *
+     * @param classes Classes to initialize
+     */
+    private static void initializeClasses(Class[] classes) {
+        for (int i = 0; i < classes.length; i++) {
+            try {
+                Class.forName(classes[i].getName(), true, classes[i].getClassLoader());
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("Class cannot be initialized: " + classes[i].getName());
+            }
+        }
+    }
+
+    /**
+     * Returns a view of this instance that applies the given options to every call. The options are honored
+     * when the transport is an {@link XmlRpcTransport}, as the default transport is.
+     *
+     * @param callOptions Options applied to every call
+     * @return View of this instance sharing its credentials and transport
+     */
+    public TextAmerica4J withCallOptions(CallOptions callOptions) {
+        if (callOptions == null) {
+            throw new IllegalArgumentException("Call options cannot be null");
+        }
+
+        return new TextAmerica4J(this, callOptions, cache);
+    }
+
+    /**
+     * @return Options applied to every call made through this instance
+     */
+    public CallOptions getCallOptions() {
+        return callOptions;
+    }
+
+    /**
+     * Returns a view of this instance that serves {@link #getMyMoblogs()} and {@link #getCommunityMoblogs(String)}
+     * from a cache, and invalidates the cached listings when a moblog is changed through it.
+     *
+     * @param cache Cache of moblog listings, or <code>null</code> for none
+     * @return View of this instance sharing its credentials, transport and call options
+     */
+    public TextAmerica4J withCache(MoblogCache cache) {
+        return new TextAmerica4J(this, callOptions, cache);
+    }
+
+    /**
+     * @return Cache of moblog listings used by this instance, or <code>null</code> if there is none
+     */
+    public MoblogCache getCache() {
+        return cache;
     }
 
     /**
@@ -129,6 +300,46 @@ public class TextAmerica4J {
         return defaultParameters;
     }
 
+    /**
+     * Execute a call on the transport, applying the call options if the transport supports them
+     *
+     * @param methodName XML-RPC method name
+     * @param parameters Parameters of the call
+     * @return Result of the call
+     * @throws Exception If there is an error
+     */
+    protected Object execute(String methodName, Vector parameters) throws Exception {
+        try {
+            if (xmlRpcClient instanceof XmlRpcTransport) {
+                return ((XmlRpcTransport) xmlRpcClient).execute(methodName, parameters, callOptions);
+            }
+
+            return xmlRpcClient.execute(methodName, parameters);
+        } finally {
+            // A change that failed may still have been applied, for example if only the response was lost
+            if (cache != null && isMoblogChange(methodName)) {
+                cache.invalidate(MoblogCache.MY_MOBLOGS, getCacheKey(login));
+                cache.invalidate(MoblogCache.COMMUNITY_MOBLOGS, null);
+            }
+        }
+    }
+
+    /**
+     * @param methodName XML-RPC method name
+     * @return <code>true</code> if the method changes the moblog listings
+     */
+    private static boolean isMoblogChange(String methodName) {
+        return TA_MOBLOG_UPDATE.equals(methodName)
+                || TA_MOBLOG_CHANGETITLE.equals(methodName)
+                || TA_MOBLOG_CHANGETEXT.equals(methodName)
+                || TA_MOBLOG_CHANGEDOMAIN.equals(methodName)
+                || TA_MOBLOG_CHANGESECRETWORD.equals(methodName);
+    }
+
+    private String getCacheKey(String item) {
+        return checkNullOrBlank(item) ? "" : item;
+    }
+
     /**
      * Returns a Vector of Hashtables where each hashtable contains the following keys, "title", "MoblogID", and "url"
      *
@@ -137,9 +348,22 @@ public class TextAmerica4J {
      * @see <a href="http://www.textamerica.com/apicalls.aspx?call=Moblog.GetMyMoblogs">http://www.textamerica.com/apicalls.aspx?call=Moblog.GetMyMoblogs</a>
      */
     public Vector getMyMoblogs() throws Exception {
+        long generation = 0;
+        if (cache != null) {
+            generation = cache.getGeneration(MoblogCache.MY_MOBLOGS, getCacheKey(login));
+            Object cachedMoblogs = cache.get(MoblogCache.MY_MOBLOGS, getCacheKey(login));
+            if (cachedMoblogs != null) {
+                return (Vector) cachedMoblogs;
+            }
+        }
+
         Vector parameters = prepareDefaultRequestParameters();
 
-        Object moblogs = xmlRpcClient.execute(TA_MOBLOG_GETMYMOBLOGS, parameters);
+        Object moblogs = execute(TA_MOBLOG_GETMYMOBLOGS, parameters);
+
+        if (cache != null && moblogs != null) {
+            cache.put(MoblogCache.MY_MOBLOGS, getCacheKey(login), moblogs, generation);
+        }
 
         return (Vector) moblogs;
     }
@@ -157,13 +381,26 @@ public class TextAmerica4J {
      * @see <a href="http://www.textamerica.com/apicalls.aspx?call=Moblog.GetCommunityMoblogs">http://www.textamerica.com/apicalls.aspx?call=Moblog.GetCommunityMoblogs</a>
      */
     public Vector getCommunityMoblogs(String which) throws Exception {
+        long generation = 0;
+        if (cache != null) {
+            generation = cache.getGeneration(MoblogCache.COMMUNITY_MOBLOGS, getCacheKey(which));
+            Object cachedMoblogs = cache.get(MoblogCache.COMMUNITY_MOBLOGS, getCacheKey(which));
+            if (cachedMoblogs != null) {
+                return (Vector) cachedMoblogs;
+            }
+        }
+
         Vector parameters = prepareDefaultRequestParameters();
 
         if (!checkNullOrBlank(which)) {
             parameters.add(which);
         }
 
-        Object communityMoblogs = xmlRpcClient.execute(TA_MOBLOG_GETCOMMUNITYMOBLOGS, parameters);
+        Object communityMoblogs = execute(TA_MOBLOG_GETCOMMUNITYMOBLOGS, parameters);
+
+        if (cache != null && communityMoblogs != null) {
+            cache.put(MoblogCache.COMMUNITY_MOBLOGS, getCacheKey(which), communityMoblogs, generation);
+        }
 
         return (Vector) communityMoblogs;
     }
@@ -194,6 +431,14 @@ public class TextAmerica4J {
      */
     public String update(Integer moblogID, String domain, String secretWord, String title, String description,
                          String approvalType, String allowComments) throws Exception {
+        RequestValidator.requireID("MoblogID", moblogID);
+        RequestValidator.requireNonBlank("Domain", domain);
+        RequestValidator.requireNonBlank("Secretword", secretWord);
+        RequestValidator.requireString("Title", title);
+        RequestValidator.requireString("Text", description);
+        RequestValidator.requireApprovalType(approvalType);
+        RequestValidator.requireAllowComments(allowComments);
+
         Vector parameters = prepareDefaultRequestParameters();
 
         parameters.add(moblogID);
@@ -204,7 +449,7 @@ public class TextAmerica4J {
         parameters.add(approvalType);
         parameters.add(allowComments);
 
-        Object returnedMoblogID = xmlRpcClient.execute(TA_MOBLOG_UPDATE, parameters);
+        Object returnedMoblogID = execute(TA_MOBLOG_UPDATE, parameters);
 
         return (String) returnedMoblogID;
     }
@@ -253,12 +498,15 @@ public class TextAmerica4J {
      * @see <a href="http://www.textamerica.com/apicalls.aspx?call=Moblog.ChangeTitle">http://www.textamerica.com/apicalls.aspx?call=Moblog.ChangeTitle</a>
      */
     public String changeTitle(Integer moblogID, String title) throws Exception {
+        RequestValidator.requireID("MoblogID", moblogID);
+        RequestValidator.requireString("Title", title);
+
         Vector parameters = prepareDefaultRequestParameters();
 
         parameters.add(moblogID);
         parameters.add(title);
 
-        Object returnedMoblogID = xmlRpcClient.execute(TA_MOBLOG_CHANGETITLE, parameters);
+        Object returnedMoblogID = execute(TA_MOBLOG_CHANGETITLE, parameters);
 
         return (String) returnedMoblogID;
     }
@@ -296,12 +544,15 @@ public class TextAmerica4J {
      * @see <a href="http://www.textamerica.com/apicalls.aspx?call=Moblog.ChangeText">http://www.textamerica.com/apicalls.aspx?call=Moblog.ChangeText</a>
      */
     public String changeText(Integer moblogID, String text) throws Exception {
+        RequestValidator.requireID("MoblogID", moblogID);
+        RequestValidator.requireString("Text", text);
+
         Vector parameters = prepareDefaultRequestParameters();
 
         parameters.add(moblogID);
         parameters.add(text);
 
-        Object returnedMoblogID = xmlRpcClient.execute(TA_MOBLOG_CHANGETEXT, parameters);
+        Object returnedMoblogID = execute(TA_MOBLOG_CHANGETEXT, parameters);
 
         return (String) returnedMoblogID;
     }
@@ -339,12 +590,15 @@ public class TextAmerica4J {
      * @see <a href="http://www.textamerica.com/apicalls.aspx?call=Moblog.ChangeDomain">http://www.textamerica.com/apicalls.aspx?call=Moblog.ChangeDomain</a>
      */
     public String changeDomain(Integer moblogID, String domain) throws Exception {
+        RequestValidator.requireID("MoblogID", moblogID);
+        RequestValidator.requireNonBlank("NewDomain", domain);
+
         Vector parameters = prepareDefaultRequestParameters();
 
         parameters.add(moblogID);
         parameters.add(domain);
 
-        Object returnedMoblogID = xmlRpcClient.execute(TA_MOBLOG_CHANGEDOMAIN, parameters);
+        Object returnedMoblogID = execute(TA_MOBLOG_CHANGEDOMAIN, parameters);
 
         return (String) returnedMoblogID;
     }
@@ -382,12 +636,15 @@ public class TextAmerica4J {
      * @see <a href="http://www.textamerica.com/apicalls.aspx?call=Moblog.ChangeSecretWord">http://www.textamerica.com/apicalls.aspx?call=Moblog.ChangeSecretWord</a>
      */
     public String changeSecretWord(Integer moblogID, String secretWord) throws Exception {
+        RequestValidator.requireID("MoblogID", moblogID);
+        RequestValidator.requireNonBlank("NewSecretWord", secretWord);
+
         Vector parameters = prepareDefaultRequestParameters();
 
         parameters.add(moblogID);
         parameters.add(secretWord);
 
-        Object returnedMoblogID = xmlRpcClient.execute(TA_MOBLOG_CHANGESECRETWORD, parameters);
+        Object returnedMoblogID = execute(TA_MOBLOG_CHANGESECRETWORD, parameters);
 
         return (String) returnedMoblogID;
     }
@@ -436,6 +693,14 @@ public class TextAmerica4J {
      */
     public String entryUpdate(Integer moblogID, Integer entryID, String title, String text,
                               Integer categoryID, File imageData, String fileType) throws Exception {
+        RequestValidator.requireID("MoblogID", moblogID);
+        RequestValidator.requireID("EntryID", entryID);
+        RequestValidator.requireString("Title", title);
+        RequestValidator.requireString("Text", text);
+        RequestValidator.requireID("CategoryID", categoryID);
+        RequestValidator.requireFileType(fileType);
+        RequestValidator.requireMedia(imageData, fileType);
+
         Vector parameters = prepareDefaultRequestParameters();
 
         parameters.add(moblogID);
@@ -444,26 +709,30 @@ public class TextAmerica4J {
         parameters.add(text);
         parameters.add(categoryID);
 
-        InputStream is = new FileInputStream(imageData);
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(8192);
-        BufferedInputStream bufferedInputStream = new BufferedInputStream(is);
-        int bytesRead = 0;
-        byte[] temp = new byte[8192];
-        while (-1 != (bytesRead = bufferedInputStream.read(temp))) {
-            byteArrayOutputStream.write(temp, 0, bytesRead);
-        }
+        if (xmlRpcClient instanceof XmlRpcTransport) {
+            parameters.add(new FileParameter(imageData));
+        } else {
+            InputStream is = new FileInputStream(imageData);
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(8192);
+            BufferedInputStream bufferedInputStream = new BufferedInputStream(is);
+            int bytesRead = 0;
+            byte[] temp = new byte[8192];
+            while (-1 != (bytesRead = bufferedInputStream.read(temp))) {
+                byteArrayOutputStream.write(temp, 0, bytesRead);
+            }
 
-        is.close();
-        bufferedInputStream.close();
+            is.close();
+            bufferedInputStream.close();
 
-        byte[] encodedBytes = Base64.encode(byteArrayOutputStream.toByteArray());
+            byte[] encodedBytes = FileParameter.encode(byteArrayOutputStream.toByteArray());
 
-        byteArrayOutputStream.close();
+            byteArrayOutputStream.close();
 
-        parameters.add(new String(encodedBytes));
+            parameters.add(new String(encodedBytes));
+        }
         parameters.add(fileType);
 
-        Object response = xmlRpcClient.execute(TA_ENTRY_UPDATE, parameters);
+        Object response = execute(TA_ENTRY_UPDATE, parameters);
 
         return (String) response;
     }
@@ -512,12 +781,15 @@ public class TextAmerica4J {
      * @see <a href="http://www.textamerica.com/apicalls.aspx?call=Entry.Delete">http://www.textamerica.com/apicalls.aspx?call=Entry.Delete</a>
      */
     public String entryDelete(Integer moblogID, Integer entryID) throws Exception {
+        RequestValidator.requireID("MoblogID", moblogID);
+        RequestValidator.requireID("EntryID", entryID);
+
         Vector parameters = prepareDefaultRequestParameters();
 
         parameters.add(moblogID);
         parameters.add(entryID);
 
-        Object response = xmlRpcClient.execute(TA_ENTRY_DELETE, parameters);
+        Object response = execute(TA_ENTRY_DELETE, parameters);
 
         return (String) response;
     }
@@ -555,12 +827,15 @@ public class TextAmerica4J {
      * @see <a href="http://www.textamerica.com/apicalls.aspx?call=Keywords.Add">http://www.textamerica.com/apicalls.aspx?call=Keywords.Add</a>
      */
     public String addKeywords(Integer entryID, String keywords) throws Exception {
+        RequestValidator.requireID("EntryID", entryID);
+        RequestValidator.requireNonBlank("Keywords", keywords);
+
         Vector parameters = prepareDefaultRequestParameters();
 
         parameters.add(entryID);
         parameters.add(keywords);
 
-        Object response = xmlRpcClient.execute(TA_KEYWORDS_ADD, parameters);
+        Object response = execute(TA_KEYWORDS_ADD, parameters);
 
         return (String) response;
     }
@@ -598,12 +873,15 @@ public class TextAmerica4J {
      * @see <a href="http://www.textamerica.com/apicalls.aspx?call=Favorites.Update">http://www.textamerica.com/apicalls.aspx?call=Favorites.Update</a>
      */
     public Object favoritesUpdate(Integer listID, String title) throws Exception {
+        RequestValidator.requireID("ListID", listID);
+        RequestValidator.requireString("ListTitle", title);
+
         Vector parameters = prepareDefaultRequestParameters();
 
         parameters.add(listID);
         parameters.add(title);
 
-        Object response = xmlRpcClient.execute(TA_FAVORITES_UPDATE, parameters);
+        Object response = execute(TA_FAVORITES_UPDATE, parameters);
 
         return response;
     }
@@ -641,12 +919,15 @@ public class TextAmerica4J {
      * @see <a href="http://www.textamerica.com/apicalls.aspx?call=Favorites.Delete">http://www.textamerica.com/apicalls.aspx?call=Favorites.Delete</a>
      */
     public Object favoritesDelete(Integer listID, String moblogURL) throws Exception {
+        RequestValidator.requireID("ListID", listID);
+        RequestValidator.requireNonBlank("MoblogURL", moblogURL);
+
         Vector parameters = prepareDefaultRequestParameters();
 
         parameters.add(listID);
         parameters.add(moblogURL);
 
-        Object response = xmlRpcClient.execute(TA_FAVORITES_DELETE, parameters);
+        Object response = execute(TA_FAVORITES_DELETE, parameters);
 
         return response;
     }
@@ -684,12 +965,15 @@ public class TextAmerica4J {
      * @see <a href="http://www.textamerica.com/apicalls.aspx?call=Favorites.Assign">http://www.textamerica.com/apicalls.aspx?call=Favorites.Assign</a>
      */
     public Object favoritesAssign(Integer moblogID, Integer listID) throws Exception {
+        RequestValidator.requireID("MoblogID", moblogID);
+        RequestValidator.requireID("ListID", listID);
+
         Vector parameters = prepareDefaultRequestParameters();
 
         parameters.add(moblogID);
         parameters.add(listID);
 
-        Object response = xmlRpcClient.execute(TA_FAVORITES_ASSIGN, parameters);
+        Object response = execute(TA_FAVORITES_ASSIGN, parameters);
 
         return response;
     }
@@ -727,12 +1011,15 @@ public class TextAmerica4J {
      * @see <a href="http://www.textamerica.com/apicalls.aspx?call=Favorites.AddMoblog">http://www.textamerica.com/apicalls.aspx?call=Favorites.AddMoblog</a>
      */
     public Object favoritesAddMoblog(Integer listID, String moblogURL) throws Exception {
+        RequestValidator.requireID("ListID", listID);
+        RequestValidator.requireNonBlank("MoblogURL", moblogURL);
+
         Vector parameters = prepareDefaultRequestParameters();
 
         parameters.add(listID);
         parameters.add(moblogURL);
 
-        Object response = xmlRpcClient.execute(TA_FAVORITES_ADDMOBLOG, parameters);
+        Object response = execute(TA_FAVORITES_ADDMOBLOG, parameters);
 
         return response;
     }
@@ -770,12 +1057,15 @@ public class TextAmerica4J {
      * @see <a href="http://www.textamerica.com/apicalls.aspx?call=Favorites.RemoveMoblog">http://www.textamerica.com/apicalls.aspx?call=Favorites.RemoveMoblog</a>
      */
     public Object favoritesRemoveMoblog(Integer listID, String moblogURL) throws Exception {
+        RequestValidator.requireID("ListID", listID);
+        RequestValidator.requireNonBlank("MoblogURL", moblogURL);
+
         Vector parameters = prepareDefaultRequestParameters();
 
         parameters.add(listID);
         parameters.add(moblogURL);
 
-        Object response = xmlRpcClient.execute(TA_FAVORITES_REMOVEMOBLOG, parameters);
+        Object response = execute(TA_FAVORITES_REMOVEMOBLOG, parameters);
 
         return response;
     }
@@ -813,12 +1103,15 @@ public class TextAmerica4J {
      * @see <a href="http://www.textamerica.com/apicalls.aspx?call=Bookmarks.Update">http://www.textamerica.com/apicalls.aspx?call=Bookmarks.Update</a>
      */
     public String bookmarksUpdate(Integer listID, String title) throws Exception {
+        RequestValidator.requireID("ListID", listID);
+        RequestValidator.requireString("Title", title);
+
         Vector parameters = prepareDefaultRequestParameters();
 
         parameters.add(listID);
         parameters.add(title);
 
-        Object response = xmlRpcClient.execute(TA_BOOKMARKS_UPDATE, parameters);
+        Object response = execute(TA_BOOKMARKS_UPDATE, parameters);
 
         return (String) response;
     }
@@ -856,12 +1149,15 @@ public class TextAmerica4J {
      * @see <a href="http://www.textamerica.com/apicalls.aspx?call=Bookmarks.Assign">http://www.textamerica.com/apicalls.aspx?call=Bookmarks.Assign</a>
      */
     public String bookmarksAssign(Integer moblogID, Integer listID) throws Exception {
+        RequestValidator.requireID("MoblogID", moblogID);
+        RequestValidator.requireID("ListID", listID);
+
         Vector parameters = prepareDefaultRequestParameters();
 
         parameters.add(moblogID);
         parameters.add(listID);
 
-        Object response = xmlRpcClient.execute(TA_BOOKMARKS_ASSIGN, parameters);
+        Object response = execute(TA_BOOKMARKS_ASSIGN, parameters);
 
         return (String) response;
     }
@@ -899,12 +1195,15 @@ public class TextAmerica4J {
      * @see <a href="http://www.textamerica.com/apicalls.aspx?call=Bookmarks.UnAssign">http://www.textamerica.com/apicalls.aspx?call=Bookmarks.UnAssign</a>
      */
     public String bookmarksUnAssign(Integer moblogID, Integer listID) throws Exception {
+        RequestValidator.requireID("MoblogID", moblogID);
+        RequestValidator.requireID("ListID", listID);
+
         Vector parameters = prepareDefaultRequestParameters();
 
         parameters.add(moblogID);
         parameters.add(listID);
 
-        Object response = xmlRpcClient.execute(TA_BOOKMARKS_UNASSIGN, parameters);
+        Object response = execute(TA_BOOKMARKS_UNASSIGN, parameters);
 
         return (String) response;
     }
@@ -940,11 +1239,13 @@ public class TextAmerica4J {
      * @see <a href="http://www.textamerica.com/apicalls.aspx?call=Bookmarks.Delete">http://www.textamerica.com/apicalls.aspx?call=Bookmarks.Delete</a>
      */
     public String bookmarksDelete(Integer listID) throws Exception {
+        RequestValidator.requireID("ListID", listID);
+
         Vector parameters = prepareDefaultRequestParameters();
 
         parameters.add(listID);
 
-        Object response = xmlRpcClient.execute(TA_BOOKMARKS_DELETE, parameters);
+        Object response = execute(TA_BOOKMARKS_DELETE, parameters);
 
         return (String) response;
     }
@@ -980,12 +1281,15 @@ public class TextAmerica4J {
      * @see <a href="http://www.textamerica.com/apicalls.aspx?call=Bookmarks.UpdateURL">http://www.textamerica.com/apicalls.aspx?call=Bookmarks.UpdateURL</a>
      */
     public String bookmarksUpdateURL(Integer listID, String url) throws Exception {
+        RequestValidator.requireID("ListID", listID);
+        RequestValidator.requireNonBlank("URL", url);
+
         Vector parameters = prepareDefaultRequestParameters();
 
         parameters.add(listID);
         parameters.add(url);
 
-        Object response = xmlRpcClient.execute(TA_BOOKMARKS_UPDATEURL, parameters);
+        Object response = execute(TA_BOOKMARKS_UPDATEURL, parameters);
 
         return (String) response;
     }
@@ -1023,12 +1327,15 @@ public class TextAmerica4J {
      * @see <a href="http://www.textamerica.com/apicalls.aspx?call=Bookmarks.RemoveURL">http://www.textamerica.com/apicalls.aspx?call=Bookmarks.RemoveURL</a>
      */
     public String bookmarksRemoveURL(Integer listID, String url) throws Exception {
+        RequestValidator.requireID("ListID", listID);
+        RequestValidator.requireNonBlank("URL", url);
+
         Vector parameters = prepareDefaultRequestParameters();
 
         parameters.add(listID);
         parameters.add(url);
 
-        Object response = xmlRpcClient.execute(TA_BOOKMARKS_REMOVEURL, parameters);
+        Object response = execute(TA_BOOKMARKS_REMOVEURL, parameters);
 
         return (String) response;
     }
@@ -1068,13 +1375,17 @@ public class TextAmerica4J {
      * @see <a href="http://www.textamerica.com/apicalls.aspx?call=Template.UpdateSection">http://www.textamerica.com/apicalls.aspx?call=Template.UpdateSection</a>
      */
     public String templateUpdateSection(Integer moblogID, String sectionID, String htmlCode) throws Exception {
+        RequestValidator.requireID("MoblogID", moblogID);
+        RequestValidator.requireSectionID(sectionID);
+        RequestValidator.requireString("HTMLCode", htmlCode);
+
         Vector parameters = prepareDefaultRequestParameters();
 
         parameters.add(moblogID);
         parameters.add(sectionID);
         parameters.add(htmlCode);
 
-        Object response = xmlRpcClient.execute(TA_TEMPLATE_UPDATESECTION, parameters);
+        Object response = execute(TA_TEMPLATE_UPDATESECTION, parameters);
 
         return (String) response;
     }
@@ -1116,13 +1427,17 @@ public class TextAmerica4J {
      * @see <a href="http://www.textamerica.com/apicalls.aspx?call=Template.SetTemplate">http://www.textamerica.com/apicalls.aspx?call=Template.SetTemplate</a>
      */
     public String setTemplate(Integer moblogID, Integer graphicID, Integer layoutID) throws Exception {
+        RequestValidator.requireID("MoblogID", moblogID);
+        RequestValidator.requireID("GraphicID", graphicID);
+        RequestValidator.requireID("LayoutID", layoutID);
+
         Vector parameters = prepareDefaultRequestParameters();
 
         parameters.add(moblogID);
         parameters.add(graphicID);
         parameters.add(layoutID);
 
-        Object response = xmlRpcClient.execute(TA_TEMPLATE_SETTEMPLATE, parameters);
+        Object response = execute(TA_TEMPLATE_SETTEMPLATE, parameters);
 
         return (String) response;
     }
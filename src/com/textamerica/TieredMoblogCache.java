@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.util.Vector;
+
+/**
+ * {@link MoblogCache} that puts a local cache in front of a shared one. Listings are read from the local cache
+ * first and copied into it when they are found in the shared cache. Invalidations made on this node go to both;
+ * invalidations reported by the shared cache, including those published by other nodes, evict the local copy and
+ * are passed on to this cache's listeners.
+ * <p/>
+ * The generation of a listing is that of the shared cache. Copies into the local cache are made with the local
+ * cache's generation, taken before the shared cache is read, so a copy is dropped if the listing is invalidated
+ * while it is being made.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class TieredMoblogCache implements MoblogCache {
+
+    private final MoblogCache local;
+    private final MoblogCache shared;
+    private final Vector invalidationListeners = new Vector();
+
+    /**
+     * Create a tiered cache
+     *
+     * @param local  Cache local to this node, such as an {@link InProcessMoblogCache} or {@link OffHeapMoblogCache}
+     * @param shared Cache shared by all nodes
+     */
+    public TieredMoblogCache(MoblogCache local, MoblogCache shared) {
+        if (local == null || shared == null) {
+            throw new IllegalArgumentException("Local and shared caches cannot be null");
+        }
+
+        this.local = local;
+        this.shared = shared;
+
+        shared.addInvalidationListener(new InvalidationListener() {
+            public void invalidated(String group, String key) {
+                TieredMoblogCache.this.local.evict(group, key);
+
+                Object[] listeners = invalidationListeners.toArray();
+                for (int i = 0; i < listeners.length; i++) {
+                    ((InvalidationListener) listeners[i]).invalidated(group, key);
+                }
+            }
+        });
+    }
+
+    public Object get(String group, String key) {
+        Object value = local.get(group, key);
+
+        if (value == null) {
+            long localGeneration = local.getGeneration(group, key);
+            value = shared.get(group, key);
+            if (value != null) {
+                local.put(group, key, value, localGeneration);
+            }
+        }
+
+        return value;
+    }
+
+    public void put(String group, String key, Object value) {
+        shared.put(group, key, value);
+        local.put(group, key, value);
+    }
+
+    public long getGeneration(String group, String key) {
+        return shared.getGeneration(group, key);
+    }
+
+    public boolean put(String group, String key, Object value, long generation) {
+        long localGeneration = local.getGeneration(group, key);
+        if (!shared.put(group, key, value, generation)) {
+            return false;
+        }
+
+        return local.put(group, key, value, localGeneration);
+    }
+
+    public void invalidate(String group, String key) {
+        local.evict(group, key);
+        shared.invalidate(group, key);
+    }
+
+    public void evict(String group, String key) {
+        local.evict(group, key);
+        shared.evict(group, key);
+    }
+
+    public void addInvalidationListener(InvalidationListener invalidationListener) {
+        invalidationListeners.add(invalidationListener);
+    }
+
+    public void removeInvalidationListener(InvalidationListener invalidationListener) {
+        invalidationListeners.remove(invalidationListener);
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter. Tokens accumulate at a fixed rate up to the capacity of the bucket, and each permit
+ * acquired consumes a token. When too few tokens are available, the caller reserves the tokens it needs and
+ * sleeps until they have accumulated, so concurrent callers are served in the order they arrive.
+ * <p/>
+ * A bucket measured in bytes limits bandwidth; a bucket measured in calls limits the call rate. Instances are safe
+ * for use by multiple concurrent threads.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class TokenBucket {
+
+    private final double permitsPerSecond;
+    private final long capacity;
+
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * Create a token bucket that starts full
+     *
+     * @param permitsPerSecond Rate at which tokens accumulate
+     * @param capacity         Maximum number of tokens, the largest burst allowed
+     */
+    public TokenBucket(double permitsPerSecond, long capacity) {
+        if (permitsPerSecond <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Rate and capacity must be positive");
+        }
+
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * @return Rate at which tokens accumulate
+     */
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * @return Maximum number of tokens
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Acquire permits, waiting as long as necessary
+     *
+     * @param permits Number of permits
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public void acquire(long permits) throws InterruptedException {
+        acquire(permits, CallOptions.NO_DEADLINE);
+    }
+
+    /**
+     * Acquire permits, waiting until no later than a deadline
+     *
+     * @param permits  Number of permits
+     * @param deadline Deadline in {@link System#nanoTime()} terms, or {@link CallOptions#NO_DEADLINE}
+     * @return <code>true</code> if the permits were acquired, <code>false</code> without consuming any tokens if
+     *         they would not be available before the deadline
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public boolean acquire(long permits, long deadline) throws InterruptedException {
+        long wait;
+
+        synchronized (this) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerSecond / 1e9);
+            lastRefill = now;
+
+            wait = (tokens >= permits) ? 0 : (long) Math.ceil((permits - tokens) * 1e9 / permitsPerSecond);
+            if (deadline != CallOptions.NO_DEADLINE && now + wait - deadline > 0) {
+                return false;
+            }
+
+            tokens -= permits;
+        }
+
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+
+        return true;
+    }
+}
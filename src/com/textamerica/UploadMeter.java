@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+
+/**
+ * Accounts for the body of a single request as it is sent: enforces the call's deadline, throttles to the
+ * client and global bandwidth limits, records throughput and reports progress. The body is transferred in
+ * pieces small enough for throttling to be smooth.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+class UploadMeter {
+
+    static final int PIECE_SIZE = 8192;
+
+    private final String methodName;
+    private final long deadline;
+    private final long totalBytes;
+    private final UploadListener uploadListener;
+    private final TokenBucket bandwidthLimit;
+    private final UploadStatistics uploadStatistics;
+    private final long started = System.nanoTime();
+
+    private long bytesSent;
+    private long sendNanos;
+
+    UploadMeter(String methodName, long deadline, long totalBytes, CallOptions options,
+                TokenBucket bandwidthLimit, UploadStatistics uploadStatistics) {
+        this.methodName = methodName;
+        this.deadline = deadline;
+        this.totalBytes = totalBytes;
+        this.uploadListener = options.getUploadListener();
+        this.bandwidthLimit = bandwidthLimit;
+        this.uploadStatistics = uploadStatistics;
+    }
+
+    /**
+     * Wait until a piece of the body may be sent
+     *
+     * @param length Length of the piece
+     * @throws IOException If the deadline passes or the thread is interrupted
+     */
+    void beforeTransfer(int length) throws IOException {
+        HttpXmlRpcTransport.toTimeout(methodName, deadline);
+
+        try {
+            throttle(bandwidthLimit, length);
+            throttle(HttpXmlRpcTransport.getGlobalBandwidthLimit(), length);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while throttling " + methodName);
+        }
+    }
+
+    private void throttle(TokenBucket tokenBucket, int length) throws InterruptedException, SocketTimeoutException {
+        if (tokenBucket != null && !tokenBucket.acquire(length, deadline)) {
+            throw new SocketTimeoutException("Deadline exceeded while throttling " + methodName);
+        }
+    }
+
+    /**
+     * Account for a piece of the body that has been sent
+     *
+     * @param length Length of the piece
+     * @param nanos  Time taken to send the piece
+     */
+    void afterTransfer(int length, long nanos) {
+        bytesSent += length;
+        sendNanos += nanos;
+
+        if (uploadListener != null) {
+            uploadListener.uploadProgress(methodName, bytesSent, totalBytes);
+        }
+    }
+
+    /**
+     * Account for the completed body. Bodies that are not completed are left out of the statistics, so the bytes
+     * and the time of a failed upload do not skew the rates.
+     */
+    void finished() {
+        uploadStatistics.recordUpload(bytesSent, sendNanos, System.nanoTime() - started);
+    }
+
+    /**
+     * Output stream that writes through an {@link UploadMeter}
+     */
+    static class MeteredOutputStream extends FilterOutputStream {
+
+        private final UploadMeter uploadMeter;
+
+        MeteredOutputStream(OutputStream out, UploadMeter uploadMeter) {
+            super(out);
+            this.uploadMeter = uploadMeter;
+        }
+
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int length = Math.min(len, PIECE_SIZE);
+                uploadMeter.beforeTransfer(length);
+
+                long started = System.nanoTime();
+                out.write(b, off, length);
+                uploadMeter.afterTransfer(length, System.nanoTime() - started);
+
+                off += length;
+                len -= length;
+            }
+        }
+    }
+
+    /**
+     * Input stream from which a transport pulls a request body through an {@link UploadMeter}. The time spent
+     * sending a piece is not visible to the stream, so it is recorded as zero. Each piece is throttled for the
+     * bytes actually read, after the read and before it is handed to the transport. The body is complete when the
+     * end of the stream is reached.
+     */
+    static class MeteredInputStream extends FilterInputStream {
+
+        private final UploadMeter uploadMeter;
+        private boolean finished;
+
+        MeteredInputStream(InputStream in, UploadMeter uploadMeter) {
+            super(in);
+            this.uploadMeter = uploadMeter;
+        }
+
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xff);
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            int bytesRead = in.read(b, off, Math.min(len, PIECE_SIZE));
+            if (bytesRead > 0) {
+                uploadMeter.beforeTransfer(bytesRead);
+                uploadMeter.afterTransfer(bytesRead, 0);
+            } else if (bytesRead == -1 && !finished) {
+                finished = true;
+                uploadMeter.finished();
+            }
+
+            return bytesRead;
+        }
+    }
+}
@@ -0,0 +1,845 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import org.apache.xmlrpc.XmlRpcException;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Accepts entries for {@link TextAmerica4J#entryUpdate(int, int, String, String, int, File, String)} into a queue on
+ * disk and uploads them in the background, so bursts of uploads are accepted as fast as the local disk allows
+ * rather than as fast as the moblog service does.
+ * <p/>
+ * {@link #submit(EntryUpdate)} copies the entry's media into the spool directory, appends the entry to the current
+ * segment file and returns once both are on disk. Writes are synced by a single thread every sync interval, so
+ * entries submitted together share one <code>fsync</code> (group commit). Synced entries are uploaded by a fixed
+ * number of worker threads, optionally no faster than a {@link TokenBucket} allows. An entry is finished when it
+ * has been uploaded, when the service answers with a fault or when it is rejected locally with an
+ * <code>IllegalArgumentException</code>. Other failures, such as an <code>IOException</code>, are retried with
+ * exponential back-off capped at one minute for as long as the spool runs; an entry still being retried at
+ * shutdown stays in the spool.
+ * <p/>
+ * Each finished entry is recorded in an acknowledgement log, which is synced along with the next group. The spool's
+ * copy of the entry's media is deleted once that sync has made the acknowledgement durable, and a segment is
+ * deleted when all of its entries have finished. When a spool is started, entries in its directory
+ * that were never acknowledged are uploaded again, so nothing submitted is lost to a crash or restart. Delivery is
+ * at least once: an entry uploaded just before a crash, whose acknowledgement had not been synced, is uploaded
+ * and reported to {@link SpoolListener}s a second time.
+ * <p/>
+ * If a sync fails, what reached the disk is no longer known, so the entries in that group and any submitted
+ * afterwards are refused with an <code>IOException</code> until the spool is restarted. Refused entries that were
+ * written before the failure was seen may still be uploaded after the restart.
+ * <pre>
+ * UploadSpool spool = new UploadSpool(new File("spool"), textAmerica4J, 4, new TokenBucket(2, 4), 10);
+ * spool.addSpoolListener(listener);
+ * spool.start();
+ * long sequence = spool.submit(new EntryUpdate(moblogID, 0, title, text, categoryID, image, "JPG"));
+ * ...
+ * spool.shutdown(30000);
+ * </pre>
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class UploadSpool {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String ACKNOWLEDGEMENT_LOG = "acknowledged.log";
+    private static final String MEDIA_DIRECTORY = "media";
+    private static final String UTF8 = "UTF-8";
+    private static final int SEGMENT_ENTRIES = 1024;
+    private static final long RETRY_DELAY = 1000;
+    private static final long MAXIMUM_RETRY_DELAY = 60 * 1000;
+    private static final int COPY_BUFFER_SIZE = 65536;
+    // Payload length and CRC-32 of each record
+    private static final int RECORD_HEADER_SIZE = 12;
+    // Sequence number, four ints and the lengths of four strings
+    private static final int MINIMUM_PAYLOAD_SIZE = 8 + 4 * 4 + 4 * 4;
+
+    private final File directory;
+    private final File mediaDirectory;
+    private final TextAmerica4J textAmerica4J;
+    private final int concurrency;
+    private final TokenBucket rateLimit;
+    private final long syncInterval;
+    private final Vector spoolListeners = new Vector();
+
+    // Guarded by this
+    private final HashMap remainingEntries = new HashMap();
+    private List unsyncedFiles = new ArrayList();
+    private List unsyncedEntries = new ArrayList();
+    private List acknowledgedMedia = new ArrayList();
+    private RandomAccessFile segment;
+    private int segmentNumber;
+    private int segmentEntries;
+    private RandomAccessFile acknowledgementLog;
+    private long nextSequence = 1;
+    private long writeGeneration = 1;
+    private long syncedGeneration;
+    private boolean acknowledgementsUnsynced;
+    private IOException syncFailure;
+    private int pendingCount;
+    private boolean started;
+    private boolean closed;
+
+    private Thread syncThread;
+    private ScheduledThreadPoolExecutor workers;
+
+    /**
+     * Create a spool. Nothing is read or written until {@link #start()} is called.
+     *
+     * @param directory     Spool directory, created if necessary. Only one spool may use a directory at a time.
+     * @param textAmerica4J Client used to upload entries
+     * @param concurrency   Number of uploads in flight at once
+     * @param rateLimit     Limit on the rate of uploads, or <code>null</code> for none
+     * @param syncInterval  Milliseconds to gather writes before syncing them to disk
+     */
+    public UploadSpool(File directory, TextAmerica4J textAmerica4J, int concurrency, TokenBucket rateLimit, long syncInterval) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1: " + concurrency);
+        }
+        if (syncInterval < 0) {
+            throw new IllegalArgumentException("Sync interval cannot be negative: " + syncInterval);
+        }
+
+        this.directory = directory;
+        this.mediaDirectory = new File(directory, MEDIA_DIRECTORY);
+        this.textAmerica4J = textAmerica4J;
+        this.concurrency = concurrency;
+        this.rateLimit = rateLimit;
+        this.syncInterval = syncInterval;
+    }
+
+    /**
+     * Add a listener. Listeners should be added before {@link #start()} to hear about entries recovered from disk.
+     *
+     * @param spoolListener Listener
+     */
+    public void addSpoolListener(SpoolListener spoolListener) {
+        spoolListeners.add(spoolListener);
+    }
+
+    /**
+     * Remove a listener
+     *
+     * @param spoolListener Listener
+     */
+    public void removeSpoolListener(SpoolListener spoolListener) {
+        spoolListeners.remove(spoolListener);
+    }
+
+    /**
+     * Recover unacknowledged entries from the spool directory and start uploading
+     *
+     * @throws IOException If the spool directory cannot be read or written
+     */
+    public synchronized void start() throws IOException {
+        if (started) {
+            throw new IllegalStateException("Upload spool has already been started");
+        }
+
+        if (!mediaDirectory.isDirectory() && !mediaDirectory.mkdirs()) {
+            throw new IOException("Unable to create spool directory: " + mediaDirectory);
+        }
+
+        Set acknowledged = readAcknowledgements();
+        Set retained = new HashSet();
+        List recovered = new ArrayList();
+        File[] segmentFiles = listSegments();
+        for (int i = 0; i < segmentFiles.length; i++) {
+            int number = getSegmentNumber(segmentFiles[i]);
+            int remaining = 0;
+            List entries = readSegment(segmentFiles[i], number);
+            for (int j = 0; j < entries.size(); j++) {
+                SpooledEntry entry = (SpooledEntry) entries.get(j);
+                Long sequence = Long.valueOf(entry.sequence);
+                nextSequence = Math.max(nextSequence, entry.sequence + 1);
+                if (acknowledged.contains(sequence)) {
+                    retained.add(sequence);
+                } else {
+                    recovered.add(entry);
+                    remaining++;
+                }
+            }
+
+            segmentNumber = number;
+            if (remaining == 0) {
+                segmentFiles[i].delete();
+            } else {
+                remainingEntries.put(Integer.valueOf(number), new int[]{remaining});
+            }
+        }
+
+        deleteOrphanedMedia(recovered);
+        rewriteAcknowledgements(retained);
+
+        segmentNumber++;
+        segment = openSegment(segmentNumber);
+        remainingEntries.put(Integer.valueOf(segmentNumber), new int[]{0});
+        pendingCount = recovered.size();
+
+        workers = new ScheduledThreadPoolExecutor(concurrency, createThreadFactory("TextAmerica4J upload spool worker"));
+        workers.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        syncThread = createThreadFactory("TextAmerica4J upload spool sync").newThread(new Runnable() {
+            public void run() {
+                sync();
+            }
+        });
+        syncThread.start();
+        started = true;
+
+        for (int i = 0; i < recovered.size(); i++) {
+            schedule((SpooledEntry) recovered.get(i), 0);
+        }
+    }
+
+    /**
+     * Queue an entry for upload. The entry's media is copied into the spool, so the original file may be deleted
+     * once this method returns.
+     *
+     * @param entryUpdate Entry
+     * @return Sequence number identifying the entry to {@link SpoolListener}s
+     * @throws IOException          If the entry cannot be written to disk, or a sync has failed since the spool
+     *                              was started
+     * @throws InterruptedException If interrupted while waiting for the entry to be synced
+     * @throws IllegalArgumentException If the entry would be rejected by
+     *                              {@link TextAmerica4J#entryUpdate(Integer, Integer, String, String, Integer, File, String)}
+     */
+    public long submit(EntryUpdate entryUpdate) throws IOException, InterruptedException {
+        RequestValidator.requireString("Title", entryUpdate.getTitle());
+        RequestValidator.requireString("Text", entryUpdate.getText());
+        RequestValidator.requireFileType(entryUpdate.getFileType());
+        RequestValidator.requireMedia(entryUpdate.getImageData(), entryUpdate.getFileType());
+
+        long sequence;
+        synchronized (this) {
+            checkWritable();
+            sequence = nextSequence++;
+        }
+
+        File media = new File(mediaDirectory, sequence + "." + entryUpdate.getFileType().toLowerCase());
+        RandomAccessFile mediaFile = copy(entryUpdate.getImageData(), media);
+        EntryUpdate spooledUpdate = new EntryUpdate(entryUpdate.getMoblogID(), entryUpdate.getEntryID(),
+                entryUpdate.getTitle(), entryUpdate.getText(), entryUpdate.getCategoryID(), media, entryUpdate.getFileType());
+        byte[] record = encode(sequence, spooledUpdate);
+
+        synchronized (this) {
+            if (closed || syncFailure != null) {
+                mediaFile.close();
+                media.delete();
+                checkWritable();
+            }
+
+            if (segmentEntries == SEGMENT_ENTRIES) {
+                rollSegment();
+            }
+            segment.write(record);
+            segmentEntries++;
+            ((int[]) remainingEntries.get(Integer.valueOf(segmentNumber)))[0]++;
+            pendingCount++;
+
+            unsyncedFiles.add(mediaFile);
+            unsyncedEntries.add(new SpooledEntry(sequence, segmentNumber, spooledUpdate));
+            long generation = writeGeneration;
+            notifyAll();
+
+            while (syncedGeneration < generation && syncFailure == null) {
+                wait();
+            }
+            checkSynced();
+        }
+
+        return sequence;
+    }
+
+    /**
+     * Number of entries submitted or recovered that have not finished uploading
+     *
+     * @return Number of entries
+     */
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * Stop accepting entries, sync what has been written and stop the workers. Uploads in flight are given until the
+     * timeout to finish and are interrupted after it; entries not yet uploaded stay in the spool directory and are
+     * uploaded after the next {@link #start()}.
+     *
+     * @param timeout Milliseconds to wait for uploads in flight
+     * @throws InterruptedException If interrupted while waiting
+     * @throws IOException          If the spool files cannot be closed
+     */
+    public void shutdown(long timeout) throws InterruptedException, IOException {
+        synchronized (this) {
+            if (!started || closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+
+        syncThread.join();
+        workers.shutdown();
+        if (!workers.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+            workers.shutdownNow();
+        }
+
+        List media;
+        synchronized (this) {
+            segment.close();
+            acknowledgementLog.getFD().sync();
+            acknowledgementLog.close();
+            media = acknowledgedMedia;
+            acknowledgedMedia = new ArrayList();
+        }
+        deleteMedia(media);
+    }
+
+    /**
+     * Sync thread: wait for writes, let more gather for the sync interval, then sync them all to disk at once and
+     * hand the entries to the workers. Exits once the spool is closed and everything written has been synced.
+     */
+    private void sync() {
+        while (true) {
+            try {
+                synchronized (this) {
+                    while (unsyncedEntries.isEmpty() && !acknowledgementsUnsynced && !closed) {
+                        wait();
+                    }
+                    if (unsyncedEntries.isEmpty() && !acknowledgementsUnsynced) {
+                        return;
+                    }
+                }
+
+                if (syncInterval > 0 && !closed) {
+                    Thread.sleep(syncInterval);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            List files;
+            List entries;
+            List media;
+            RandomAccessFile currentSegment;
+            long generation;
+            synchronized (this) {
+                files = unsyncedFiles;
+                entries = unsyncedEntries;
+                media = acknowledgedMedia;
+                unsyncedFiles = new ArrayList();
+                unsyncedEntries = new ArrayList();
+                acknowledgedMedia = new ArrayList();
+                currentSegment = segment;
+                generation = writeGeneration++;
+                acknowledgementsUnsynced = false;
+            }
+
+            IOException failure = null;
+            for (int i = 0; i < files.size(); i++) {
+                RandomAccessFile file = (RandomAccessFile) files.get(i);
+                try {
+                    file.getFD().sync();
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    try {
+                        file.close();
+                    } catch (IOException e) {
+                        // Already synced or failed
+                    }
+                }
+            }
+            try {
+                currentSegment.getFD().sync();
+                acknowledgementLog.getFD().sync();
+            } catch (IOException e) {
+                failure = e;
+            }
+
+            boolean synced;
+            synchronized (this) {
+                if (failure != null) {
+                    syncFailure = failure;
+                }
+                synced = syncFailure == null;
+                syncedGeneration = generation;
+                notifyAll();
+                deleteFinishedSegments();
+            }
+
+            // Once a sync has failed, entries and media are left on disk for the next start
+            if (synced) {
+                deleteMedia(media);
+                for (int i = 0; i < entries.size(); i++) {
+                    schedule((SpooledEntry) entries.get(i), 0);
+                }
+            }
+        }
+    }
+
+    private void schedule(final SpooledEntry entry, long delay) {
+        try {
+            workers.schedule(new Runnable() {
+                public void run() {
+                    upload(entry);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down; the entry is uploaded after the next start
+        }
+    }
+
+    private void upload(SpooledEntry entry) {
+        String entryID;
+        try {
+            if (rateLimit != null) {
+                rateLimit.acquire(1);
+            }
+            entryID = entry.entryUpdate.execute(textAmerica4J);
+        } catch (InterruptedException e) {
+            // Shutting down; the entry is uploaded after the next start
+            return;
+        } catch (XmlRpcException e) {
+            // A fault from the service, which would answer the same way again
+            finish(entry, null, e);
+            return;
+        } catch (IllegalArgumentException e) {
+            finish(entry, null, e);
+            return;
+        } catch (Exception e) {
+            // The entry stays unacknowledged, so it is also retried after a restart
+            entry.attempts++;
+            schedule(entry, getRetryDelay(entry.attempts));
+            return;
+        }
+
+        finish(entry, entryID, null);
+    }
+
+    /**
+     * @param attempts Number of failed attempts
+     * @return Milliseconds to wait before the next attempt
+     */
+    private static long getRetryDelay(int attempts) {
+        long delay = RETRY_DELAY;
+        for (int i = 1; i < attempts && delay < MAXIMUM_RETRY_DELAY; i++) {
+            delay *= 2;
+        }
+
+        return Math.min(delay, MAXIMUM_RETRY_DELAY);
+    }
+
+    private void finish(SpooledEntry entry, String entryID, Exception exception) {
+        try {
+            acknowledge(entry);
+        } catch (IOException e) {
+            // Not recorded as finished, so the entry is uploaded again after the next start
+            return;
+        }
+
+        Object[] listeners = spoolListeners.toArray();
+        for (int i = 0; i < listeners.length; i++) {
+            SpoolListener spoolListener = (SpoolListener) listeners[i];
+            if (exception == null) {
+                spoolListener.entryUploaded(entry.sequence, entry.entryUpdate, entryID);
+            } else {
+                spoolListener.entryFailed(entry.sequence, entry.entryUpdate, exception);
+            }
+        }
+    }
+
+    /**
+     * Record an entry as finished. Its media is deleted once the acknowledgement has been synced, since until then
+     * the entry may be recovered and uploaded again.
+     */
+    private synchronized void acknowledge(SpooledEntry entry) throws IOException {
+        acknowledgementLog.writeLong(entry.sequence);
+        acknowledgementsUnsynced = true;
+        acknowledgedMedia.add(entry.entryUpdate.getImageData());
+        notifyAll();
+
+        pendingCount--;
+        ((int[]) remainingEntries.get(Integer.valueOf(entry.segmentNumber)))[0]--;
+        deleteFinishedSegments();
+    }
+
+    private static void deleteMedia(List media) {
+        for (int i = 0; i < media.size(); i++) {
+            ((File) media.get(i)).delete();
+        }
+    }
+
+    /**
+     * Delete segments, other than the one being written, whose entries have all finished. Called with the lock held.
+     */
+    private void deleteFinishedSegments() {
+        Iterator iterator = remainingEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            java.util.Map.Entry remaining = (java.util.Map.Entry) iterator.next();
+            int number = ((Integer) remaining.getKey()).intValue();
+            if (number != segmentNumber && ((int[]) remaining.getValue())[0] == 0 && getSegmentFile(number).delete()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Start a new segment. The old segment is synced and closed by the sync thread. Called with the lock held.
+     */
+    private void rollSegment() throws IOException {
+        unsyncedFiles.add(segment);
+        segmentNumber++;
+        segmentEntries = 0;
+        segment = openSegment(segmentNumber);
+        remainingEntries.put(Integer.valueOf(segmentNumber), new int[]{0});
+    }
+
+    /**
+     * Check that entries may be written. Called with the lock held.
+     */
+    private void checkWritable() throws IOException {
+        if (!started) {
+            throw new IllegalStateException("Upload spool has not been started");
+        }
+        if (closed) {
+            throw new IOException("Upload spool has been shut down");
+        }
+        checkSynced();
+    }
+
+    private void checkSynced() throws IOException {
+        if (syncFailure != null) {
+            IOException exception = new IOException("Unable to sync upload spool");
+            exception.initCause(syncFailure);
+            throw exception;
+        }
+    }
+
+    private RandomAccessFile openSegment(int number) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(getSegmentFile(number), "rw");
+        file.seek(file.length());
+
+        return file;
+    }
+
+    private File getSegmentFile(int number) {
+        return new File(directory, SEGMENT_PREFIX + number + SEGMENT_SUFFIX);
+    }
+
+    private static int getSegmentNumber(File segmentFile) {
+        String name = segmentFile.getName();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private File[] listSegments() {
+        File[] files = directory.listFiles();
+        List segments = new ArrayList();
+        for (int i = 0; i < files.length; i++) {
+            String name = files[i].getName();
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    getSegmentNumber(files[i]);
+                    segments.add(files[i]);
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+
+        File[] segmentFiles = (File[]) segments.toArray(new File[segments.size()]);
+        Arrays.sort(segmentFiles, new java.util.Comparator() {
+            public int compare(Object first, Object second) {
+                int firstNumber = getSegmentNumber((File) first);
+                int secondNumber = getSegmentNumber((File) second);
+                return firstNumber < secondNumber ? -1 : (firstNumber == secondNumber ? 0 : 1);
+            }
+        });
+
+        return segmentFiles;
+    }
+
+    /**
+     * Read the entries in a segment, stopping at the first record that is incomplete, has a length out of range,
+     * fails its checksum or cannot be decoded. Such a record can only be the torn tail written when the process
+     * died, and the segment is truncated there.
+     */
+    private List readSegment(File segmentFile, int number) throws IOException {
+        List entries = new ArrayList();
+        long length = segmentFile.length();
+        long valid = 0;
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentFile)));
+        try {
+            while (valid + RECORD_HEADER_SIZE <= length) {
+                int payloadLength = input.readInt();
+                if (payloadLength < MINIMUM_PAYLOAD_SIZE || payloadLength > length - valid - RECORD_HEADER_SIZE) {
+                    break;
+                }
+
+                long checksum = input.readLong();
+                byte[] payload = new byte[payloadLength];
+                input.readFully(payload);
+
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if (crc.getValue() != checksum) {
+                    break;
+                }
+
+                try {
+                    entries.add(decode(payload, number));
+                } catch (IOException e) {
+                    break;
+                }
+                valid += RECORD_HEADER_SIZE + payloadLength;
+            }
+        } finally {
+            input.close();
+        }
+
+        if (valid < length) {
+            RandomAccessFile file = new RandomAccessFile(segmentFile, "rw");
+            try {
+                file.setLength(valid);
+                file.getFD().sync();
+            } finally {
+                file.close();
+            }
+        }
+
+        return entries;
+    }
+
+    private static byte[] encode(long sequence, EntryUpdate entryUpdate) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(bytes);
+        payload.writeLong(sequence);
+        payload.writeInt(entryUpdate.getMoblogID());
+        payload.writeInt(entryUpdate.getEntryID());
+        writeString(payload, entryUpdate.getTitle());
+        writeString(payload, entryUpdate.getText());
+        payload.writeInt(entryUpdate.getCategoryID());
+        writeString(payload, entryUpdate.getImageData().getName());
+        writeString(payload, entryUpdate.getFileType());
+        payload.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + bytes.size());
+        record.putInt(bytes.size());
+        record.putLong(crc.getValue());
+        record.put(bytes.toByteArray());
+
+        return record.array();
+    }
+
+    private SpooledEntry decode(byte[] payload, int number) throws IOException {
+        DataInputStream input = new DataInputStream(new java.io.ByteArrayInputStream(payload));
+        long sequence = input.readLong();
+        int moblogID = input.readInt();
+        int entryID = input.readInt();
+        String title = readString(input);
+        String text = readString(input);
+        int categoryID = input.readInt();
+        File media = new File(mediaDirectory, readString(input));
+        String fileType = readString(input);
+
+        return new SpooledEntry(sequence, number, new EntryUpdate(moblogID, entryID, title, text, categoryID, media, fileType));
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0 || length > input.available()) {
+            throw new EOFException("String length out of range: " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Copy media into the spool, leaving the copy open so the sync thread can sync it with the next group
+     */
+    private static RandomAccessFile copy(File source, File destination) throws IOException {
+        FileInputStream input = new FileInputStream(source);
+        RandomAccessFile output = new RandomAccessFile(destination, "rw");
+        try {
+            output.setLength(0);
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            output.close();
+            destination.delete();
+            throw e;
+        } finally {
+            input.close();
+        }
+
+        return output;
+    }
+
+    private Set readAcknowledgements() throws IOException {
+        Set acknowledged = new HashSet();
+        File log = new File(directory, ACKNOWLEDGEMENT_LOG);
+        if (!log.exists()) {
+            return acknowledged;
+        }
+
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(log)));
+        try {
+            while (true) {
+                acknowledged.add(Long.valueOf(input.readLong()));
+            }
+        } catch (EOFException e) {
+            // End of the log, possibly part way through a sequence number written when the process died
+        } finally {
+            input.close();
+        }
+
+        return acknowledged;
+    }
+
+    /**
+     * Replace the acknowledgement log with the sequence numbers still needed, those in segments not yet deleted,
+     * and open it for appending
+     */
+    private void rewriteAcknowledgements(Set retained) throws IOException {
+        File log = new File(directory, ACKNOWLEDGEMENT_LOG);
+        File temporary = new File(directory, ACKNOWLEDGEMENT_LOG + ".tmp");
+        RandomAccessFile file = new RandomAccessFile(temporary, "rw");
+        try {
+            file.setLength(0);
+            ByteBuffer buffer = ByteBuffer.allocate(8 * retained.size());
+            Iterator iterator = retained.iterator();
+            while (iterator.hasNext()) {
+                buffer.putLong(((Long) iterator.next()).longValue());
+            }
+            file.write(buffer.array());
+            file.getFD().sync();
+        } finally {
+            file.close();
+        }
+
+        if (!temporary.renameTo(log)) {
+            log.delete();
+            if (!temporary.renameTo(log)) {
+                throw new IOException("Unable to replace acknowledgement log: " + log);
+            }
+        }
+
+        acknowledgementLog = new RandomAccessFile(log, "rw");
+        acknowledgementLog.seek(acknowledgementLog.length());
+    }
+
+    /**
+     * Delete media copied into the spool for entries that were never written to a segment
+     */
+    private void deleteOrphanedMedia(List recovered) {
+        Set needed = new HashSet();
+        for (int i = 0; i < recovered.size(); i++) {
+            needed.add(((SpooledEntry) recovered.get(i)).entryUpdate.getImageData().getName());
+        }
+
+        File[] files = mediaDirectory.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            if (!needed.contains(files[i].getName())) {
+                files[i].delete();
+            }
+        }
+    }
+
+    private static ThreadFactory createThreadFactory(final String name) {
+        return new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Entry read from or written to a segment
+     */
+    private static class SpooledEntry {
+
+        final long sequence;
+        final int segmentNumber;
+        final EntryUpdate entryUpdate;
+        int attempts;
+
+        SpooledEntry(long sequence, int segmentNumber, EntryUpdate entryUpdate) {
+            this.sequence = sequence;
+            this.segmentNumber = segmentNumber;
+            this.entryUpdate = entryUpdate;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput counters for the request bodies sent by a transport.
+ * <p/>
+ * Three rates are kept. The upload rate is bytes sent over the total time spent sending request bodies, including
+ * encoding and throttling. The encode rate is bytes of file data encoded over the time spent Base64 encoding. The
+ * send rate is bytes sent over the time spent writing to the network. Rates are averages per request body, so
+ * concurrent uploads do not inflate them. Only completed request bodies are counted in the upload and send
+ * rates. Counters are updated without locking and may be read at any time.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class UploadStatistics {
+
+    private final AtomicLong uploads = new AtomicLong();
+    private final AtomicLong uploadNanos = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong sendNanos = new AtomicLong();
+    private final AtomicLong bytesEncoded = new AtomicLong();
+    private final AtomicLong encodeNanos = new AtomicLong();
+
+    void recordUpload(long bytes, long sendNanos, long nanos) {
+        uploads.incrementAndGet();
+        uploadNanos.addAndGet(nanos);
+        bytesSent.addAndGet(bytes);
+        this.sendNanos.addAndGet(sendNanos);
+    }
+
+    void recordEncode(long bytes, long nanos) {
+        bytesEncoded.addAndGet(bytes);
+        encodeNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @return Number of request bodies sent completely
+     */
+    public long getUploads() {
+        return uploads.get();
+    }
+
+    /**
+     * @return Number of bytes sent in completed request bodies
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * @return Number of file bytes Base64 encoded
+     */
+    public long getBytesEncoded() {
+        return bytesEncoded.get();
+    }
+
+    /**
+     * @return Bytes sent per second of time spent sending request bodies
+     */
+    public double getUploadBytesPerSecond() {
+        return rate(bytesSent.get(), uploadNanos.get());
+    }
+
+    /**
+     * @return File bytes encoded per second of time spent encoding
+     */
+    public double getEncodeBytesPerSecond() {
+        return rate(bytesEncoded.get(), encodeNanos.get());
+    }
+
+    /**
+     * @return Bytes sent per second of time spent writing to the network
+     */
+    public double getSendBytesPerSecond() {
+        return rate(bytesSent.get(), sendNanos.get());
+    }
+
+    private static double rate(long bytes, long nanos) {
+        return (nanos == 0) ? 0 : bytes * 1e9 / nanos;
+    }
+}
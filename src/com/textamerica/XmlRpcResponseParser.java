@@ -0,0 +1,518 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import org.apache.xmlrpc.Base64;
+import org.apache.xmlrpc.XmlRpcException;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Hashtable;
+import java.util.Stack;
+import java.util.Vector;
+
+/**
+ * Parses XML-RPC method responses into the same objects as {@link org.apache.xmlrpc.XmlRpcClient}: structs
+ * become Hashtables, arrays become Vectors and faults are thrown as {@link XmlRpcException}s.
+ * <p/>
+ * Most calls return a single string or integer, such as an ID or "OK". Those responses are matched directly against
+ * the bytes of the response, read into a per-thread buffer, without running the XML parser; "OK" is returned as a
+ * shared constant and integers are returned from the Integer cache where possible. Anything else, including faults,
+ * structs, arrays, entities and non-ASCII text, goes through a per-thread SAX parser.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+class XmlRpcResponseParser extends DefaultHandler {
+
+    private static final String DATE_FORMAT = "yyyyMMdd'T'HH:mm:ss";
+    private static final String FAULT_CODE = "faultCode";
+    private static final String FAULT_STRING = "faultString";
+
+    private static final int SCALAR_BUFFER_SIZE = 2048;
+
+    private static final byte[] XML_DECLARATION_START = toBytes("<?xml");
+    private static final byte[] XML_DECLARATION_END = toBytes("?>");
+    private static final byte[] METHOD_RESPONSE_START = toBytes("<methodResponse>");
+    private static final byte[] PARAMS_START = toBytes("<params>");
+    private static final byte[] PARAM_START = toBytes("<param>");
+    private static final byte[] VALUE_START = toBytes("<value>");
+    private static final byte[] STRING_START = toBytes("<string>");
+    private static final byte[] STRING_END = toBytes("</string>");
+    private static final byte[] I4_START = toBytes("<i4>");
+    private static final byte[] I4_END = toBytes("</i4>");
+    private static final byte[] INT_START = toBytes("<int>");
+    private static final byte[] INT_END = toBytes("</int>");
+    private static final byte[] VALUE_END = toBytes("</value>");
+    private static final byte[] PARAM_END = toBytes("</param>");
+    private static final byte[] PARAMS_END = toBytes("</params>");
+    private static final byte[] METHOD_RESPONSE_END = toBytes("</methodResponse>");
+    private static final byte[] OK_BYTES = toBytes(TextAmerica4J.OK);
+
+    private static final SAXParserFactory PARSER_FACTORY = createParserFactory();
+
+    private static final ThreadLocal BUFFERS = new ThreadLocal() {
+        protected Object initialValue() {
+            return new byte[SCALAR_BUFFER_SIZE];
+        }
+    };
+
+    private static final ThreadLocal PARSERS = new ThreadLocal();
+
+    private final Stack values = new Stack();
+    private final StringBuffer cdata = new StringBuffer(128);
+
+    private boolean fault;
+    private boolean parsed;
+    private Object result;
+
+    private XmlRpcResponseParser() {
+    }
+
+    private static SAXParserFactory createParserFactory() {
+        SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+        parserFactory.setNamespaceAware(false);
+        parserFactory.setValidating(false);
+
+        try {
+            parserFactory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        } catch (Exception e) {
+            // Parser does not support the feature; responses are still parsed without DTD processing disabled
+        }
+
+        return parserFactory;
+    }
+
+    /**
+     * Parse a method response
+     *
+     * @param is Input stream with the response
+     * @return Result of the call
+     * @throws XmlRpcException If the response is a fault
+     * @throws IOException     If there is an error reading or parsing the response
+     */
+    static Object parse(InputStream is) throws XmlRpcException, IOException {
+        byte[] buffer = (byte[]) BUFFERS.get();
+        int length = 0;
+        int bytesRead;
+        while (length < buffer.length && -1 != (bytesRead = is.read(buffer, length, buffer.length - length))) {
+            length += bytesRead;
+        }
+
+        if (length < buffer.length) {
+            return parse(buffer, length);
+        }
+
+        return parseDocument(new SequenceInputStream(new ByteArrayInputStream(buffer, 0, length), is));
+    }
+
+    /**
+     * Parse a method response
+     *
+     * @param response Response bytes
+     * @param length   Number of bytes in the response
+     * @return Result of the call
+     * @throws XmlRpcException If the response is a fault
+     * @throws IOException     If there is an error parsing the response
+     */
+    static Object parse(byte[] response, int length) throws XmlRpcException, IOException {
+        Object scalar = parseScalar(response, length);
+        if (scalar != null) {
+            return scalar;
+        }
+
+        return parseDocument(new ByteArrayInputStream(response, 0, length));
+    }
+
+    /**
+     * Load and initialize the classes used to decode responses, and create the calling thread's parser, by
+     * parsing a scalar response and a response with each kind of value
+     *
+     * @throws IOException If the responses cannot be parsed
+     */
+    static void warmUp() throws IOException {
+        byte[] scalarResponse = ("<?xml version=\"1.0\"?><methodResponse><params><param><value>" + TextAmerica4J.OK
+                + "</value></param></params></methodResponse>").getBytes("US-ASCII");
+        byte[] structResponse = ("<?xml version=\"1.0\"?><methodResponse><params><param><value><struct>"
+                + "<member><name>string</name><value><string>a &amp; b</string></value></member>"
+                + "<member><name>array</name><value><array><data><value><i4>1</i4></value>"
+                + "<value><boolean>1</boolean></value><value><double>1.5</double></value>"
+                + "<value><dateTime.iso8601>19700101T00:00:00</dateTime.iso8601></value>"
+                + "<value><base64>AQID</base64></value></data></array></value></member>"
+                + "</struct></value></param></params></methodResponse>").getBytes("US-ASCII");
+
+        try {
+            parse(scalarResponse, scalarResponse.length);
+            parse(structResponse, structResponse.length);
+        } catch (XmlRpcException e) {
+            IOException ioException = new IOException("Unable to parse warm-up response: " + e.getMessage());
+            ioException.initCause(e);
+            throw ioException;
+        }
+    }
+
+    private static Object parseDocument(InputStream is) throws XmlRpcException, IOException {
+        XmlRpcResponseParser handler = new XmlRpcResponseParser();
+        SAXParser parser = getParser();
+
+        try {
+            parser.parse(is, handler);
+        } catch (SAXException e) {
+            IOException ioException = new IOException("Unable to parse XML-RPC response: " + e.getMessage());
+            ioException.initCause(e);
+            throw ioException;
+        } finally {
+            parser.reset();
+        }
+
+        if (!handler.parsed) {
+            throw new IOException("XML-RPC response contains no value");
+        }
+
+        if (handler.fault) {
+            throw toException(handler.result);
+        }
+
+        return handler.result;
+    }
+
+    private static SAXParser getParser() throws IOException {
+        SAXParser parser = (SAXParser) PARSERS.get();
+
+        if (parser == null) {
+            try {
+                parser = PARSER_FACTORY.newSAXParser();
+            } catch (ParserConfigurationException e) {
+                IOException ioException = new IOException("Unable to create XML parser: " + e.getMessage());
+                ioException.initCause(e);
+                throw ioException;
+            } catch (SAXException e) {
+                IOException ioException = new IOException("Unable to create XML parser: " + e.getMessage());
+                ioException.initCause(e);
+                throw ioException;
+            }
+            PARSERS.set(parser);
+        }
+
+        return parser;
+    }
+
+    /**
+     * Match a response holding a single untyped, string or integer value of plain ASCII text
+     *
+     * @param response Response bytes
+     * @param length   Number of bytes in the response
+     * @return Value of the response, or <code>null</code> if the response needs the XML parser
+     * @throws IOException If the value cannot be decoded
+     */
+    private static Object parseScalar(byte[] response, int length) throws IOException {
+        int position = skipWhitespace(response, 0, length);
+        if (matches(response, position, length, XML_DECLARATION_START)) {
+            position = indexOf(response, position, length, XML_DECLARATION_END);
+            if (position < 0) {
+                return null;
+            }
+            position += XML_DECLARATION_END.length;
+        }
+
+        position = expect(response, position, length, METHOD_RESPONSE_START);
+        position = expect(response, position, length, PARAMS_START);
+        position = expect(response, position, length, PARAM_START);
+        position = expect(response, position, length, VALUE_START);
+        if (position < 0) {
+            return null;
+        }
+
+        byte[] typeEnd = null;
+        if (matches(response, position, length, STRING_START)) {
+            position += STRING_START.length;
+            typeEnd = STRING_END;
+        } else if (matches(response, position, length, I4_START)) {
+            position += I4_START.length;
+            typeEnd = I4_END;
+        } else if (matches(response, position, length, INT_START)) {
+            position += INT_START.length;
+            typeEnd = INT_END;
+        }
+
+        int textStart = position;
+        while (position < length && response[position] != '<') {
+            if (response[position] < 0 || response[position] == '&') {
+                return null;
+            }
+            position++;
+        }
+        int textEnd = position;
+
+        if (typeEnd != null) {
+            if (!matches(response, position, length, typeEnd)) {
+                return null;
+            }
+            position += typeEnd.length;
+        }
+
+        if (!matches(response, position, length, VALUE_END)) {
+            return null;
+        }
+        position += VALUE_END.length;
+        position = expect(response, position, length, PARAM_END);
+        position = expect(response, position, length, PARAMS_END);
+        position = expect(response, position, length, METHOD_RESPONSE_END);
+        if (position < 0 || skipWhitespace(response, position, length) != length) {
+            return null;
+        }
+
+        if (typeEnd == STRING_END || typeEnd == null) {
+            if (textEnd - textStart == OK_BYTES.length && matches(response, textStart, textEnd, OK_BYTES)) {
+                return TextAmerica4J.OK;
+            }
+
+            return new String(response, textStart, textEnd - textStart, "US-ASCII");
+        }
+
+        return parseInteger(response, textStart, textEnd);
+    }
+
+    private static Integer parseInteger(byte[] response, int start, int end) {
+        start = skipWhitespace(response, start, end);
+        while (end > start && isWhitespace(response[end - 1])) {
+            end--;
+        }
+
+        boolean negative = false;
+        if (start < end && (response[start] == '-' || response[start] == '+')) {
+            negative = response[start] == '-';
+            start++;
+        }
+
+        if (start == end || end - start > 10) {
+            return null;
+        }
+
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = response[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return null;
+            }
+            value = value * 10 + digit;
+        }
+
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            return null;
+        }
+
+        return Integer.valueOf((int) value);
+    }
+
+    private static int expect(byte[] response, int position, int length, byte[] token) {
+        if (position < 0) {
+            return position;
+        }
+
+        position = skipWhitespace(response, position, length);
+
+        return matches(response, position, length, token) ? position + token.length : -1;
+    }
+
+    private static boolean matches(byte[] response, int position, int length, byte[] token) {
+        if (position + token.length > length) {
+            return false;
+        }
+
+        for (int i = 0; i < token.length; i++) {
+            if (response[position + i] != token[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int indexOf(byte[] response, int position, int length, byte[] token) {
+        for (int i = position; i + token.length <= length; i++) {
+            if (matches(response, i, length, token)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static int skipWhitespace(byte[] response, int position, int length) {
+        while (position < length && isWhitespace(response[position])) {
+            position++;
+        }
+
+        return position;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private static byte[] toBytes(String token) {
+        byte[] bytes = new byte[token.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) token.charAt(i);
+        }
+
+        return bytes;
+    }
+
+    private static XmlRpcException toException(Object faultValue) {
+        if (faultValue instanceof Hashtable) {
+            Hashtable faultStruct = (Hashtable) faultValue;
+            Object faultCode = faultStruct.get(FAULT_CODE);
+            Object faultString = faultStruct.get(FAULT_STRING);
+            int code = (faultCode instanceof Integer) ? ((Integer) faultCode).intValue() : 0;
+
+            return new XmlRpcException(code, (faultString == null) ? "" : faultString.toString());
+        }
+
+        return new XmlRpcException(0, "Invalid fault response");
+    }
+
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        if ("value".equals(qName)) {
+            values.push(new Value());
+        } else if ("struct".equals(qName)) {
+            currentValue().container = new Hashtable();
+        } else if ("array".equals(qName)) {
+            currentValue().container = new Vector();
+        } else if ("fault".equals(qName)) {
+            fault = true;
+        }
+
+        cdata.setLength(0);
+    }
+
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        if ("value".equals(qName)) {
+            Value value = (Value) values.pop();
+            Object object;
+            if (value.container != null) {
+                object = value.container;
+            } else if (value.typed) {
+                object = value.scalar;
+            } else {
+                object = cdata.toString();
+            }
+
+            if (values.isEmpty()) {
+                result = object;
+                parsed = true;
+            } else {
+                Value parent = currentValue();
+                if (parent.container instanceof Hashtable) {
+                    if (parent.memberName != null) {
+                        ((Hashtable) parent.container).put(parent.memberName, object);
+                    }
+                } else if (parent.container instanceof Vector) {
+                    ((Vector) parent.container).add(object);
+                }
+            }
+        } else if ("name".equals(qName)) {
+            if (!values.isEmpty()) {
+                currentValue().memberName = cdata.toString();
+            }
+        } else if (!values.isEmpty() && currentValue().container == null) {
+            Object scalar = toScalar(qName, cdata.toString());
+            if (scalar != null) {
+                Value value = currentValue();
+                value.scalar = scalar;
+                value.typed = true;
+            }
+        }
+
+        cdata.setLength(0);
+    }
+
+    public void characters(char[] ch, int start, int length) {
+        cdata.append(ch, start, length);
+    }
+
+    private Value currentValue() {
+        return (Value) values.peek();
+    }
+
+    private static Object toScalar(String type, String text) throws SAXException {
+        try {
+            if ("string".equals(type)) {
+                return text;
+            } else if ("i4".equals(type) || "int".equals(type)) {
+                return Integer.valueOf(text.trim());
+            } else if ("boolean".equals(type)) {
+                return "1".equals(text.trim()) ? Boolean.TRUE : Boolean.FALSE;
+            } else if ("double".equals(type)) {
+                return Double.valueOf(text.trim());
+            } else if ("dateTime.iso8601".equals(type)) {
+                return new SimpleDateFormat(DATE_FORMAT).parse(text.trim());
+            } else if ("base64".equals(type)) {
+                return Base64.decode(text.getBytes("US-ASCII"));
+            }
+        } catch (NumberFormatException e) {
+            throw new SAXException("Invalid " + type + " value: " + text);
+        } catch (ParseException e) {
+            throw new SAXException("Invalid " + type + " value: " + text);
+        } catch (IOException e) {
+            throw new SAXException(e.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Value being parsed, either a scalar or a struct or array whose members are still being parsed
+     */
+    private static class Value {
+
+        Object container;
+        Object scalar;
+        boolean typed;
+        String memberName;
+    }
+}
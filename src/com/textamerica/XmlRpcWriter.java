@@ -0,0 +1,278 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import org.apache.xmlrpc.XmlRpcException;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Writes XML-RPC method calls in the same form as {@link org.apache.xmlrpc.XmlRpcClient}, with the addition of
+ * {@link FileParameter}s. A call is written as segments, byte arrays separated by its files, so that its length is
+ * known before it is sent and its files are only read and encoded while it is being sent.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+class XmlRpcWriter {
+
+    private static final String PROLOG = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+    private static final String UTF8 = "UTF-8";
+    private static final String DATE_FORMAT = "yyyyMMdd'T'HH:mm:ss";
+
+    private final SegmentOutputStream out;
+    private final Writer writer;
+
+    private XmlRpcWriter(SegmentOutputStream out) throws IOException {
+        this.out = out;
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, UTF8), 8192);
+    }
+
+    /**
+     * Split a method call into segments: byte arrays holding the encoded call, separated by the
+     * {@link FileParameter}s that are to be written between them. No file is read.
+     *
+     * @param methodName XML-RPC method name
+     * @param parameters Parameters of the call
+     * @return Vector of byte arrays and {@link FileParameter}s, in the order they are to be written
+     * @throws IOException     If there is an error writing the call
+     * @throws XmlRpcException If a parameter is of an unsupported type
+     */
+    static Vector toSegments(String methodName, Vector parameters) throws IOException, XmlRpcException {
+        SegmentOutputStream segmentOutputStream = new SegmentOutputStream();
+        new XmlRpcWriter(segmentOutputStream).writeRequest(methodName, parameters);
+        segmentOutputStream.endSegment();
+
+        return segmentOutputStream.segments;
+    }
+
+    /**
+     * Load and initialize the classes used to encode method calls, by encoding a call with each kind of value
+     *
+     * @throws IOException If the call cannot be encoded
+     */
+    static void warmUp() throws IOException {
+        Hashtable struct = new Hashtable();
+        struct.put("string", "warm-up & <check>");
+        struct.put("date", new Date(0));
+        Vector array = new Vector();
+        array.add(Integer.valueOf(1));
+        array.add(Boolean.TRUE);
+        array.add(Double.valueOf(1.5));
+        array.add(new byte[]{1, 2, 3});
+        struct.put("array", array);
+
+        Vector parameters = new Vector();
+        parameters.add(struct);
+
+        try {
+            getLength(toSegments("warmUp", parameters));
+        } catch (XmlRpcException e) {
+            IOException ioException = new IOException("Unable to encode warm-up call: " + e.getMessage());
+            ioException.initCause(e);
+            throw ioException;
+        }
+    }
+
+    /**
+     * @param segments Segments of a method call as returned by {@link #toSegments(String, Vector)}
+     * @return Length of the method call in bytes
+     */
+    static long getLength(Vector segments) {
+        long length = 0;
+
+        for (int i = 0; i < segments.size(); i++) {
+            Object segment = segments.get(i);
+            if (segment instanceof FileParameter) {
+                length += ((FileParameter) segment).getEncodedLength();
+            } else {
+                length += ((byte[]) segment).length;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Write the segments of a method call, reading and encoding its files
+     *
+     * @param out              Output stream
+     * @param segments         Segments of a method call as returned by {@link #toSegments(String, Vector)}
+     * @param uploadStatistics Statistics updated with the time spent encoding files
+     * @throws IOException If there is an error reading a file or writing the output
+     */
+    static void write(OutputStream out, Vector segments, UploadStatistics uploadStatistics) throws IOException {
+        for (int i = 0; i < segments.size(); i++) {
+            Object segment = segments.get(i);
+            if (segment instanceof FileParameter) {
+                ((FileParameter) segment).writeTo(out, uploadStatistics);
+            } else {
+                out.write((byte[]) segment);
+            }
+        }
+    }
+
+    private void writeRequest(String methodName, Vector parameters) throws IOException, XmlRpcException {
+        writer.write(PROLOG);
+        writer.write("<methodCall><methodName>");
+        chardata(methodName);
+        writer.write("</methodName><params>");
+
+        for (int i = 0; i < parameters.size(); i++) {
+            writer.write("<param>");
+            writeObject(parameters.get(i));
+            writer.write("</param>");
+        }
+
+        writer.write("</params></methodCall>");
+        writer.flush();
+    }
+
+    private void writeObject(Object object) throws IOException, XmlRpcException {
+        writer.write("<value>");
+
+        if (object == null) {
+            throw new XmlRpcException(0, "null values not supported by XML-RPC");
+        } else if (object instanceof String) {
+            chardata((String) object);
+        } else if (object instanceof Integer) {
+            element("int", object.toString());
+        } else if (object instanceof Boolean) {
+            element("boolean", ((Boolean) object).booleanValue() ? "1" : "0");
+        } else if (object instanceof Double || object instanceof Float) {
+            element("double", object.toString());
+        } else if (object instanceof Date) {
+            element("dateTime.iso8601", new SimpleDateFormat(DATE_FORMAT).format((Date) object));
+        } else if (object instanceof byte[]) {
+            element("base64", new String(FileParameter.encode((byte[]) object), UTF8));
+        } else if (object instanceof FileParameter) {
+            writer.flush();
+            out.endSegment();
+            out.segments.add(object);
+        } else if (object instanceof Hashtable) {
+            writer.write("<struct>");
+            Hashtable struct = (Hashtable) object;
+            Enumeration keys = struct.keys();
+            while (keys.hasMoreElements()) {
+                Object key = keys.nextElement();
+                writer.write("<member><name>");
+                chardata(key.toString());
+                writer.write("</name>");
+                writeObject(struct.get(key));
+                writer.write("</member>");
+            }
+            writer.write("</struct>");
+        } else if (object instanceof Vector) {
+            writer.write("<array><data>");
+            Vector array = (Vector) object;
+            for (int i = 0; i < array.size(); i++) {
+                writeObject(array.get(i));
+            }
+            writer.write("</data></array>");
+        } else {
+            throw new XmlRpcException(0, "unsupported Java type: " + object.getClass());
+        }
+
+        writer.write("</value>");
+    }
+
+    private void element(String name, String value) throws IOException {
+        writer.write('<');
+        writer.write(name);
+        writer.write('>');
+        writer.write(value);
+        writer.write("</");
+        writer.write(name);
+        writer.write('>');
+    }
+
+    /**
+     * Write escaped character data. Control characters other than tab, newline and carriage return cannot appear
+     * in XML 1.0, so they are rejected as {@link org.apache.xmlrpc.XmlWriter} does rather than sent to the service.
+     */
+    private void chardata(String text) throws IOException, XmlRpcException {
+        int length = text.length();
+
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    writer.write("&lt;");
+                    break;
+                case '>':
+                    writer.write("&gt;");
+                    break;
+                case '&':
+                    writer.write("&amp;");
+                    break;
+                case '\t':
+                case '\n':
+                case '\r':
+                    writer.write(c);
+                    break;
+                default:
+                    if (c < 0x20) {
+                        throw new XmlRpcException(0, "Invalid character data corresponding to XML entity &#" + (int) c + ";");
+                    }
+                    writer.write(c);
+            }
+        }
+    }
+
+    /**
+     * Output stream that collects what is written to it as a series of byte array segments
+     */
+    private static class SegmentOutputStream extends ByteArrayOutputStream {
+
+        final Vector segments = new Vector();
+
+        void endSegment() {
+            if (size() > 0) {
+                segments.add(toByteArray());
+                reset();
+            }
+        }
+    }
+}
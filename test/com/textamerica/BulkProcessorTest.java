@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.Vector;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+/**
+ * Tests of {@link BulkProcessor}
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class BulkProcessorTest extends TestCase {
+
+    private static final Executor CALLER_RUNS = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private Vector calls;
+
+    private TextAmerica4J favoritesService(final String failingURL) {
+        calls = new Vector();
+        XmlRpcTransport transport = new XmlRpcTransport() {
+            public Object execute(String methodName, Vector parameters, CallOptions options) throws Exception {
+                String moblogURL = (String) parameters.get(4);
+                calls.add(moblogURL);
+                if (moblogURL.equals(failingURL)) {
+                    throw new IOException("Connection reset");
+                }
+
+                return "Added " + moblogURL;
+            }
+
+            public Object execute(String methodName, Vector parameters) throws Exception {
+                return execute(methodName, parameters, CallOptions.DEFAULT);
+            }
+        };
+
+        return new TextAmerica4J("key", "login", "password", transport);
+    }
+
+    public void testUpstreamIsPulledOneItemAtATime() {
+        BulkProcessor processor = BulkProcessor.favoritesAddMoblog(favoritesService(null), 1, CALLER_RUNS);
+        RecordingSubscriber downstream = new RecordingSubscriber();
+        processor.subscribe(downstream);
+        RecordingSubscription upstream = new RecordingSubscription();
+
+        processor.onSubscribe(upstream);
+        assertEquals(1, upstream.requested);
+
+        processor.onNext("http://one.textamerica.com");
+        assertEquals(2, upstream.requested);
+        processor.onNext("http://two.textamerica.com");
+        assertEquals(3, upstream.requested);
+        processor.onComplete();
+
+        assertEquals(2, downstream.items.size());
+        assertEquals("Added http://one.textamerica.com", downstream.items.get(0));
+        assertEquals("Added http://two.textamerica.com", downstream.items.get(1));
+        assertTrue(downstream.completed);
+        assertFalse(upstream.cancelled);
+    }
+
+    public void testSecondSubscriptionIsCancelled() {
+        BulkProcessor processor = BulkProcessor.favoritesAddMoblog(favoritesService(null), 1, CALLER_RUNS);
+        RecordingSubscription first = new RecordingSubscription();
+        RecordingSubscription second = new RecordingSubscription();
+
+        processor.onSubscribe(first);
+        processor.onSubscribe(second);
+
+        assertEquals(1, first.requested);
+        assertFalse(first.cancelled);
+        assertEquals(0, second.requested);
+        assertTrue(second.cancelled);
+    }
+
+    public void testFailedCallCancelsUpstreamAndIgnoresLaterItems() {
+        BulkProcessor processor = BulkProcessor.favoritesAddMoblog(favoritesService("http://bad.textamerica.com"), 1,
+                CALLER_RUNS);
+        RecordingSubscriber downstream = new RecordingSubscriber();
+        processor.subscribe(downstream);
+        RecordingSubscription upstream = new RecordingSubscription();
+        processor.onSubscribe(upstream);
+
+        processor.onNext("http://one.textamerica.com");
+        processor.onNext("http://bad.textamerica.com");
+        assertTrue(upstream.cancelled);
+        assertEquals(2, upstream.requested);
+        assertTrue(downstream.error instanceof IOException);
+
+        processor.onNext("http://late.textamerica.com");
+        processor.onComplete();
+
+        assertEquals(2, calls.size());
+        assertEquals(1, downstream.items.size());
+        assertFalse(downstream.completed);
+    }
+
+    public void testItemsAfterCloseAreIgnored() {
+        BulkProcessor processor = BulkProcessor.favoritesAddMoblog(favoritesService(null), 1, CALLER_RUNS);
+        RecordingSubscription upstream = new RecordingSubscription();
+        processor.onSubscribe(upstream);
+
+        processor.close();
+        processor.onNext("http://late.textamerica.com");
+
+        assertEquals(0, calls.size());
+        assertTrue(upstream.cancelled);
+        assertEquals(1, upstream.requested);
+    }
+
+    public void testUpstreamErrorIsPassedDownstream() {
+        BulkProcessor processor = BulkProcessor.favoritesAddMoblog(favoritesService(null), 1, CALLER_RUNS);
+        RecordingSubscriber downstream = new RecordingSubscriber();
+        processor.subscribe(downstream);
+        processor.onSubscribe(new RecordingSubscription());
+
+        IllegalStateException failure = new IllegalStateException("Source failed");
+        processor.onError(failure);
+
+        assertSame(failure, downstream.error);
+        assertFalse(downstream.completed);
+    }
+
+    public void testExecutorIsRequired() {
+        try {
+            BulkProcessor.favoritesAddMoblog(favoritesService(null), 1, null);
+            fail("Expected NullPointerException");
+        } catch (NullPointerException e) {
+            // expected
+        }
+    }
+
+    private static class RecordingSubscription implements Flow.Subscription {
+
+        long requested;
+        boolean cancelled;
+
+        public void request(long n) {
+            requested += n;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private static class RecordingSubscriber implements Flow.Subscriber<Object> {
+
+        final Vector items = new Vector();
+        boolean completed;
+        Throwable error;
+
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        public void onNext(Object item) {
+            items.add(item);
+        }
+
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * Tests of {@link CachedCommunityMoblogs} and the {@link MoblogSnapshot} files it writes
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class CachedCommunityMoblogsTest extends TestCase {
+
+    private static final Executor CALLER = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private File directory;
+    private File snapshotFile;
+
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("snapshots", "");
+        directory.delete();
+        directory.mkdirs();
+        snapshotFile = new File(directory, "community.snapshot");
+    }
+
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            files[i].delete();
+        }
+        directory.delete();
+    }
+
+    public void testCorruptSnapshotIsDiscardedAndRevalidated() throws Exception {
+        FileOutputStream os = new FileOutputStream(snapshotFile);
+        os.write(new byte[]{0x54, 0x41, 0x34, 0x53, 0, 0, 0});
+        os.close();
+
+        CachedCommunityMoblogs cached = new CachedCommunityMoblogs(createTextAmerica4J(10), snapshotFile);
+        Future revalidation = cached.open(CALLER);
+
+        assertEquals(10, ((MoblogSnapshot) revalidation.get()).size());
+        assertEquals("Moblog 7", cached.getMoblog(7).get("title"));
+    }
+
+    public void testCorruptCountsAndOffsetsAreReportedAsIOException() throws Exception {
+        Vector moblogs = createTextAmerica4J(10).getCommunityMoblogs("all");
+
+        // Record count, the length of the title column, which follows the IDs and 11 title offsets, and title offsets
+        int[][] corruptions = {{8, 0x20000000}, {8, -1}, {20 + 40 + 40, -5}, {20 + 40 + 40, 0x7ffffff0},
+                {20 + 40, 4}, {20 + 40 + 4, 50}, {20 + 40 + 8, 0x7fff0000}, {20 + 40 + 8, -1}};
+        for (int i = 0; i < corruptions.length; i++) {
+            MoblogSnapshot.write(moblogs, 0, snapshotFile);
+            corrupt(corruptions[i][0], corruptions[i][1]);
+
+            try {
+                MoblogSnapshot.load(snapshotFile);
+                fail("Corrupt value " + corruptions[i][1] + " at " + corruptions[i][0] + " was accepted");
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+
+        CachedCommunityMoblogs cached = new CachedCommunityMoblogs(createTextAmerica4J(10), snapshotFile);
+        Future revalidation = cached.open(CALLER);
+        assertEquals(10, ((MoblogSnapshot) revalidation.get()).size());
+    }
+
+    public void testConcurrentRefreshesPublishCompleteSnapshots() throws Exception {
+        final CachedCommunityMoblogs cached = new CachedCommunityMoblogs(createTextAmerica4J(500), snapshotFile);
+        final List failures = Collections.synchronizedList(new ArrayList());
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 10; j++) {
+                            assertEquals(500, cached.refresh().size());
+                        }
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+
+        assertEquals("Failures: " + failures, 0, failures.size());
+        assertEquals(500, MoblogSnapshot.load(snapshotFile).size());
+        assertEquals("Only the snapshot should remain", 1, directory.listFiles().length);
+    }
+
+    private void corrupt(int position, int value) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw");
+        try {
+            file.seek(position);
+            file.writeInt(value);
+        } finally {
+            file.close();
+        }
+    }
+
+    private static TextAmerica4J createTextAmerica4J(final int count) {
+        return new TextAmerica4J("key", "login", "password", new XmlRpcTransport() {
+            public Object execute(String methodName, Vector parameters, CallOptions options) {
+                Vector moblogs = new Vector();
+                for (int i = 1; i <= count; i++) {
+                    Hashtable moblog = new Hashtable();
+                    moblog.put("MoblogID", new Integer(i));
+                    moblog.put("title", "Moblog " + i);
+                    moblog.put("url", "http://moblog" + i + ".textamerica.com");
+                    moblog.put("postTo", "moblog" + i + "@textamerica.com");
+                    moblogs.add(moblog);
+                }
+
+                return moblogs;
+            }
+
+            public Object execute(String methodName, Vector parameters) {
+                return execute(methodName, parameters, CallOptions.DEFAULT);
+            }
+        });
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of the deadline arithmetic and tracing settings in {@link CallOptions}
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class CallOptionsTest extends TestCase {
+
+    public void testTimeoutBecomesDeadline() {
+        long started = System.nanoTime();
+
+        assertEquals(started + 5000 * 1000000L, CallOptions.DEFAULT.withTimeout(5000).getDeadline(started));
+        assertEquals(CallOptions.NO_DEADLINE, CallOptions.DEFAULT.getDeadline(started));
+    }
+
+    public void testHugeTimeoutDoesNotOverflow() {
+        long started = System.nanoTime();
+
+        assertEquals(CallOptions.NO_DEADLINE, CallOptions.DEFAULT.withTimeout(Long.MAX_VALUE).getDeadline(started));
+        assertEquals(CallOptions.NO_DEADLINE, CallOptions.DEFAULT.withDeadline(Long.MAX_VALUE).getDeadline(started));
+    }
+
+    public void testEarlierOfTimeoutAndDeadline() {
+        long started = System.nanoTime();
+        CallOptions options = CallOptions.DEFAULT.withTimeout(Long.MAX_VALUE).withDeadline(System.currentTimeMillis() + 1000);
+
+        long deadline = options.getDeadline(started);
+        assertTrue(deadline - started > 0);
+        assertTrue(deadline - System.nanoTime() <= 1000 * 1000000L);
+    }
+
+    public void testAbsoluteDeadlineIsNotReducedByTimeWaited() {
+        long started = System.nanoTime() - 600 * 1000000L;
+        CallOptions options = CallOptions.DEFAULT.withDeadline(System.currentTimeMillis() + 1000);
+
+        long remaining = options.getDeadline(started) - System.nanoTime();
+        assertTrue("Remaining budget " + remaining / 1000000L + " ms", remaining > 900 * 1000000L);
+    }
+
+    public void testDeadlineFromKeepsRemainingBudget() {
+        long started = System.nanoTime() - 600 * 1000000L;
+
+        CallOptions timed = CallOptions.DEFAULT.withTimeout(1000).withDeadlineFrom(started);
+        long remaining = timed.getDeadline(System.nanoTime()) - System.nanoTime();
+        assertTrue("Remaining budget " + remaining / 1000000L + " ms", remaining > 300 * 1000000L);
+        assertTrue("Remaining budget " + remaining / 1000000L + " ms", remaining <= 400 * 1000000L);
+        assertEquals(0, timed.getTimeout());
+
+        CallOptions absolute = CallOptions.DEFAULT.withDeadline(System.currentTimeMillis() + 1000).withDeadlineFrom(started);
+        long deadline = absolute.getDeadline(started);
+        remaining = deadline - System.nanoTime();
+        assertTrue("Remaining budget " + remaining / 1000000L + " ms", remaining > 900 * 1000000L);
+        assertEquals(deadline, absolute.getDeadline(System.nanoTime()));
+        assertEquals(deadline, absolute.withDeadlineFrom(System.nanoTime()).getDeadline(System.nanoTime()));
+    }
+
+    public void testNoDeadlineIsPassedOnUnchanged() {
+        assertSame(CallOptions.DEFAULT, CallOptions.DEFAULT.withDeadlineFrom(System.nanoTime()));
+        assertEquals(0, CallOptions.DEFAULT.getDeadline());
+    }
+
+    public void testInvalidTraceSamplingRateIsRejected() {
+        double[] rates = {-0.1, 1.1, Double.NaN};
+        for (int i = 0; i < rates.length; i++) {
+            try {
+                CallOptions.DEFAULT.withTraceListener(null, rates[i]);
+                fail("Sampling rate " + rates[i] + " was accepted");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    public void testFailingTraceListenerIsIgnored() {
+        final int[] traced = {0};
+        CallOptions options = CallOptions.DEFAULT.withTraceListener(new TraceListener() {
+            public void callTraced(CallTrace callTrace) {
+                traced[0]++;
+                throw new IllegalStateException("Listener failed");
+            }
+        }, 1);
+
+        CallTrace.start("test", options).finish(null);
+        assertEquals(1, traced[0]);
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import org.apache.xmlrpc.XmlRpcException;
+
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests of the {@link CallTrace} phases reported by each transport against a local {@link StandInServer}
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class CallTraceTest extends StandInTestCase {
+
+    private final Vector traces = new Vector();
+    private final CountDownLatch traced = new CountDownLatch(1);
+
+    private final TraceListener traceListener = new TraceListener() {
+        public void callTraced(CallTrace callTrace) {
+            traces.add(callTrace);
+            traced.countDown();
+        }
+    };
+
+    private CallTrace callThrough(XmlRpcTransport transport, double traceSamplingRate) throws Exception {
+        TextAmerica4J textAmerica4J = new TextAmerica4J("key", "login", "password", transport)
+                .withCallOptions(CallOptions.DEFAULT.withTraceListener(traceListener, traceSamplingRate));
+        Exception failure = null;
+        try {
+            textAmerica4J.getMyMoblogs();
+        } catch (Exception e) {
+            failure = e;
+        }
+
+        if (traceSamplingRate == 0) {
+            return null;
+        }
+
+        assertTrue("Call was not traced: " + failure, traced.await(5, TimeUnit.SECONDS));
+        assertEquals(1, traces.size());
+
+        return (CallTrace) traces.get(0);
+    }
+
+    public void testHttpXmlRpcTransportReportsEveryPhase() throws Exception {
+        StandInServer server = startStandIn(StandInServer.LatencyDistribution.fixed(20), 0);
+        CallTrace trace = callThrough(new HttpXmlRpcTransport(server.getURL()), 1);
+
+        assertEquals(TextAmerica4J.TA_MOBLOG_GETMYMOBLOGS, trace.getMethodName());
+        assertNull(trace.getFailure());
+        assertTrue(trace.getEncodeTime() >= 0);
+        assertTrue(trace.getConnectTime() >= 0);
+        assertTrue(trace.getSendTime() >= 0);
+        assertTrue(trace.getTimeToFirstByte() >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(trace.getDecodeTime() >= 0);
+        assertTrue(trace.getRequestBytes() > 0);
+        assertTrue(trace.getResponseBytes() > 0);
+        assertTrue(trace.getDuration() >= trace.getEncodeTime() + trace.getConnectTime() + trace.getSendTime()
+                + trace.getTimeToFirstByte() + trace.getDecodeTime());
+    }
+
+    public void testHttpClientXmlRpcTransportCannotObserveConnectAndSend() throws Exception {
+        StandInServer server = startStandIn(StandInServer.LatencyDistribution.fixed(20), 0);
+        CallTrace trace = callThrough(new HttpClientXmlRpcTransport(server.getURL()), 1);
+
+        assertNull(trace.getFailure());
+        assertTrue(trace.getEncodeTime() >= 0);
+        assertEquals(-1, trace.getConnectTime());
+        assertEquals(-1, trace.getSendTime());
+        assertTrue(trace.getTimeToFirstByte() >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(trace.getDecodeTime() >= 0);
+        assertTrue(trace.getRequestBytes() > 0);
+        assertTrue(trace.getResponseBytes() > 0);
+    }
+
+    public void testFaultReportsPhasesUpToFirstByte() throws Exception {
+        StandInServer server = startStandIn(StandInServer.LatencyDistribution.fixed(0), 1);
+        CallTrace trace = callThrough(new HttpXmlRpcTransport(server.getURL()), 1);
+
+        assertTrue(trace.getFailure() instanceof XmlRpcException);
+        assertTrue(trace.getSendTime() >= 0);
+        assertTrue(trace.getTimeToFirstByte() >= 0);
+        assertEquals(-1, trace.getDecodeTime());
+        assertEquals(-1, trace.getResponseBytes());
+    }
+
+    public void testSamplingRateOfZeroCreatesNoTrace() throws Exception {
+        CallOptions options = CallOptions.DEFAULT.withTraceListener(traceListener, 0);
+        for (int i = 0; i < 1000; i++) {
+            assertNull(CallTrace.start(TextAmerica4J.TA_MOBLOG_GETMYMOBLOGS, options));
+        }
+
+        StandInServer server = startStandIn(StandInServer.LatencyDistribution.fixed(0), 0);
+        callThrough(new HttpXmlRpcTransport(server.getURL()), 0);
+        callThrough(new HttpClientXmlRpcTransport(server.getURL()), 0);
+        assertEquals(0, traces.size());
+    }
+
+    public void testNoListenerCreatesNoTrace() {
+        assertNull(CallTrace.start(TextAmerica4J.TA_MOBLOG_GETMYMOBLOGS, CallOptions.DEFAULT));
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import junit.framework.TestCase;
+import org.apache.xmlrpc.Base64;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests that {@link FileParameter} encodes exactly as {@link Base64#encode(byte[])} does
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class FileParameterTest extends TestCase {
+
+    private static final int CHUNK_SIZE = 57 * 1024;
+    private static final int[] SIZES = {0, 1, 2, 3, 4, 56, 57, 58, 76, 1000,
+            CHUNK_SIZE - 1, CHUNK_SIZE, CHUNK_SIZE + 1, 2 * CHUNK_SIZE, 3 * CHUNK_SIZE + 2, 5 * CHUNK_SIZE};
+
+    private File file;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        file = File.createTempFile("file-parameter", ".bin");
+    }
+
+    protected void tearDown() throws Exception {
+        file.delete();
+
+        super.tearDown();
+    }
+
+    private static byte[] createData(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+
+        return data;
+    }
+
+    private FileParameter writeFile(byte[] data) throws Exception {
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(data);
+        } finally {
+            fos.close();
+        }
+
+        return new FileParameter(file);
+    }
+
+    public void testEncodeMatchesXmlRpcBase64() {
+        for (int i = 0; i < SIZES.length; i++) {
+            byte[] data = createData(SIZES[i]);
+            assertTrue("Size " + SIZES[i], Arrays.equals(Base64.encode(data), FileParameter.encode(data)));
+        }
+    }
+
+    public void testWrittenFileMatchesXmlRpcBase64() throws Exception {
+        for (int i = 0; i < SIZES.length; i++) {
+            byte[] data = createData(SIZES[i]);
+            FileParameter fileParameter = writeFile(data);
+            byte[] expected = Base64.encode(data);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            fileParameter.writeTo(out, new UploadStatistics());
+
+            assertTrue("Size " + SIZES[i], Arrays.equals(expected, out.toByteArray()));
+            assertEquals("Size " + SIZES[i], expected.length, fileParameter.getEncodedLength());
+        }
+    }
+
+    public void testEncodedStreamMatchesXmlRpcBase64() throws Exception {
+        for (int i = 0; i < SIZES.length; i++) {
+            byte[] data = createData(SIZES[i]);
+            FileParameter fileParameter = writeFile(data);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            InputStream in = fileParameter.openEncodedStream(new UploadStatistics());
+            try {
+                // The buffer size does not divide the encoded chunk size, so reads straddle chunks
+                byte[] buffer = new byte[1000];
+                int bytesRead;
+                while ((bytesRead = in.read(buffer, 0, buffer.length)) != -1) {
+                    out.write(buffer, 0, bytesRead);
+                }
+            } finally {
+                in.close();
+            }
+
+            assertTrue("Size " + SIZES[i], Arrays.equals(Base64.encode(data), out.toByteArray()));
+        }
+    }
+}
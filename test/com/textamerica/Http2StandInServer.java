@@ -0,0 +1,451 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import org.apache.xmlrpc.XmlRpcServer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Minimal HTTP/2 server for tests, reached by the h2c upgrade from HTTP/1.1, that answers XML-RPC calls with a
+ * {@link StandInServer}.
+ * <p/>
+ * Only the framing needed by {@link java.net.http.HttpClient} is implemented: request header blocks are not
+ * decoded, every stream is answered with status 200, streams without a body get an empty response, and flow control
+ * windows are opened as wide as allowed. Requests without an upgrade are answered over HTTP/1.1 and counted
+ * separately.
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class Http2StandInServer {
+
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes();
+    private static final int MAXIMUM_WINDOW = Integer.MAX_VALUE;
+    private static final int DEFAULT_WINDOW = 65535;
+    private static final int MAXIMUM_FRAME_SIZE = 16384;
+
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int RST_STREAM = 0x3;
+    private static final int SETTINGS = 0x4;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+
+    private static final int END_STREAM = 0x1;
+    private static final int ACK = 0x1;
+    private static final int END_HEADERS = 0x4;
+    private static final int PADDED = 0x8;
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+
+    private final XmlRpcServer xmlRpcServer = new XmlRpcServer();
+    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    private final List sockets = new ArrayList();
+
+    private ServerSocket serverSocket;
+    private Thread acceptThread;
+    private volatile boolean running;
+
+    private int connections;
+    private int http2Streams;
+    private int http1Requests;
+    private int maximumConcurrentStreams;
+
+    /**
+     * Create a server that answers calls with a stand-in
+     *
+     * @param standIn Stand-in that answers the calls
+     */
+    public Http2StandInServer(StandInServer standIn) {
+        xmlRpcServer.addHandler("$default", standIn);
+    }
+
+    /**
+     * Start listening on a free port
+     *
+     * @throws IOException If the port cannot be opened
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(0);
+        running = true;
+        acceptThread = new Thread(new Runnable() {
+            public void run() {
+                while (running) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        synchronized (Http2StandInServer.this) {
+                            sockets.add(socket);
+                            connections++;
+                        }
+                        executorService.execute(new Runnable() {
+                            public void run() {
+                                serve(socket);
+                            }
+                        });
+                    } catch (IOException e) {
+                        // Closed by shutdown
+                    }
+                }
+            }
+        }, "Http2StandInServer");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * Stop listening and close all connections
+     */
+    public void shutdown() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Ignored
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < sockets.size(); i++) {
+                try {
+                    ((Socket) sockets.get(i)).close();
+                } catch (IOException e) {
+                    // Ignored
+                }
+            }
+        }
+        executorService.shutdownNow();
+    }
+
+    /**
+     * @return URL of the server
+     */
+    public String getURL() {
+        return "http://localhost:" + serverSocket.getLocalPort() + "/";
+    }
+
+    /**
+     * @return Number of connections accepted
+     */
+    public synchronized int getConnections() {
+        return connections;
+    }
+
+    /**
+     * @return Number of requests answered over HTTP/2, including upgraded ones
+     */
+    public synchronized int getHttp2Streams() {
+        return http2Streams;
+    }
+
+    /**
+     * @return Number of requests answered over HTTP/1.1
+     */
+    public synchronized int getHttp1Requests() {
+        return http1Requests;
+    }
+
+    /**
+     * @return Largest number of streams in progress at once on one connection
+     */
+    public synchronized int getMaximumConcurrentStreams() {
+        return maximumConcurrentStreams;
+    }
+
+    private void serve(Socket socket) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            Connection connection = new Connection(socket.getOutputStream());
+
+            Map headers = new HashMap();
+            String requestLine = readHeaders(in, headers);
+            if (requestLine == null) {
+                return;
+            }
+            byte[] body = readBody(in, headers);
+
+            String upgrade = (String) headers.get("upgrade");
+            if (upgrade == null || !"h2c".equalsIgnoreCase(upgrade.trim())) {
+                synchronized (this) {
+                    http1Requests++;
+                }
+                byte[] response = xmlRpcServer.execute(new ByteArrayInputStream(body));
+                connection.write(("HTTP/1.1 200 OK\r\nContent-Type: text/xml\r\nContent-Length: " + response.length
+                        + "\r\nConnection: close\r\n\r\n").getBytes());
+                connection.write(response);
+                return;
+            }
+
+            connection.write("HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n".getBytes());
+            connection.writeFrame(SETTINGS, 0, 0, new byte[]{0, SETTINGS_INITIAL_WINDOW_SIZE, 0x7f, (byte) 0xff,
+                    (byte) 0xff, (byte) 0xff});
+            connection.writeFrame(WINDOW_UPDATE, 0, 0, toBytes(MAXIMUM_WINDOW - DEFAULT_WINDOW));
+            connection.answer(1, body);
+
+            byte[] preface = new byte[PREFACE.length];
+            in.readFully(preface);
+            if (!new String(preface).equals(new String(PREFACE))) {
+                return;
+            }
+
+            Map bodies = new HashMap();
+            while (running) {
+                int length = in.readUnsignedShort() << 8 | in.readUnsignedByte();
+                int type = in.readUnsignedByte();
+                int flags = in.readUnsignedByte();
+                int streamID = in.readInt() & 0x7fffffff;
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+
+                switch (type) {
+                    case HEADERS:
+                        if ((flags & END_STREAM) != 0) {
+                            connection.answer(streamID, new byte[0]);
+                        } else {
+                            bodies.put(new Integer(streamID), new ByteArrayOutputStream());
+                        }
+                        break;
+                    case DATA:
+                        ByteArrayOutputStream streamBody = (ByteArrayOutputStream) bodies.get(new Integer(streamID));
+                        int padding = ((flags & PADDED) != 0) ? payload[0] & 0xff : 0;
+                        int offset = ((flags & PADDED) != 0) ? 1 : 0;
+                        if (streamBody != null) {
+                            streamBody.write(payload, offset, length - offset - padding);
+                        }
+                        if (length > 0) {
+                            connection.writeFrame(WINDOW_UPDATE, 0, 0, toBytes(length));
+                        }
+                        if ((flags & END_STREAM) != 0) {
+                            bodies.remove(new Integer(streamID));
+                            connection.answer(streamID, (streamBody == null) ? new byte[0] : streamBody.toByteArray());
+                        } else if (length > 0) {
+                            connection.writeFrame(WINDOW_UPDATE, 0, streamID, toBytes(length));
+                        }
+                        break;
+                    case SETTINGS:
+                        if ((flags & ACK) == 0) {
+                            connection.writeFrame(SETTINGS, ACK, 0, new byte[0]);
+                        }
+                        break;
+                    case PING:
+                        if ((flags & ACK) == 0) {
+                            connection.writeFrame(PING, ACK, 0, payload);
+                        }
+                        break;
+                    case RST_STREAM:
+                        bodies.remove(new Integer(streamID));
+                        break;
+                    case GOAWAY:
+                        return;
+                    default:
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            // Connection closed
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignored
+            }
+        }
+    }
+
+    private static String readHeaders(InputStream in, Map headers) throws IOException {
+        String requestLine = readLine(in);
+        if (requestLine == null) {
+            return null;
+        }
+
+        String line;
+        while ((line = readLine(in)) != null && line.length() > 0) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+            }
+        }
+
+        return requestLine;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuffer line = new StringBuffer();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int length = line.length();
+                return (length > 0 && line.charAt(length - 1) == '\r') ? line.substring(0, length - 1) : line.toString();
+            }
+            line.append((char) c);
+        }
+
+        return (line.length() == 0) ? null : line.toString();
+    }
+
+    private static byte[] readBody(DataInputStream in, Map headers) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        String contentLength = (String) headers.get("content-length");
+        if (contentLength != null) {
+            byte[] bytes = new byte[Integer.parseInt(contentLength)];
+            in.readFully(bytes);
+            body.write(bytes);
+        } else if ("chunked".equalsIgnoreCase((String) headers.get("transfer-encoding"))) {
+            while (true) {
+                String sizeLine = readLine(in);
+                if (sizeLine == null) {
+                    throw new EOFException("Truncated chunked body");
+                }
+                int semicolon = sizeLine.indexOf(';');
+                int size = Integer.parseInt(((semicolon == -1) ? sizeLine : sizeLine.substring(0, semicolon)).trim(), 16);
+                if (size == 0) {
+                    readLine(in);
+                    break;
+                }
+                byte[] bytes = new byte[size];
+                in.readFully(bytes);
+                body.write(bytes);
+                readLine(in);
+            }
+        }
+
+        return body.toByteArray();
+    }
+
+    private static byte[] toBytes(int value) {
+        return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+
+    /**
+     * Connection after the upgrade, whose streams are answered concurrently
+     */
+    private class Connection {
+
+        private final OutputStream out;
+        private int activeStreams;
+
+        Connection(OutputStream out) {
+            this.out = out;
+        }
+
+        synchronized void write(byte[] bytes) throws IOException {
+            out.write(bytes);
+            out.flush();
+        }
+
+        synchronized void writeFrame(int type, int flags, int streamID, byte[] payload) throws IOException {
+            int length = payload.length;
+            out.write(new byte[]{(byte) (length >>> 16), (byte) (length >>> 8), (byte) length, (byte) type,
+                    (byte) flags});
+            out.write(toBytes(streamID));
+            out.write(payload);
+            out.flush();
+        }
+
+        /**
+         * Answer a stream on a pooled thread; streams without a body get an empty response
+         */
+        void answer(final int streamID, final byte[] body) {
+            synchronized (Http2StandInServer.this) {
+                http2Streams++;
+                activeStreams++;
+                maximumConcurrentStreams = Math.max(maximumConcurrentStreams, activeStreams);
+            }
+
+            executorService.execute(new Runnable() {
+                public void run() {
+                    try {
+                        if (body.length == 0) {
+                            writeFrame(HEADERS, END_HEADERS | END_STREAM, streamID, encodeHeaders(0));
+                            return;
+                        }
+
+                        byte[] response = xmlRpcServer.execute(new ByteArrayInputStream(body));
+                        writeFrame(HEADERS, END_HEADERS, streamID, encodeHeaders(response.length));
+                        int offset = 0;
+                        do {
+                            int length = Math.min(MAXIMUM_FRAME_SIZE, response.length - offset);
+                            byte[] payload = new byte[length];
+                            System.arraycopy(response, offset, payload, 0, length);
+                            offset += length;
+                            writeFrame(DATA, (offset == response.length) ? END_STREAM : 0, streamID, payload);
+                        } while (offset < response.length);
+                    } catch (IOException e) {
+                        // Connection closed
+                    } finally {
+                        synchronized (Http2StandInServer.this) {
+                            activeStreams--;
+                        }
+                    }
+                }
+            });
+        }
+
+        /**
+         * Encode <code>:status 200</code>, <code>content-type</code> and <code>content-length</code> as HPACK
+         * literals without indexing
+         */
+        private byte[] encodeHeaders(int contentLength) {
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            block.write(0x88);
+            writeLiteral(block, 31, "text/xml");
+            writeLiteral(block, 28, String.valueOf(contentLength));
+
+            return block.toByteArray();
+        }
+
+        private void writeLiteral(ByteArrayOutputStream block, int nameIndex, String value) {
+            block.write(0x0f);
+            block.write(nameIndex - 15);
+            byte[] bytes = value.getBytes();
+            block.write(bytes.length);
+            block.write(bytes, 0, bytes.length);
+        }
+    }
+}
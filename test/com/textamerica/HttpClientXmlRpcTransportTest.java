@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests of {@link HttpClientXmlRpcTransport} against an h2c stand-in and a plain HTTP/1.1 stand-in
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class HttpClientXmlRpcTransportTest extends StandInTestCase {
+
+    private static final int THREADS = 16;
+    private static final long LATENCY = 100;
+
+    private Http2StandInServer http2Server;
+
+    public void testConcurrentCallsAreMultiplexedOverHttp2() throws Exception {
+        http2Server = startHttp2StandIn(LATENCY);
+        final TextAmerica4J textAmerica4J = new TextAmerica4J("key", "login", "password",
+                new HttpClientXmlRpcTransport(http2Server.getURL()));
+        assertEquals(3, textAmerica4J.getMyMoblogs().size());
+
+        final List failures = Collections.synchronizedList(new ArrayList());
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        assertEquals(30, textAmerica4J.getCommunityMoblogs(null).size());
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        long started = System.currentTimeMillis();
+        start.countDown();
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+        long elapsed = System.currentTimeMillis() - started;
+
+        assertEquals("Failures: " + failures, 0, failures.size());
+        assertEquals(THREADS + 1, http2Server.getHttp2Streams());
+        assertEquals(0, http2Server.getHttp1Requests());
+        assertEquals(1, http2Server.getConnections());
+        assertTrue("Streams were not multiplexed: " + http2Server.getMaximumConcurrentStreams(),
+                http2Server.getMaximumConcurrentStreams() > 1);
+        // Serialized calls would take at least THREADS * LATENCY; the margin allows for a loaded build machine
+        assertTrue("Calls were serialized: " + elapsed + " ms", elapsed < THREADS * LATENCY * 3 / 4);
+    }
+
+    public void testFileIsStreamedOverHttp2() throws Exception {
+        http2Server = startHttp2StandIn(0);
+        HttpClientXmlRpcTransport transport = new HttpClientXmlRpcTransport(http2Server.getURL());
+        transport.warmUp(CallOptions.DEFAULT);
+
+        File image = File.createTempFile("textamerica4j", ".jpg");
+        try {
+            byte[] bytes = new byte[256 * 1024];
+            new Random(1).nextBytes(bytes);
+            bytes[0] = (byte) 0xff;
+            bytes[1] = (byte) 0xd8;
+            bytes[2] = (byte) 0xff;
+            FileOutputStream out = new FileOutputStream(image);
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+
+            TextAmerica4J textAmerica4J = new TextAmerica4J("key", "login", "password", transport);
+            assertTrue(Integer.parseInt(textAmerica4J.entryUpdate(1, 0, "Title", "Text", 0, image, "JPG")) > 0);
+        } finally {
+            image.delete();
+        }
+
+        assertEquals(2, http2Server.getHttp2Streams());
+        assertEquals(0, http2Server.getHttp1Requests());
+        assertTrue(transport.getUploadStatistics().getBytesSent() > 256 * 1024);
+    }
+
+    public void testFallsBackToHttp1() throws Exception {
+        StandInServer server = startStandIn(StandInServer.LatencyDistribution.fixed(0), 0);
+        TextAmerica4J textAmerica4J = new TextAmerica4J("key", "login", "password",
+                new HttpClientXmlRpcTransport(server.getURL()));
+
+        assertEquals(3, textAmerica4J.getMyMoblogs().size());
+        assertEquals(TextAmerica4J.OK, textAmerica4J.addKeywords(1, "keyword"));
+    }
+
+    public void testMalformedURLIsRejected() throws Exception {
+        try {
+            new HttpClientXmlRpcTransport("not a url");
+            fail("Malformed URL was accepted");
+        } catch (MalformedURLException e) {
+            // Expected
+        }
+
+        try {
+            new HttpClientXmlRpcTransport("http://localhost/a path");
+            fail("URL that is not a valid URI was accepted");
+        } catch (MalformedURLException e) {
+            // Expected
+        }
+    }
+
+    private Http2StandInServer startHttp2StandIn(long latency) throws Exception {
+        StandInServer standIn = new StandInServer(findFreePort(), StandInServer.LatencyDistribution.fixed(latency), 0, 0, 1);
+        Http2StandInServer server = new Http2StandInServer(standIn);
+        server.start();
+
+        return server;
+    }
+
+    protected void tearDown() throws Exception {
+        if (http2Server != null) {
+            http2Server.shutdown();
+            http2Server = null;
+        }
+
+        super.tearDown();
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Tests of {@link IncrementalMoblogSync} against a transport that records the "which" parameter
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class IncrementalMoblogSyncTest extends TestCase {
+
+    private File stateFile;
+    private RecordingTransport transport;
+    private TextAmerica4J textAmerica4J;
+
+    protected void setUp() throws Exception {
+        stateFile = File.createTempFile("sync", ".properties");
+        stateFile.delete();
+        transport = new RecordingTransport();
+        textAmerica4J = new TextAmerica4J("key", "login", "password", transport);
+    }
+
+    protected void tearDown() throws Exception {
+        stateFile.delete();
+        new File(stateFile.getPath() + ".index").delete();
+    }
+
+    public void testIncrementalSyncGoesBackADayInServiceTimeZone() throws Exception {
+        IncrementalMoblogSync sync = new IncrementalMoblogSync(textAmerica4J, stateFile, Long.MAX_VALUE);
+
+        transport.moblogs = createMoblogs(1, 3);
+        sync.sync();
+        assertEquals("all", transport.which);
+        long highWaterMark = sync.getHighWaterMark();
+
+        transport.moblogs = createMoblogs(4, 1);
+        sync.sync();
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy");
+        dateFormat.setTimeZone(IncrementalMoblogSync.SERVICE_TIME_ZONE);
+        assertEquals(dateFormat.format(new Date(highWaterMark - 24 * 60 * 60 * 1000L)), transport.which);
+        assertEquals(4, sync.size());
+    }
+
+    public void testIndexSurvivesRestart() throws Exception {
+        IncrementalMoblogSync sync = new IncrementalMoblogSync(textAmerica4J, stateFile, Long.MAX_VALUE);
+        transport.moblogs = createMoblogs(1, 5);
+        sync.sync();
+
+        IncrementalMoblogSync restarted = new IncrementalMoblogSync(textAmerica4J, stateFile, Long.MAX_VALUE);
+        assertEquals(5, restarted.size());
+        assertEquals("Moblog 3", restarted.getMoblog(3).get("title"));
+
+        transport.moblogs = createMoblogs(6, 1);
+        restarted.sync();
+        assertFalse("all".equals(transport.which));
+        assertEquals(6, restarted.size());
+    }
+
+    public void testCorruptIndexTriggersFullRefresh() throws Exception {
+        IncrementalMoblogSync sync = new IncrementalMoblogSync(textAmerica4J, stateFile, Long.MAX_VALUE);
+        transport.moblogs = createMoblogs(1, 5);
+        sync.sync();
+
+        FileOutputStream os = new FileOutputStream(stateFile.getPath() + ".index");
+        os.write(new byte[]{1, 2, 3});
+        os.close();
+
+        IncrementalMoblogSync restarted = new IncrementalMoblogSync(textAmerica4J, stateFile, Long.MAX_VALUE);
+        assertEquals(0, restarted.size());
+        restarted.sync();
+        assertEquals("all", transport.which);
+        assertEquals(5, restarted.size());
+    }
+
+    public void testIndexIsRewrittenOnlyWhenMoblogsChange() throws Exception {
+        IncrementalMoblogSync sync = new IncrementalMoblogSync(textAmerica4J, stateFile, Long.MAX_VALUE);
+        File indexFile = new File(stateFile.getPath() + ".index");
+        transport.moblogs = createMoblogs(1, 5);
+        sync.sync();
+        assertTrue(indexFile.delete());
+
+        // The overlap returns moblogs already in the index, unchanged apart from the type of MoblogID
+        Vector overlap = createMoblogs(4, 2);
+        ((Hashtable) overlap.get(0)).put("MoblogID", "4");
+        transport.moblogs = overlap;
+        sync.sync();
+        assertFalse(indexFile.exists());
+
+        transport.moblogs = createMoblogs(5, 1);
+        ((Hashtable) transport.moblogs.get(0)).put("title", "Renamed");
+        sync.sync();
+        assertTrue(indexFile.exists());
+        assertEquals("Renamed", MoblogSnapshot.load(indexFile).getTitle(4));
+
+        assertTrue(indexFile.delete());
+        transport.moblogs = createMoblogs(6, 1);
+        sync.sync();
+        assertTrue(indexFile.exists());
+        assertEquals(6, MoblogSnapshot.load(indexFile).size());
+    }
+
+    private static Vector createMoblogs(int firstID, int count) {
+        Vector moblogs = new Vector();
+        for (int i = firstID; i < firstID + count; i++) {
+            Hashtable moblog = new Hashtable();
+            moblog.put("MoblogID", Integer.valueOf(i));
+            moblog.put("title", "Moblog " + i);
+            moblog.put("url", "http://moblog" + i + ".textamerica.com");
+            moblog.put("postTo", "moblog" + i + "@textamerica.com");
+            moblogs.add(moblog);
+        }
+
+        return moblogs;
+    }
+
+    /**
+     * Returns the moblogs it is given and records the "which" parameter of the last call
+     */
+    private static class RecordingTransport implements XmlRpcTransport {
+
+        Vector moblogs;
+        String which;
+
+        public Object execute(String methodName, Vector parameters, CallOptions options) {
+            which = (String) parameters.get(3);
+            return moblogs;
+        }
+
+        public Object execute(String methodName, Vector parameters) {
+            return execute(methodName, parameters, CallOptions.DEFAULT);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests of {@link KeywordTagger}
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class KeywordTaggerTest extends TestCase {
+
+    private static final Executor CALLER_RUNS = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    public void testKeywordsAreMergedAndFailuresClearedOnRetry() throws Exception {
+        final Vector calls = new Vector();
+        final boolean[] failing = {true};
+        XmlRpcTransport transport = new XmlRpcTransport() {
+            public Object execute(String methodName, Vector parameters, CallOptions options) throws Exception {
+                calls.add(parameters.get(3) + ":" + parameters.get(4));
+                if (failing[0]) {
+                    throw new IOException("Connection reset");
+                }
+
+                return TextAmerica4J.OK;
+            }
+
+            public Object execute(String methodName, Vector parameters) throws Exception {
+                return execute(methodName, parameters, CallOptions.DEFAULT);
+            }
+        };
+
+        KeywordTagger tagger = new KeywordTagger(new TextAmerica4J("key", "login", "password", transport),
+                CALLER_RUNS, 1, 10, null);
+        tagger.add(1, "Sunset, beach");
+        tagger.add(1, " sunset ,Long   Walk");
+        tagger.flush();
+
+        assertEquals(1, calls.size());
+        assertEquals("1:sunset,beach,long walk", calls.get(0));
+        assertEquals(0, tagger.getCallCount());
+        assertTrue(tagger.getFailures().get(Integer.valueOf(1)) instanceof IOException);
+
+        failing[0] = false;
+        tagger.add(1, "sunset,beach,long walk");
+        tagger.flush();
+
+        assertEquals(1, tagger.getCallCount());
+        assertEquals(3, tagger.getKeywordCount());
+        assertTrue(tagger.getFailures().isEmpty());
+    }
+
+    public void testCommasInsideKeywordsBecomeSpaces() throws Exception {
+        final Vector calls = new Vector();
+        KeywordTagger tagger = new KeywordTagger(new TextAmerica4J("key", "login", "password",
+                createTransport(calls, null)), CALLER_RUNS, 1, 10, null);
+        tagger.add(1, Arrays.asList(new String[]{"Long,Walk", " ,beach, "}));
+        tagger.flush();
+
+        assertEquals("1:long walk,beach", calls.get(0));
+    }
+
+    public void testEntriesNotDispatchedWhenInterruptedAreKept() throws Exception {
+        final Vector calls = new Vector();
+        final CountDownLatch gate = new CountDownLatch(1);
+        Executor threadPerCall = new Executor() {
+            public void execute(Runnable command) {
+                new Thread(command).start();
+            }
+        };
+        final KeywordTagger tagger = new KeywordTagger(new TextAmerica4J("key", "login", "password",
+                createTransport(calls, gate)), threadPerCall, 1, 3, null);
+
+        final Vector interruptions = new Vector();
+        Thread producer = new Thread() {
+            public void run() {
+                try {
+                    tagger.add(1, "a");
+                    tagger.add(2, "b");
+                    tagger.add(3, "c");
+                } catch (InterruptedException e) {
+                    interruptions.add(e);
+                }
+            }
+        };
+        try {
+            producer.start();
+
+            // The first entry's call holds the only permit, so the producer waits to dispatch the second
+            long deadline = System.currentTimeMillis() + 5000;
+            while ((calls.size() < 1 || producer.getState() != Thread.State.WAITING)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            producer.interrupt();
+            producer.join(5000);
+            assertEquals(1, interruptions.size());
+
+            tagger.add(3, "d");
+        } finally {
+            gate.countDown();
+        }
+        tagger.flush();
+
+        List sorted = new ArrayList(calls);
+        Collections.sort(sorted);
+        assertEquals(Arrays.asList(new String[]{"1:a", "2:b", "3:c,d"}), sorted);
+        assertEquals(3, tagger.getCallCount());
+        assertTrue(tagger.getFailures().isEmpty());
+    }
+
+    /**
+     * @return Transport that records the entry ID and keywords of each call and, if there is a gate, waits for it
+     */
+    private static XmlRpcTransport createTransport(final Vector calls, final CountDownLatch gate) {
+        return new XmlRpcTransport() {
+            public Object execute(String methodName, Vector parameters, CallOptions options) throws Exception {
+                calls.add(parameters.get(3) + ":" + parameters.get(4));
+                if (gate != null) {
+                    assertTrue(gate.await(5, TimeUnit.SECONDS));
+                }
+
+                return TextAmerica4J.OK;
+            }
+
+            public Object execute(String methodName, Vector parameters) throws Exception {
+                return execute(methodName, parameters, CallOptions.DEFAULT);
+            }
+        };
+    }
+}
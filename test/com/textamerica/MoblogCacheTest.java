@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Tests of the local {@link MoblogCache} backends, {@link InProcessMoblogCache} and {@link OffHeapMoblogCache}
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class MoblogCacheTest extends TestCase {
+
+    private static final long TIME_TO_LIVE = 60 * 1000;
+
+    public void testPutGetAndInvalidate() {
+        checkPutGetAndInvalidate(new InProcessMoblogCache(TIME_TO_LIVE, 100));
+        checkPutGetAndInvalidate(new OffHeapMoblogCache(TIME_TO_LIVE, 1024 * 1024));
+    }
+
+    public void testListingsExpire() throws Exception {
+        checkListingsExpire(new InProcessMoblogCache(50, 100));
+        checkListingsExpire(new OffHeapMoblogCache(50, 1024 * 1024));
+    }
+
+    public void testLeastRecentlyUsedListingsAreRemoved() {
+        InProcessMoblogCache cache = new InProcessMoblogCache(TIME_TO_LIVE, 2);
+        cache.put(MoblogCache.COMMUNITY_MOBLOGS, "1", createListing(1));
+        cache.put(MoblogCache.COMMUNITY_MOBLOGS, "2", createListing(2));
+        assertNotNull(cache.get(MoblogCache.COMMUNITY_MOBLOGS, "1"));
+        cache.put(MoblogCache.COMMUNITY_MOBLOGS, "3", createListing(3));
+
+        assertEquals(2, cache.getEntryCount());
+        assertNotNull(cache.get(MoblogCache.COMMUNITY_MOBLOGS, "1"));
+        assertNull(cache.get(MoblogCache.COMMUNITY_MOBLOGS, "2"));
+        assertNotNull(cache.get(MoblogCache.COMMUNITY_MOBLOGS, "3"));
+    }
+
+    public void testPutIsDroppedAfterInvalidation() {
+        InProcessMoblogCache cache = new InProcessMoblogCache(TIME_TO_LIVE, 100);
+
+        long generation = cache.getGeneration(MoblogCache.MY_MOBLOGS, "login");
+        cache.invalidate(MoblogCache.MY_MOBLOGS, "login");
+        assertFalse(cache.put(MoblogCache.MY_MOBLOGS, "login", createListing(3), generation));
+        assertNull(cache.get(MoblogCache.MY_MOBLOGS, "login"));
+
+        generation = cache.getGeneration(MoblogCache.MY_MOBLOGS, "login");
+        assertTrue(cache.put(MoblogCache.MY_MOBLOGS, "login", createListing(3), generation));
+        assertEquals(createListing(3), cache.get(MoblogCache.MY_MOBLOGS, "login"));
+    }
+
+    public void testFailedChangeInvalidatesListings() throws Exception {
+        final int[] listings = {0};
+        XmlRpcTransport transport = new XmlRpcTransport() {
+            public Object execute(String methodName, Vector parameters, CallOptions options) throws Exception {
+                if (TextAmerica4J.TA_MOBLOG_GETMYMOBLOGS.equals(methodName)) {
+                    listings[0]++;
+                    return createListing(3);
+                }
+
+                throw new IOException("Read timed out");
+            }
+
+            public Object execute(String methodName, Vector parameters) throws Exception {
+                return execute(methodName, parameters, CallOptions.DEFAULT);
+            }
+        };
+        TextAmerica4J textAmerica4J = new TextAmerica4J("key", "login", "password", transport)
+                .withCache(new InProcessMoblogCache(TIME_TO_LIVE, 100));
+
+        textAmerica4J.getMyMoblogs();
+        textAmerica4J.getMyMoblogs();
+        assertEquals(1, listings[0]);
+
+        try {
+            textAmerica4J.changeTitle(1, "Renamed");
+            fail("Change succeeded");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        textAmerica4J.getMyMoblogs();
+        assertEquals(2, listings[0]);
+    }
+
+    private static void checkPutGetAndInvalidate(MoblogCache cache) {
+        final List invalidations = new ArrayList();
+        cache.addInvalidationListener(new InvalidationListener() {
+            public void invalidated(String group, String key) {
+                invalidations.add(group + "/" + key);
+            }
+        });
+
+        Vector listing = createListing(3);
+        cache.put(MoblogCache.MY_MOBLOGS, "login", listing);
+        cache.put(MoblogCache.COMMUNITY_MOBLOGS, "", createListing(30));
+        cache.put(MoblogCache.COMMUNITY_MOBLOGS, "all", createListing(40));
+
+        // Callers get copies, and changing the listing they passed in does not change the cached one
+        listing.clear();
+        Vector cached = (Vector) cache.get(MoblogCache.MY_MOBLOGS, "login");
+        assertEquals(createListing(3), cached);
+        cached.clear();
+        assertEquals(createListing(3), cache.get(MoblogCache.MY_MOBLOGS, "login"));
+        assertNull(cache.get(MoblogCache.MY_MOBLOGS, "other"));
+
+        cache.invalidate(MoblogCache.MY_MOBLOGS, "login");
+        assertNull(cache.get(MoblogCache.MY_MOBLOGS, "login"));
+        assertNotNull(cache.get(MoblogCache.COMMUNITY_MOBLOGS, ""));
+
+        cache.invalidate(MoblogCache.COMMUNITY_MOBLOGS, null);
+        assertNull(cache.get(MoblogCache.COMMUNITY_MOBLOGS, ""));
+        assertNull(cache.get(MoblogCache.COMMUNITY_MOBLOGS, "all"));
+
+        cache.put(MoblogCache.MY_MOBLOGS, "login", createListing(3));
+        cache.evict(MoblogCache.MY_MOBLOGS, "login");
+        assertNull(cache.get(MoblogCache.MY_MOBLOGS, "login"));
+
+        List expected = new ArrayList();
+        expected.add(MoblogCache.MY_MOBLOGS + "/login");
+        expected.add(MoblogCache.COMMUNITY_MOBLOGS + "/null");
+        assertEquals(expected, invalidations);
+    }
+
+    private static void checkListingsExpire(MoblogCache cache) throws InterruptedException {
+        cache.put(MoblogCache.MY_MOBLOGS, "login", createListing(3));
+        assertNotNull(cache.get(MoblogCache.MY_MOBLOGS, "login"));
+
+        Thread.sleep(100);
+        assertNull(cache.get(MoblogCache.MY_MOBLOGS, "login"));
+    }
+
+    static Vector createListing(int count) {
+        Vector moblogs = new Vector(count);
+
+        for (int i = 1; i <= count; i++) {
+            Hashtable moblog = new Hashtable();
+            moblog.put("MoblogID", Integer.valueOf(i));
+            moblog.put("title", "Moblog " + i);
+            moblog.put("url", "http://moblog" + i + ".textamerica.com");
+            moblogs.add(moblog);
+        }
+
+        return moblogs;
+    }
+}
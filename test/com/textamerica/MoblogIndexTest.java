@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import junit.framework.TestCase;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Tests of {@link MoblogIndex}
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class MoblogIndexTest extends TestCase {
+
+    private MoblogIndex moblogIndex;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        moblogIndex = new MoblogIndex();
+        Vector moblogs = new Vector();
+        moblogs.add(createMoblog(1, "Summer Vacation", "http://www.vacation.textamerica.com"));
+        moblogs.add(createMoblog(2, "vacation pictures", "https://vacationpics.textamerica.com"));
+        moblogs.add(createMoblog(3, "My Cat", "www.cats.textamerica.com"));
+        moblogs.add(createMoblog(4, "Summer in the city, summer", "HTTP://City.TextAmerica.com"));
+        moblogs.add(createMoblog(5, "Not indexed", "http://invalid.textamerica.com"));
+        ((Hashtable) moblogs.get(4)).put("MoblogID", "not a number");
+        moblogIndex.merge(moblogs);
+    }
+
+    private static Hashtable createMoblog(int moblogID, String title, String url) {
+        Hashtable moblog = new Hashtable();
+        moblog.put("MoblogID", Integer.valueOf(moblogID));
+        moblog.put("title", title);
+        moblog.put("url", url);
+
+        return moblog;
+    }
+
+    private static String moblogIDs(Vector moblogs) {
+        StringBuffer moblogIDs = new StringBuffer();
+        for (int i = 0; i < moblogs.size(); i++) {
+            if (i > 0) {
+                moblogIDs.append(',');
+            }
+            moblogIDs.append(((Hashtable) moblogs.get(i)).get("MoblogID"));
+        }
+
+        return moblogIDs.toString();
+    }
+
+    public void testRecordsWithoutNumericMoblogIDAreNotIndexed() {
+        assertEquals(4, moblogIndex.size());
+        assertEquals("Summer Vacation", moblogIndex.getMoblog(1).get("title"));
+        assertNull(moblogIndex.getMoblog(5));
+        assertEquals("", moblogIDs(moblogIndex.search("indexed", 10)));
+    }
+
+    public void testTitlePrefixIgnoresCaseAndIsOrderedByTitle() {
+        assertEquals("4,1", moblogIDs(moblogIndex.findByTitlePrefix("summer", 10)));
+        assertEquals("4,1", moblogIDs(moblogIndex.findByTitlePrefix("SUMMER ", 10)));
+        assertEquals("1", moblogIDs(moblogIndex.findByTitlePrefix("Summer V", 10)));
+        assertEquals("2", moblogIDs(moblogIndex.findByTitlePrefix("vaca", 10)));
+        assertEquals("4", moblogIDs(moblogIndex.findByTitlePrefix("summer", 1)));
+        assertEquals("", moblogIDs(moblogIndex.findByTitlePrefix("cat", 10)));
+        assertEquals(4, moblogIndex.findByTitlePrefix("", 10).size());
+    }
+
+    public void testURLPrefixIgnoresSchemeWwwAndCase() {
+        assertEquals("1,2", moblogIDs(moblogIndex.findByURLPrefix("vacation", 10)));
+        assertEquals("1,2", moblogIDs(moblogIndex.findByURLPrefix("http://vacation", 10)));
+        assertEquals("1,2", moblogIDs(moblogIndex.findByURLPrefix("https://www.vacation", 10)));
+        assertEquals("1", moblogIDs(moblogIndex.findByURLPrefix("www.vacation.", 10)));
+        assertEquals("3", moblogIDs(moblogIndex.findByURLPrefix("cats", 10)));
+        assertEquals("3", moblogIDs(moblogIndex.findByURLPrefix("HTTP://WWW.Cats", 10)));
+        assertEquals("4", moblogIDs(moblogIndex.findByURLPrefix("city.textamerica.com", 10)));
+        assertEquals("", moblogIDs(moblogIndex.findByURLPrefix("textamerica", 10)));
+    }
+
+    public void testSearchMatchesEveryWordInAnyOrder() {
+        assertEquals("1,4", moblogIDs(moblogIndex.search("summer", 10)));
+        assertEquals("1", moblogIDs(moblogIndex.search("vacation summer", 10)));
+        assertEquals("1,2", moblogIDs(moblogIndex.search("VACATION", 10)));
+        assertEquals("4", moblogIDs(moblogIndex.search("city, summer!", 10)));
+        assertEquals("1", moblogIDs(moblogIndex.search("summer", 1)));
+        assertEquals("", moblogIDs(moblogIndex.search("summer cat", 10)));
+        assertEquals("", moblogIDs(moblogIndex.search("vaca", 10)));
+        assertEquals("", moblogIDs(moblogIndex.search(" ,. ", 10)));
+        assertEquals("", moblogIDs(moblogIndex.search(null, 10)));
+    }
+
+    public void testMergeReplacesIndexedMoblog() {
+        Vector changes = new Vector();
+        changes.add(createMoblog(1, "Winter Holiday", "http://holiday.textamerica.com"));
+        moblogIndex.merge(changes);
+
+        assertEquals(4, moblogIndex.size());
+        assertEquals("Winter Holiday", moblogIndex.getMoblog(1).get("title"));
+
+        assertEquals("4", moblogIDs(moblogIndex.findByTitlePrefix("summer", 10)));
+        assertEquals("1", moblogIDs(moblogIndex.findByTitlePrefix("winter", 10)));
+        assertEquals("2", moblogIDs(moblogIndex.findByURLPrefix("vacation", 10)));
+        assertEquals("1", moblogIDs(moblogIndex.findByURLPrefix("holiday", 10)));
+        assertEquals("4", moblogIDs(moblogIndex.search("summer", 10)));
+        assertEquals("2", moblogIDs(moblogIndex.search("vacation", 10)));
+        assertEquals("1", moblogIDs(moblogIndex.search("holiday winter", 10)));
+    }
+
+    public void testMergeWithSameTitleKeepsSharedWords() {
+        Vector changes = new Vector();
+        changes.add(createMoblog(4, "Summer in the city", "http://city.textamerica.com"));
+        moblogIndex.merge(changes);
+
+        assertEquals("1,4", moblogIDs(moblogIndex.search("summer", 10)));
+        assertEquals("4", moblogIDs(moblogIndex.findByURLPrefix("city", 10)));
+    }
+
+    public void testRemove() {
+        assertTrue(moblogIndex.remove(2));
+        assertFalse(moblogIndex.remove(2));
+
+        assertEquals(3, moblogIndex.size());
+        assertNull(moblogIndex.getMoblog(2));
+        assertEquals("1", moblogIDs(moblogIndex.search("vacation", 10)));
+        assertEquals("", moblogIDs(moblogIndex.search("pictures", 10)));
+        assertEquals("1", moblogIDs(moblogIndex.findByURLPrefix("vacation", 10)));
+        assertEquals("", moblogIDs(moblogIndex.findByTitlePrefix("vacation", 10)));
+    }
+}
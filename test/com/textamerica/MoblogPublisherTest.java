@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+/**
+ * Tests of {@link MoblogPublisher}
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class MoblogPublisherTest extends TestCase {
+
+    private static final Executor CALLER_RUNS = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private Vector calls;
+
+    private TextAmerica4J moblogService(final Exception failure, final int moblogCount) {
+        calls = new Vector();
+        XmlRpcTransport transport = new XmlRpcTransport() {
+            public Object execute(String methodName, Vector parameters, CallOptions options) throws Exception {
+                calls.add(methodName);
+                if (failure != null) {
+                    throw failure;
+                }
+
+                Vector moblogs = new Vector();
+                for (int i = 0; i < moblogCount; i++) {
+                    Hashtable moblog = new Hashtable();
+                    moblog.put("Title", "Moblog " + i);
+                    moblogs.add(moblog);
+                }
+
+                return moblogs;
+            }
+
+            public Object execute(String methodName, Vector parameters) throws Exception {
+                return execute(methodName, parameters, CallOptions.DEFAULT);
+            }
+        };
+
+        return new TextAmerica4J("key", "login", "password", transport);
+    }
+
+    public void testMoblogsAreFetchedOnDemandAndNeverExceedRequests() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new MoblogPublisher(moblogService(null, 3), "new", CALLER_RUNS).subscribe(subscriber);
+
+        assertEquals(0, calls.size());
+
+        subscriber.subscription.request(1);
+        assertEquals(1, calls.size());
+        assertEquals(1, subscriber.items.size());
+        assertEquals("Moblog 0", ((Hashtable) subscriber.items.get(0)).get("Title"));
+        assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(1);
+        assertEquals(2, subscriber.items.size());
+        assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(5);
+        assertEquals(3, subscriber.items.size());
+        assertTrue(subscriber.completed);
+        assertNull(subscriber.error);
+        assertEquals(1, calls.size());
+    }
+
+    public void testCancelStopsDelivery() {
+        RecordingSubscriber subscriber = new RecordingSubscriber() {
+            public void onNext(Hashtable item) {
+                super.onNext(item);
+                subscription.cancel();
+            }
+        };
+        new MoblogPublisher(moblogService(null, 3), "new", CALLER_RUNS).subscribe(subscriber);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        subscriber.subscription.request(1);
+
+        assertEquals(1, subscriber.items.size());
+        assertFalse(subscriber.completed);
+        assertNull(subscriber.error);
+    }
+
+    public void testCancelBeforeDemandMakesNoCall() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new MoblogPublisher(moblogService(null, 3), "new", CALLER_RUNS).subscribe(subscriber);
+
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(1);
+
+        assertEquals(0, calls.size());
+        assertEquals(0, subscriber.items.size());
+        assertFalse(subscriber.completed);
+    }
+
+    public void testFailedCallIsSignalledAsError() {
+        IOException failure = new IOException("Connection refused");
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new MoblogPublisher(moblogService(failure, 3), "new", CALLER_RUNS).subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+        subscriber.subscription.request(1);
+
+        assertSame(failure, subscriber.error);
+        assertEquals(1, calls.size());
+        assertEquals(0, subscriber.items.size());
+        assertFalse(subscriber.completed);
+    }
+
+    public void testNonPositiveRequestIsSignalledAsError() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new MoblogPublisher(moblogService(null, 3), "new", CALLER_RUNS).subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertEquals(0, calls.size());
+    }
+
+    public void testEmptyListingCompletes() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new MoblogPublisher(moblogService(null, 0), "new", CALLER_RUNS).subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+
+        assertTrue(subscriber.completed);
+        assertEquals(0, subscriber.items.size());
+    }
+
+    public void testExecutorIsRequired() {
+        try {
+            new MoblogPublisher(moblogService(null, 0), "new", null);
+            fail("Expected NullPointerException");
+        } catch (NullPointerException e) {
+            // expected
+        }
+    }
+
+    private static class RecordingSubscriber implements Flow.Subscriber<Hashtable> {
+
+        Flow.Subscription subscription;
+        final Vector items = new Vector();
+        boolean completed;
+        Throwable error;
+
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        public void onNext(Hashtable item) {
+            items.add(item);
+        }
+
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import junit.framework.TestCase;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests of the concurrency limits, weighted scheduling and deadlines of {@link PriorityXmlRpcTransport}, against a
+ * scripted transport
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class PriorityXmlRpcTransportTest extends TestCase {
+
+    public void testClassLimitIsEnforced() throws Exception {
+        ScriptedTransport scripted = new ScriptedTransport();
+        scripted.gate = new CountDownLatch(1);
+        PriorityXmlRpcTransport transport = new PriorityXmlRpcTransport(scripted, 4, 4, 4, 1);
+
+        List threads = new ArrayList();
+        try {
+            startCalls(threads, transport, CallPriority.BULK, 3);
+            startCalls(threads, transport, CallPriority.INTERACTIVE, 2);
+            scripted.awaitActive(3);
+            awaitWaiting(threads, 5);
+
+            assertEquals(1, scripted.getActive(CallPriority.BULK));
+            assertEquals(2, scripted.getActive(CallPriority.INTERACTIVE));
+        } finally {
+            scripted.gate.countDown();
+        }
+
+        joinAll(threads);
+        assertEquals(1, scripted.getMaximumActive(CallPriority.BULK));
+        assertEquals(5, scripted.order.size());
+    }
+
+    public void testTotalLimitIsEnforced() throws Exception {
+        ScriptedTransport scripted = new ScriptedTransport();
+        scripted.gate = new CountDownLatch(1);
+        PriorityXmlRpcTransport transport = new PriorityXmlRpcTransport(scripted, 2, 4, 4, 4);
+
+        List threads = new ArrayList();
+        try {
+            startCalls(threads, transport, CallPriority.NORMAL, 4);
+            scripted.awaitActive(2);
+            awaitWaiting(threads, 4);
+        } finally {
+            scripted.gate.countDown();
+        }
+
+        joinAll(threads);
+        assertEquals(2, scripted.getMaximumActive(CallPriority.NORMAL));
+        assertEquals(4, scripted.order.size());
+    }
+
+    public void testQueuedClassesAreServedByWeight() throws Exception {
+        ScriptedTransport scripted = new ScriptedTransport();
+        scripted.gate = new CountDownLatch(1);
+        PriorityXmlRpcTransport transport = new PriorityXmlRpcTransport(scripted, 1, 1, 1, 1);
+
+        List threads = new ArrayList();
+        try {
+            startCalls(threads, transport, CallPriority.NORMAL, 1);
+            scripted.awaitActive(1);
+            startCalls(threads, transport, CallPriority.BULK, 2);
+            startCalls(threads, transport, CallPriority.INTERACTIVE, 16);
+            awaitWaiting(threads, 19);
+        } finally {
+            scripted.gate.countDown();
+        }
+
+        joinAll(threads);
+        assertEquals(19, scripted.order.size());
+
+        // Interactive calls have 8 times the weight of bulk calls, so one bulk call is served in every 9
+        List queued = scripted.order.subList(1, 19);
+        assertEquals(8, Collections.frequency(queued.subList(0, 9), CallPriority.INTERACTIVE));
+        assertEquals(1, Collections.frequency(queued.subList(0, 9), CallPriority.BULK));
+        assertEquals(1, Collections.frequency(queued.subList(9, 18), CallPriority.BULK));
+    }
+
+    public void testTimeWaitingIsChargedOnceAgainstAbsoluteDeadline() throws Exception {
+        ScriptedTransport scripted = new ScriptedTransport();
+        scripted.gate = new CountDownLatch(1);
+        final PriorityXmlRpcTransport transport = new PriorityXmlRpcTransport(scripted, 1, 1, 1, 1);
+
+        List threads = new ArrayList();
+        final List failures = Collections.synchronizedList(new ArrayList());
+        try {
+            startCalls(threads, transport, CallPriority.NORMAL, 1);
+            scripted.awaitActive(1);
+
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        transport.execute(TextAmerica4J.TA_MOBLOG_GETMYMOBLOGS, new Vector(), CallOptions.DEFAULT
+                                .withPriority(CallPriority.NORMAL).withDeadline(System.currentTimeMillis() + 1000));
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+            awaitWaiting(threads, 2);
+
+            Thread.sleep(400);
+        } finally {
+            scripted.gate.countDown();
+        }
+
+        joinAll(threads);
+        assertEquals("Failures: " + failures, 0, failures.size());
+
+        // About 600 ms of the budget is left after waiting 400 ms, not the 200 ms left if the wait were charged twice
+        long remaining = ((Long) scripted.remaining.get(1)).longValue();
+        assertTrue("Remaining budget " + remaining + " ms", remaining > 450);
+        assertTrue("Remaining budget " + remaining + " ms", remaining <= 600);
+    }
+
+    public void testDeadlineExpiresInQueue() throws Exception {
+        ScriptedTransport scripted = new ScriptedTransport();
+        scripted.gate = new CountDownLatch(1);
+        PriorityXmlRpcTransport transport = new PriorityXmlRpcTransport(scripted, 1, 1, 1, 1);
+
+        List threads = new ArrayList();
+        try {
+            startCalls(threads, transport, CallPriority.BULK, 1);
+            scripted.awaitActive(1);
+
+            long started = System.nanoTime();
+            try {
+                transport.execute(TextAmerica4J.TA_MOBLOG_GETMYMOBLOGS, new Vector(), CallOptions.DEFAULT.withTimeout(200));
+                fail("Call was scheduled past its deadline");
+            } catch (SocketTimeoutException e) {
+                // Expected
+            }
+
+            assertTrue(System.nanoTime() - started >= 190 * 1000000L);
+        } finally {
+            scripted.gate.countDown();
+        }
+
+        joinAll(threads);
+        assertEquals(1, scripted.order.size());
+
+        // The expired call gave up its place, so later calls are still scheduled
+        transport.execute(TextAmerica4J.TA_MOBLOG_GETMYMOBLOGS, new Vector());
+        assertEquals(2, scripted.order.size());
+    }
+
+    public void testDefaultPriorityComesFromMethodName() {
+        PriorityXmlRpcTransport transport = new PriorityXmlRpcTransport(new ScriptedTransport(), 1, 1, 1, 1);
+
+        assertEquals(CallPriority.BULK, transport.getPriority(TextAmerica4J.TA_ENTRY_UPDATE, CallOptions.DEFAULT));
+        assertEquals(CallPriority.INTERACTIVE, transport.getPriority(TextAmerica4J.TA_MOBLOG_GETMYMOBLOGS, CallOptions.DEFAULT));
+        assertEquals(CallPriority.NORMAL, transport.getPriority(TextAmerica4J.TA_KEYWORDS_ADD, CallOptions.DEFAULT));
+        assertEquals(CallPriority.NORMAL, transport.getPriority(TextAmerica4J.TA_ENTRY_UPDATE,
+                CallOptions.DEFAULT.withPriority(CallPriority.NORMAL)));
+    }
+
+    private static void startCalls(List threads, final PriorityXmlRpcTransport transport, final CallPriority priority,
+                                   int count) {
+        for (int i = 0; i < count; i++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        transport.execute(TextAmerica4J.TA_MOBLOG_GETMYMOBLOGS, new Vector(),
+                                CallOptions.DEFAULT.withPriority(priority));
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+    /**
+     * Wait until the given number of calls are waiting, either queued in the scheduler or held by the gate
+     */
+    private static void awaitWaiting(List threads, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            int waiting = 0;
+            for (int i = 0; i < threads.size(); i++) {
+                Thread.State state = ((Thread) threads.get(i)).getState();
+                if (state == Thread.State.WAITING || state == Thread.State.TIMED_WAITING) {
+                    waiting++;
+                }
+            }
+
+            if (waiting >= count) {
+                return;
+            }
+
+            assertTrue("Only " + waiting + " calls waiting", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static void joinAll(List threads) throws InterruptedException {
+        for (int i = 0; i < threads.size(); i++) {
+            ((Thread) threads.get(i)).join(5000);
+            assertFalse(((Thread) threads.get(i)).isAlive());
+        }
+    }
+
+    /**
+     * Transport that records the priority and remaining budget of each call and holds calls until its gate opens
+     */
+    private static class ScriptedTransport implements XmlRpcTransport {
+
+        volatile CountDownLatch gate;
+        final List order = Collections.synchronizedList(new ArrayList());
+        final List remaining = Collections.synchronizedList(new ArrayList());
+        private final int[] active = new int[CallPriority.values().length];
+        private final int[] maximumActive = new int[active.length];
+
+        public Object execute(String methodName, Vector parameters) throws Exception {
+            return execute(methodName, parameters, CallOptions.DEFAULT);
+        }
+
+        public Object execute(String methodName, Vector parameters, CallOptions options) throws Exception {
+            CallPriority priority = (options.getPriority() == null) ? CallPriority.NORMAL : options.getPriority();
+            long deadline = options.getDeadline(System.nanoTime());
+
+            synchronized (this) {
+                order.add(priority);
+                remaining.add(Long.valueOf((deadline == CallOptions.NO_DEADLINE)
+                        ? -1 : (deadline - System.nanoTime()) / 1000000L));
+                active[priority.ordinal()]++;
+                maximumActive[priority.ordinal()] = Math.max(maximumActive[priority.ordinal()], active[priority.ordinal()]);
+                notifyAll();
+            }
+
+            try {
+                CountDownLatch gate = this.gate;
+                if (gate != null) {
+                    assertTrue(gate.await(5, TimeUnit.SECONDS));
+                }
+
+                return new Vector();
+            } finally {
+                synchronized (this) {
+                    active[priority.ordinal()]--;
+                }
+            }
+        }
+
+        synchronized int getActive(CallPriority priority) {
+            return active[priority.ordinal()];
+        }
+
+        synchronized int getMaximumActive(CallPriority priority) {
+            return maximumActive[priority.ordinal()];
+        }
+
+        synchronized void awaitActive(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (order.size() < count) {
+                long remaining = deadline - System.currentTimeMillis();
+                assertTrue("Only " + order.size() + " calls started", remaining > 0);
+                wait(remaining);
+            }
+        }
+    }
+}
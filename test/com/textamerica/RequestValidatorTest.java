@@ -0,0 +1,307 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Vector;
+
+/**
+ * Tests of {@link RequestValidator}
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class RequestValidatorTest extends TestCase {
+
+    private static final byte[] JPEG_HEADER = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 0x10, 'J', 'F', 'I', 'F'};
+
+    private File mediaFile;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mediaFile = File.createTempFile("request-validator", ".bin");
+    }
+
+    protected void tearDown() throws Exception {
+        mediaFile.delete();
+
+        super.tearDown();
+    }
+
+    private File writeMedia(byte[] content) throws IOException {
+        FileOutputStream fos = new FileOutputStream(mediaFile);
+        try {
+            fos.write(content);
+        } finally {
+            fos.close();
+        }
+
+        return mediaFile;
+    }
+
+    private static byte[] movieHeader(String atom) {
+        byte[] header = new byte[16];
+        header[3] = 16;
+        byte[] atomType = atom.getBytes(StandardCharsets.ISO_8859_1);
+        System.arraycopy(atomType, 0, header, 4, atomType.length);
+
+        return header;
+    }
+
+    private static void assertRejected(Runnable check) {
+        try {
+            check.run();
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testFileTypesAreAcceptedWithoutRegardToCase() {
+        String[] fileTypes = {"JPG", "JPEG", "MP4", "3GP", "3G2", "MOV", "jpg", "Jpeg", "mp4", "3gp", "3g2", "mov"};
+        for (int i = 0; i < fileTypes.length; i++) {
+            RequestValidator.requireFileType(fileTypes[i]);
+        }
+    }
+
+    public void testUnknownFileTypesAreRejected() {
+        String[] fileTypes = {"GIF", "PNG", "AVI", "", " JPG", "JPG "};
+        for (int i = 0; i < fileTypes.length; i++) {
+            final String fileType = fileTypes[i];
+            assertRejected(new Runnable() {
+                public void run() {
+                    RequestValidator.requireFileType(fileType);
+                }
+            });
+        }
+
+        assertRejected(new Runnable() {
+            public void run() {
+                RequestValidator.requireFileType(null);
+            }
+        });
+    }
+
+    public void testSectionIDs() {
+        String[] sectionIDs = {"header", "footer", "frontpage", "details", "entry", "comment", "result", "HEADER", "Entry"};
+        for (int i = 0; i < sectionIDs.length; i++) {
+            RequestValidator.requireSectionID(sectionIDs[i]);
+        }
+
+        String[] badSectionIDs = {"sidebar", "", "front page", null};
+        for (int i = 0; i < badSectionIDs.length; i++) {
+            final String sectionID = badSectionIDs[i];
+            assertRejected(new Runnable() {
+                public void run() {
+                    RequestValidator.requireSectionID(sectionID);
+                }
+            });
+        }
+    }
+
+    public void testApprovalTypes() {
+        String[] approvalTypes = {"C", "P", "c", "p", ""};
+        for (int i = 0; i < approvalTypes.length; i++) {
+            RequestValidator.requireApprovalType(approvalTypes[i]);
+        }
+
+        String[] badApprovalTypes = {"A", "CP", " ", null};
+        for (int i = 0; i < badApprovalTypes.length; i++) {
+            final String approvalType = badApprovalTypes[i];
+            assertRejected(new Runnable() {
+                public void run() {
+                    RequestValidator.requireApprovalType(approvalType);
+                }
+            });
+        }
+    }
+
+    public void testAllowComments() {
+        String[] flags = {"Y", "N", "y", "n", ""};
+        for (int i = 0; i < flags.length; i++) {
+            RequestValidator.requireAllowComments(flags[i]);
+        }
+
+        String[] badFlags = {"yes", "T", "1", " ", null};
+        for (int i = 0; i < badFlags.length; i++) {
+            final String allowComments = badFlags[i];
+            assertRejected(new Runnable() {
+                public void run() {
+                    RequestValidator.requireAllowComments(allowComments);
+                }
+            });
+        }
+    }
+
+    public void testRequiredStrings() {
+        RequestValidator.requireString("Title", "");
+        RequestValidator.requireNonBlank("Domain", "moblog");
+        RequestValidator.requireID("MoblogID", Integer.valueOf(0));
+
+        String[] blankValues = {null, "", " ", "\t\n"};
+        for (int i = 0; i < blankValues.length; i++) {
+            final String value = blankValues[i];
+            assertRejected(new Runnable() {
+                public void run() {
+                    RequestValidator.requireNonBlank("Domain", value);
+                }
+            });
+        }
+
+        assertRejected(new Runnable() {
+            public void run() {
+                RequestValidator.requireString("Title", null);
+            }
+        });
+        assertRejected(new Runnable() {
+            public void run() {
+                RequestValidator.requireID("MoblogID", null);
+            }
+        });
+    }
+
+    public void testJPEGIsAcceptedOnlyWithStartOfImageMarker() throws Exception {
+        RequestValidator.requireMedia(writeMedia(JPEG_HEADER), "JPG");
+        RequestValidator.requireMedia(writeMedia(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF}), "jpeg");
+
+        byte[][] badContents = {
+                new byte[]{(byte) 0xFF, (byte) 0xD8},
+                new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'},
+                movieHeader("ftyp")
+        };
+        for (int i = 0; i < badContents.length; i++) {
+            final File file = writeMedia(badContents[i]);
+            assertRejected(new Runnable() {
+                public void run() {
+                    RequestValidator.requireMedia(file, "JPG");
+                }
+            });
+        }
+    }
+
+    public void testMoviesAreAcceptedOnlyWithKnownAtom() throws Exception {
+        String[] fileTypes = {"MP4", "MOV", "3GP", "3G2"};
+        String[] atoms = {"ftyp", "moov", "mdat", "wide", "free", "skip", "pnot"};
+        for (int i = 0; i < fileTypes.length; i++) {
+            for (int j = 0; j < atoms.length; j++) {
+                RequestValidator.requireMedia(writeMedia(movieHeader(atoms[j])), fileTypes[i]);
+            }
+        }
+
+        byte[] truncated = new byte[7];
+        System.arraycopy(movieHeader("ftyp"), 0, truncated, 0, truncated.length);
+        byte[][] badContents = {movieHeader("FTYP"), movieHeader("junk"), truncated, JPEG_HEADER};
+        for (int i = 0; i < fileTypes.length; i++) {
+            for (int j = 0; j < badContents.length; j++) {
+                final File file = writeMedia(badContents[j]);
+                final String fileType = fileTypes[i];
+                assertRejected(new Runnable() {
+                    public void run() {
+                        RequestValidator.requireMedia(file, fileType);
+                    }
+                });
+            }
+        }
+    }
+
+    public void testMissingOrEmptyMediaIsRejected() throws Exception {
+        final File empty = writeMedia(new byte[0]);
+        assertRejected(new Runnable() {
+            public void run() {
+                RequestValidator.requireMedia(empty, "JPG");
+            }
+        });
+
+        final File missing = new File(mediaFile.getParentFile(), mediaFile.getName() + ".missing");
+        assertRejected(new Runnable() {
+            public void run() {
+                RequestValidator.requireMedia(missing, "MP4");
+            }
+        });
+
+        final File directory = mediaFile.getParentFile();
+        assertRejected(new Runnable() {
+            public void run() {
+                RequestValidator.requireMedia(directory, "MP4");
+            }
+        });
+
+        assertRejected(new Runnable() {
+            public void run() {
+                RequestValidator.requireMedia(null, "JPG");
+            }
+        });
+    }
+
+    public void testInvalidRequestsFailBeforeAnyCall() throws Exception {
+        final Vector calls = new Vector();
+        XmlRpcTransport transport = new XmlRpcTransport() {
+            public Object execute(String methodName, Vector parameters, CallOptions options) throws Exception {
+                calls.add(methodName);
+                return TextAmerica4J.OK;
+            }
+
+            public Object execute(String methodName, Vector parameters) throws Exception {
+                return execute(methodName, parameters, CallOptions.DEFAULT);
+            }
+        };
+        TextAmerica4J textAmerica4J = new TextAmerica4J("key", "login", "password", transport);
+
+        try {
+            textAmerica4J.entryUpdate(1, 0, "Title", "Text", 0, writeMedia(movieHeader("ftyp")), "JPG");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            textAmerica4J.entryUpdate(1, 0, "Title", "Text", 0, writeMedia(JPEG_HEADER), "GIF");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        assertEquals(0, calls.size());
+
+        textAmerica4J.entryUpdate(1, 0, "Title", "Text", 0, writeMedia(JPEG_HEADER), "JPG");
+        assertEquals(1, calls.size());
+    }
+}
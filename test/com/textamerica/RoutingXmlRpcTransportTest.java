@@ -0,0 +1,287 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests of endpoint selection, ejection and failover in {@link RoutingXmlRpcTransport}, against local stand-ins and
+ * scripted endpoints
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class RoutingXmlRpcTransportTest extends StandInTestCase {
+
+    private static final int THREADS = 8;
+
+    public void testStoppedEndpointIsEjectedAndCallsFailOver() throws Exception {
+        StandInServer first = startStandIn(StandInServer.LatencyDistribution.fixed(20), 0);
+        StandInServer second = startStandIn(StandInServer.LatencyDistribution.fixed(20), 0);
+        RoutingXmlRpcTransport transport = new RoutingXmlRpcTransport(new URL[]{
+                new URL("http://localhost:" + findFreePort() + "/"), new URL(first.getURL()), new URL(second.getURL())});
+        final TextAmerica4J textAmerica4J = new TextAmerica4J("key", "login", "password", transport);
+
+        final List failures = Collections.synchronizedList(new ArrayList());
+        runThreads(new Runnable() {
+            public void run() {
+                try {
+                    for (int i = 0; i < 5; i++) {
+                        assertEquals(3, textAmerica4J.getMyMoblogs().size());
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }
+        });
+
+        assertEquals("Failures: " + failures, 0, failures.size());
+        assertFalse(transport.isHealthy(0));
+        assertTrue(transport.isHealthy(1));
+        assertTrue(transport.isHealthy(2));
+        assertTrue(transport.getLatency(1) > 0);
+        assertTrue(transport.getLatency(2) > 0);
+    }
+
+    public void testConnectTimeoutFailsOver() throws Exception {
+        ScriptedEndpoint unreachable = new ScriptedEndpoint();
+        unreachable.failure = new ConnectTimeoutException("Connect timed out");
+        ScriptedEndpoint working = new ScriptedEndpoint();
+        RoutingXmlRpcTransport transport = new RoutingXmlRpcTransport(
+                new XmlRpcTransport[]{unreachable, working}, 1, 60000);
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(TextAmerica4J.OK, transport.execute("test", new Vector()));
+        }
+
+        assertEquals(1, unreachable.calls);
+        assertEquals(4, working.calls);
+        assertFalse(transport.isHealthy(0));
+    }
+
+    public void testUnknownLatencyIsScoredNeutrally() throws Exception {
+        ScriptedEndpoint known = new ScriptedEndpoint();
+        ScriptedEndpoint unknown = new ScriptedEndpoint();
+        final RoutingXmlRpcTransport transport = new RoutingXmlRpcTransport(new XmlRpcTransport[]{known, unknown});
+
+        known.delay = 20;
+        transport.execute("test", new Vector());
+        assertTrue(transport.getLatency(0) > 0);
+
+        // Every call is held until all have been routed, so no latency is learned in the meantime
+        CountDownLatch gate = new CountDownLatch(1);
+        known.gate = gate;
+        unknown.gate = gate;
+        Thread[] threads = startCalls(transport, THREADS);
+        int toKnown;
+        int toUnknown;
+        try {
+            awaitOutstanding(transport, THREADS);
+            toKnown = transport.getOutstandingCount(0);
+            toUnknown = transport.getOutstandingCount(1);
+        } finally {
+            gate.countDown();
+            joinAll(threads);
+        }
+
+        assertTrue("Calls to known/unknown: " + toKnown + "/" + toUnknown, Math.abs(toKnown - toUnknown) <= 1);
+    }
+
+    public void testEjectedEndpointGetsSingleProbe() throws Exception {
+        ScriptedEndpoint recovering = new ScriptedEndpoint();
+        recovering.failure = new ConnectException("Connection refused");
+        ScriptedEndpoint working = new ScriptedEndpoint();
+        RoutingXmlRpcTransport transport = new RoutingXmlRpcTransport(
+                new XmlRpcTransport[]{recovering, working}, 1, 100);
+
+        assertEquals(TextAmerica4J.OK, transport.execute("test", new Vector()));
+        assertFalse(transport.isHealthy(0));
+        assertEquals(1, recovering.calls);
+
+        Thread.sleep(150);
+        recovering.failure = null;
+        CountDownLatch gate = new CountDownLatch(1);
+        recovering.gate = gate;
+        working.gate = gate;
+        Thread[] threads = startCalls(transport, THREADS);
+        try {
+            awaitOutstanding(transport, THREADS);
+            assertEquals(1, transport.getOutstandingCount(0));
+        } finally {
+            gate.countDown();
+            joinAll(threads);
+        }
+
+        assertEquals(2, recovering.calls);
+        assertTrue(transport.isHealthy(0));
+    }
+
+    public void testReadTimeoutNeitherFailsNorRestoresEndpoint() throws Exception {
+        ScriptedEndpoint endpoint = new ScriptedEndpoint();
+        RoutingXmlRpcTransport transport = new RoutingXmlRpcTransport(new XmlRpcTransport[]{endpoint}, 2, 10000);
+
+        endpoint.failure = new IOException("Connection reset");
+        assertFails(transport);
+        endpoint.failure = new SocketTimeoutException("Read timed out");
+        assertFails(transport);
+        assertTrue(transport.isHealthy(0));
+
+        // The timeout did not clear the first failure, so a second one ejects the endpoint
+        endpoint.failure = new IOException("Connection reset");
+        assertFails(transport);
+        assertFalse(transport.isHealthy(0));
+    }
+
+    public void testProbeThatTimesOutIsEjectedAgain() throws Exception {
+        ScriptedEndpoint endpoint = new ScriptedEndpoint();
+        RoutingXmlRpcTransport transport = new RoutingXmlRpcTransport(new XmlRpcTransport[]{endpoint}, 1, 100);
+
+        endpoint.failure = new IOException("Connection reset");
+        assertFails(transport);
+        assertFalse(transport.isHealthy(0));
+
+        Thread.sleep(150);
+        endpoint.failure = new SocketTimeoutException("Read timed out");
+        assertFails(transport);
+        assertFalse(transport.isHealthy(0));
+
+        Thread.sleep(150);
+        endpoint.failure = null;
+        assertEquals(TextAmerica4J.OK, transport.execute("test", new Vector()));
+        assertTrue(transport.isHealthy(0));
+    }
+
+    private static void assertFails(RoutingXmlRpcTransport transport) throws Exception {
+        try {
+            transport.execute("test", new Vector());
+            fail("Call succeeded");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private static Thread[] startCalls(final RoutingXmlRpcTransport transport, int count) {
+        Thread[] threads = new Thread[count];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        transport.execute("test", new Vector());
+                    } catch (Exception e) {
+                        // Checked through the endpoints' state
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        return threads;
+    }
+
+    private static void awaitOutstanding(RoutingXmlRpcTransport transport, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline) {
+            int outstanding = 0;
+            for (int i = 0; i < transport.getEndpointCount(); i++) {
+                outstanding += transport.getOutstandingCount(i);
+            }
+            if (outstanding == count) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+
+        fail("Calls were not routed in time");
+    }
+
+    private static void joinAll(Thread[] threads) throws InterruptedException {
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+    }
+
+    private static void runThreads(Runnable task) throws InterruptedException {
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(task);
+            threads[i].start();
+        }
+        joinAll(threads);
+    }
+
+    /**
+     * Endpoint that answers "OK" after an optional delay or gate, or fails with a set exception
+     */
+    private static class ScriptedEndpoint implements XmlRpcTransport {
+
+        volatile IOException failure;
+        volatile long delay;
+        volatile CountDownLatch gate;
+        int calls;
+
+        public Object execute(String methodName, Vector parameters, CallOptions options) throws Exception {
+            synchronized (this) {
+                calls++;
+            }
+
+            IOException exception = failure;
+            if (exception != null) {
+                throw exception;
+            }
+
+            CountDownLatch callGate = gate;
+            if (callGate != null) {
+                callGate.await();
+            }
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+
+            return TextAmerica4J.OK;
+        }
+
+        public Object execute(String methodName, Vector parameters) throws Exception {
+            return execute(methodName, parameters, CallOptions.DEFAULT);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Base class for tests that call local {@link StandInServer}s, which are shut down after each test
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public abstract class StandInTestCase extends TestCase {
+
+    private final List servers = new ArrayList();
+
+    /**
+     * Start a stand-in server on a free port
+     *
+     * @param latencyDistribution Distribution of the latency added to each call
+     * @param faultRate           Fraction of calls, from 0 to 1, that fail with a fault
+     * @return Running server
+     * @throws IOException If no port is free
+     */
+    protected StandInServer startStandIn(StandInServer.LatencyDistribution latencyDistribution, double faultRate) throws IOException {
+        StandInServer server = new StandInServer(findFreePort(), latencyDistribution, faultRate, 0, servers.size() + 1);
+        server.start();
+        servers.add(server);
+
+        return server;
+    }
+
+    /**
+     * @return Port with nothing listening on it
+     * @throws IOException If no port is free
+     */
+    protected static int findFreePort() throws IOException {
+        ServerSocket serverSocket = new ServerSocket(0);
+        try {
+            return serverSocket.getLocalPort();
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    protected void tearDown() throws Exception {
+        for (int i = 0; i < servers.size(); i++) {
+            ((StandInServer) servers.get(i)).shutdown();
+        }
+        servers.clear();
+
+        super.tearDown();
+    }
+}
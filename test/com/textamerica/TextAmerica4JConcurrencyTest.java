@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Stress tests of one shared {@link TextAmerica4J} instance called by many threads
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class TextAmerica4JConcurrencyTest extends StandInTestCase {
+
+    private static final int THREADS = 16;
+    private static final int CALLS_PER_THREAD = 10;
+    private static final long LATENCY = 20;
+
+    public void testSharedInstanceCallsInParallel() throws Exception {
+        StandInServer server = startStandIn(StandInServer.LatencyDistribution.fixed(LATENCY), 0);
+        final TextAmerica4J textAmerica4J = new TextAmerica4J("key", "login", "password",
+                new HttpXmlRpcTransport(new URL(server.getURL())));
+        textAmerica4J.getMyMoblogs();
+
+        final List failures = Collections.synchronizedList(new ArrayList());
+        long elapsed = runThreads(new Runnable() {
+            public void run() {
+                try {
+                    for (int i = 0; i < CALLS_PER_THREAD; i++) {
+                        switch (i % 3) {
+                            case 0:
+                                assertEquals(3, textAmerica4J.getMyMoblogs().size());
+                                break;
+                            case 1:
+                                assertEquals(TextAmerica4J.OK, textAmerica4J.addKeywords(i + 1, "keyword"));
+                                break;
+                            default:
+                                assertEquals(30, textAmerica4J.getCommunityMoblogs(null).size());
+                        }
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }
+        });
+
+        assertEquals("Failures: " + failures, 0, failures.size());
+
+        long serialized = THREADS * CALLS_PER_THREAD * LATENCY;
+        assertTrue("Calls were serialized: " + elapsed + " ms", elapsed < serialized / 2);
+    }
+
+    public void testInstancesAndViewsKeepTheirOwnCredentials() throws Exception {
+        // Echoes the credentials of each call, so a call made with another thread's credentials is detected
+        final XmlRpcTransport echo = new XmlRpcTransport() {
+            public Object execute(String methodName, Vector parameters, CallOptions options) {
+                return parameters.get(0) + "/" + parameters.get(1) + "/" + parameters.get(2);
+            }
+
+            public Object execute(String methodName, Vector parameters) {
+                return execute(methodName, parameters, CallOptions.DEFAULT);
+            }
+        };
+
+        final List failures = Collections.synchronizedList(new ArrayList());
+        final int[] next = {0};
+        runThreads(new Runnable() {
+            public void run() {
+                int thread;
+                synchronized (next) {
+                    thread = next[0]++;
+                }
+
+                TextAmerica4J textAmerica4J = new TextAmerica4J("key" + thread, "login" + thread, "password" + thread, echo);
+                TextAmerica4J view = textAmerica4J.withCallOptions(CallOptions.DEFAULT.withTimeout(1000 + thread));
+                String expected = "key" + thread + "/login" + thread + "/password" + thread;
+                try {
+                    for (int i = 0; i < 1000; i++) {
+                        assertEquals(expected, textAmerica4J.addKeywords(1, "keyword"));
+                        assertEquals(expected, view.addKeywords(1, "keyword"));
+                    }
+                    assertEquals(1000 + thread, view.getCallOptions().getTimeout());
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }
+        });
+
+        assertEquals("Failures: " + failures, 0, failures.size());
+    }
+
+    /**
+     * Run a task on {@link #THREADS} threads, started together
+     *
+     * @return Milliseconds until all threads finished
+     */
+    private static long runThreads(final Runnable task) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    task.run();
+                }
+            });
+            threads[i].start();
+        }
+
+        long started = System.currentTimeMillis();
+        start.countDown();
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+
+        return System.currentTimeMillis() - started;
+    }
+}
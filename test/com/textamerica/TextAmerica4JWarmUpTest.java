@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Vector;
+
+/**
+ * Tests of {@link TextAmerica4J#warmUp()}
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class TextAmerica4JWarmUpTest extends TestCase {
+
+    private ServerSocket serverSocket;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        serverSocket = new ServerSocket(0);
+    }
+
+    protected void tearDown() throws Exception {
+        serverSocket.close();
+
+        super.tearDown();
+    }
+
+    private void assertNoConnection() throws Exception {
+        serverSocket.setSoTimeout(200);
+        try {
+            Socket socket = serverSocket.accept();
+            socket.close();
+            fail("Expected no connection");
+        } catch (SocketTimeoutException e) {
+            // expected
+        }
+    }
+
+    public void testConstructionMakesNoConnectionAndWarmUpConnects() throws Exception {
+        URL url = new URL("http://127.0.0.1:" + serverSocket.getLocalPort() + "/xmlrpc");
+        final TextAmerica4J textAmerica4J = new TextAmerica4J("key", "login", "password", new HttpXmlRpcTransport(url))
+                .withCallOptions(CallOptions.DEFAULT.withTimeout(5000))
+                .withCache(new InProcessMoblogCache(60000, 10));
+
+        assertNoConnection();
+
+        final Throwable[] failure = new Throwable[1];
+        Thread warmUp = new Thread() {
+            public void run() {
+                try {
+                    textAmerica4J.warmUp();
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+            }
+        };
+        warmUp.start();
+
+        serverSocket.setSoTimeout(5000);
+        Socket socket = serverSocket.accept();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+            assertEquals("HEAD /xmlrpc HTTP/1.1", reader.readLine());
+            String line;
+            while ((line = reader.readLine()) != null && line.length() > 0) {
+                // Skip the request headers
+            }
+
+            OutputStream out = socket.getOutputStream();
+            out.write("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+
+            warmUp.join(5000);
+        } finally {
+            socket.close();
+        }
+
+        assertFalse(warmUp.isAlive());
+        assertNull(failure[0]);
+    }
+
+    public void testWarmUpMakesNoCallOnPlainTransport() throws Exception {
+        final Vector calls = new Vector();
+        XmlRpcTransport transport = new XmlRpcTransport() {
+            public Object execute(String methodName, Vector parameters, CallOptions options) throws Exception {
+                calls.add(methodName);
+                return TextAmerica4J.OK;
+            }
+
+            public Object execute(String methodName, Vector parameters) throws Exception {
+                return execute(methodName, parameters, CallOptions.DEFAULT);
+            }
+        };
+
+        new TextAmerica4J("key", "login", "password", transport).warmUp();
+
+        assertEquals(0, calls.size());
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Tests of {@link TieredMoblogCache} with two nodes sharing one backend, and of the read-through in
+ * {@link TextAmerica4J}
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class TieredMoblogCacheTest extends TestCase {
+
+    private static final long TIME_TO_LIVE = 60 * 1000;
+
+    private InProcessMoblogCache shared;
+    private TieredMoblogCache nodeA;
+    private TieredMoblogCache nodeB;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        shared = new InProcessMoblogCache(TIME_TO_LIVE, 100);
+        nodeA = new TieredMoblogCache(new InProcessMoblogCache(TIME_TO_LIVE, 100), shared);
+        nodeB = new TieredMoblogCache(new OffHeapMoblogCache(TIME_TO_LIVE, 1024 * 1024), shared);
+    }
+
+    public void testInvalidationOnOneNodeEvictsLocalCopiesOnOthers() {
+        final List invalidations = new ArrayList();
+        nodeB.addInvalidationListener(new InvalidationListener() {
+            public void invalidated(String group, String key) {
+                invalidations.add(group + "/" + key);
+            }
+        });
+
+        nodeA.put(MoblogCache.MY_MOBLOGS, "login", MoblogCacheTest.createListing(3));
+        assertEquals(MoblogCacheTest.createListing(3), nodeB.get(MoblogCache.MY_MOBLOGS, "login"));
+
+        // Node B now serves its local copy, even once the shared cache drops the listing without telling anyone
+        shared.evict(MoblogCache.MY_MOBLOGS, "login");
+        assertEquals(MoblogCacheTest.createListing(3), nodeB.get(MoblogCache.MY_MOBLOGS, "login"));
+
+        nodeA.invalidate(MoblogCache.MY_MOBLOGS, "login");
+        assertNull(nodeA.get(MoblogCache.MY_MOBLOGS, "login"));
+        assertNull(nodeB.get(MoblogCache.MY_MOBLOGS, "login"));
+
+        List expected = new ArrayList();
+        expected.add(MoblogCache.MY_MOBLOGS + "/login");
+        assertEquals(expected, invalidations);
+    }
+
+    public void testPutIsDroppedOnAllTiersAfterInvalidationOnAnotherNode() {
+        long generation = nodeA.getGeneration(MoblogCache.COMMUNITY_MOBLOGS, "");
+        nodeB.invalidate(MoblogCache.COMMUNITY_MOBLOGS, null);
+
+        assertFalse(nodeA.put(MoblogCache.COMMUNITY_MOBLOGS, "", MoblogCacheTest.createListing(30), generation));
+        assertNull(nodeA.get(MoblogCache.COMMUNITY_MOBLOGS, ""));
+        assertNull(shared.get(MoblogCache.COMMUNITY_MOBLOGS, ""));
+    }
+
+    public void testReadThroughDoesNotOverwriteConcurrentInvalidation() throws Exception {
+        final int[] fetches = {0};
+        final TextAmerica4J[] otherNode = new TextAmerica4J[1];
+        XmlRpcTransport transport = new XmlRpcTransport() {
+            public Object execute(String methodName, Vector parameters, CallOptions options) throws Exception {
+                if (!TextAmerica4J.TA_MOBLOG_GETMYMOBLOGS.equals(methodName)) {
+                    return "1";
+                }
+
+                // The first listing is read before a title changes on the other node, and arrives after it
+                if (++fetches[0] == 1) {
+                    otherNode[0].changeTitle(1, "Changed");
+                }
+
+                return MoblogCacheTest.createListing(3);
+            }
+
+            public Object execute(String methodName, Vector parameters) throws Exception {
+                return execute(methodName, parameters, CallOptions.DEFAULT);
+            }
+        };
+
+        TextAmerica4J textAmerica4J = new TextAmerica4J("key", "login", "password", transport);
+        TextAmerica4J cachedA = textAmerica4J.withCache(nodeA);
+        otherNode[0] = textAmerica4J.withCache(nodeB);
+
+        cachedA.getMyMoblogs();
+        assertNull(nodeA.get(MoblogCache.MY_MOBLOGS, "login"));
+
+        cachedA.getMyMoblogs();
+        cachedA.getMyMoblogs();
+        assertEquals(2, fetches[0]);
+    }
+}
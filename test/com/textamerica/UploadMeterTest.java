@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests of the accounting done by {@link UploadMeter}
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class UploadMeterTest extends TestCase {
+
+    public void testInputIsChargedForBytesActuallyRead() throws Exception {
+        final List charged = new ArrayList();
+        TokenBucket bandwidthLimit = new TokenBucket(1e12, Long.MAX_VALUE) {
+            public boolean acquire(long permits, long deadline) {
+                charged.add(new Long(permits));
+                return true;
+            }
+        };
+
+        UploadStatistics uploadStatistics = new UploadStatistics();
+        UploadMeter uploadMeter = new UploadMeter("test", CallOptions.NO_DEADLINE, 100, CallOptions.DEFAULT,
+                bandwidthLimit, uploadStatistics);
+
+        // Returns at most 10 bytes per read, far fewer than a piece
+        InputStream shortReads = new ByteArrayInputStream(new byte[100]) {
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 10));
+            }
+        };
+
+        InputStream in = new UploadMeter.MeteredInputStream(shortReads, uploadMeter);
+        byte[] buffer = new byte[UploadMeter.PIECE_SIZE];
+        while (in.read(buffer, 0, buffer.length) != -1) {
+            // Drain
+        }
+
+        long total = 0;
+        for (int i = 0; i < charged.size(); i++) {
+            long permits = ((Long) charged.get(i)).longValue();
+            assertEquals(10, permits);
+            total += permits;
+        }
+        assertEquals(100, total);
+        assertEquals(1, uploadStatistics.getUploads());
+        assertEquals(100, uploadStatistics.getBytesSent());
+    }
+
+    public void testIncompleteBodiesAreNotCounted() throws Exception {
+        UploadStatistics uploadStatistics = new UploadStatistics();
+        UploadMeter uploadMeter = new UploadMeter("test", CallOptions.NO_DEADLINE, 100, CallOptions.DEFAULT, null,
+                uploadStatistics);
+
+        // Returns 50 bytes, then fails as a reset connection would
+        InputStream failing = new InputStream() {
+            private int remaining = 50;
+
+            public int read() throws IOException {
+                if (remaining == 0) {
+                    throw new IOException("Connection reset");
+                }
+                remaining--;
+                return 0;
+            }
+        };
+
+        InputStream in = new UploadMeter.MeteredInputStream(failing, uploadMeter);
+        byte[] buffer = new byte[UploadMeter.PIECE_SIZE];
+        try {
+            while (in.read(buffer, 0, buffer.length) != -1) {
+                // Drain
+            }
+            fail("Read did not fail");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        assertEquals(0, uploadStatistics.getUploads());
+        assertEquals(0, uploadStatistics.getBytesSent());
+        assertEquals(0.0, uploadStatistics.getUploadBytesPerSecond(), 0.0);
+    }
+}
@@ -0,0 +1,245 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import junit.framework.TestCase;
+import org.apache.xmlrpc.XmlRpcException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Vector;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests of the retries and acknowledgements of {@link UploadSpool}
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class UploadSpoolTest extends TestCase {
+
+    private File directory;
+    private File image;
+    private ScriptedTransport transport;
+    private LinkedBlockingQueue results;
+    private UploadSpool spool;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        directory = File.createTempFile("textamerica4j", ".spool");
+        directory.delete();
+        image = File.createTempFile("textamerica4j", ".jpg");
+        FileOutputStream out = new FileOutputStream(image);
+        try {
+            out.write(new byte[]{(byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xe0, 0, 0x10});
+        } finally {
+            out.close();
+        }
+
+        transport = new ScriptedTransport();
+        results = new LinkedBlockingQueue();
+    }
+
+    protected void tearDown() throws Exception {
+        if (spool != null) {
+            spool.shutdown(1000);
+        }
+        delete(directory);
+        image.delete();
+
+        super.tearDown();
+    }
+
+    public void testTransientFailureIsRetriedUntilUploaded() throws Exception {
+        transport.failure = new IOException("Connection reset");
+        startSpool();
+        long sequence = spool.submit(createEntry());
+
+        transport.awaitAttempts(1);
+        transport.failure = null;
+
+        assertEquals("uploaded " + sequence + " 1000", results.poll(10, TimeUnit.SECONDS));
+        assertEquals(2, transport.attempts);
+        assertEquals(0, spool.getPendingCount());
+
+        // The spool's copy of the media is deleted after the listeners are notified
+        spool.shutdown(1000);
+        assertEquals(0, new File(directory, "media").list().length);
+    }
+
+    public void testFaultFinishesEntry() throws Exception {
+        transport.failure = new XmlRpcException(1, "Unknown moblog");
+        startSpool();
+        long sequence = spool.submit(createEntry());
+
+        assertEquals("failed " + sequence + " Unknown moblog", results.poll(10, TimeUnit.SECONDS));
+        assertEquals(1, transport.attempts);
+        assertEquals(0, spool.getPendingCount());
+    }
+
+    public void testEntryBeingRetriedIsKeptAcrossRestart() throws Exception {
+        transport.failure = new IOException("Connection refused");
+        startSpool();
+        long sequence = spool.submit(createEntry());
+
+        transport.awaitAttempts(1);
+        spool.shutdown(1000);
+        assertNull(results.poll());
+        assertEquals(1, new File(directory, "media").list().length);
+
+        transport.failure = null;
+        startSpool();
+        assertEquals("uploaded " + sequence + " 1000", results.poll(10, TimeUnit.SECONDS));
+    }
+
+    public void testMediaIsKeptUntilAcknowledgementIsSynced() throws Exception {
+        startSpool(500);
+        long sequence = spool.submit(createEntry());
+
+        assertEquals("uploaded " + sequence + " 1000", results.poll(10, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(1, new File(directory, "media").list().length);
+
+        spool.shutdown(1000);
+        assertEquals(0, new File(directory, "media").list().length);
+    }
+
+    public void testZeroFilledSegmentIsTruncatedOnRecovery() throws Exception {
+        directory.mkdirs();
+        File segment = new File(directory, "segment-1.log");
+        FileOutputStream out = new FileOutputStream(segment);
+        try {
+            out.write(new byte[4096]);
+        } finally {
+            out.close();
+        }
+
+        startSpool();
+        assertFalse(segment.exists() && segment.length() > 0);
+
+        long sequence = spool.submit(createEntry());
+        assertEquals("uploaded " + sequence + " 1000", results.poll(10, TimeUnit.SECONDS));
+    }
+
+    public void testEntriesBeforeTornRecordAreRecovered() throws Exception {
+        transport.failure = new IOException("Connection refused");
+        startSpool();
+        long sequence = spool.submit(createEntry());
+        transport.awaitAttempts(1);
+        spool.shutdown(1000);
+
+        // A record header claiming an impossible length, followed by zeros
+        FileOutputStream out = new FileOutputStream(new File(directory, "segment-1.log"), true);
+        try {
+            out.write(new byte[]{(byte) 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff});
+            out.write(new byte[512]);
+        } finally {
+            out.close();
+        }
+
+        transport.failure = null;
+        startSpool();
+        assertEquals("uploaded " + sequence + " 1000", results.poll(10, TimeUnit.SECONDS));
+        assertNull(results.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    private void startSpool() throws IOException {
+        startSpool(0);
+    }
+
+    private void startSpool(long syncInterval) throws IOException {
+        spool = new UploadSpool(directory, new TextAmerica4J("key", "login", "password", transport), 2, null, syncInterval);
+        spool.addSpoolListener(new SpoolListener() {
+            public void entryUploaded(long sequence, EntryUpdate entryUpdate, String entryID) {
+                results.add("uploaded " + sequence + " " + entryID);
+            }
+
+            public void entryFailed(long sequence, EntryUpdate entryUpdate, Exception exception) {
+                results.add("failed " + sequence + " " + exception.getMessage());
+            }
+        });
+        spool.start();
+    }
+
+    private EntryUpdate createEntry() {
+        return new EntryUpdate(1, 0, "Title", "Text", 0, image, "JPG");
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                delete(files[i]);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Transport that fails with a set exception, or returns entry ID 1000
+     */
+    private static class ScriptedTransport implements XmlRpcTransport {
+
+        volatile Exception failure;
+        int attempts;
+
+        public synchronized Object execute(String methodName, Vector parameters, CallOptions options) throws Exception {
+            attempts++;
+            notifyAll();
+
+            Exception exception = failure;
+            if (exception != null) {
+                throw exception;
+            }
+
+            return "1000";
+        }
+
+        public Object execute(String methodName, Vector parameters) throws Exception {
+            return execute(methodName, parameters, CallOptions.DEFAULT);
+        }
+
+        synchronized void awaitAttempts(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (attempts < count && System.currentTimeMillis() < deadline) {
+                wait(100);
+            }
+            assertTrue("Attempts: " + attempts, attempts >= count);
+        }
+    }
+}
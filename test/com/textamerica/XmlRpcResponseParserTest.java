@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import junit.framework.TestCase;
+import org.apache.xmlrpc.XmlRpcException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Tests of the scalar fast path and the SAX fallback of {@link XmlRpcResponseParser}
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class XmlRpcResponseParserTest extends TestCase {
+
+    private static final String DECLARATION = "<?xml version=\"1.0\"?>";
+
+    public void testScalarValues() throws Exception {
+        assertEquals(Integer.valueOf(42), parse(response("<int>42</int>")));
+        assertEquals(Integer.valueOf(-7), parse(response("<i4>-7</i4>")));
+        assertEquals(Integer.valueOf(Integer.MAX_VALUE), parse(response("<int>2147483647</int>")));
+        assertEquals("1001", parse(response("<string>1001</string>")));
+        assertEquals("1001", parse(response("1001")));
+        assertEquals("", parse(response("<string></string>")));
+        assertEquals("", parse(response("")));
+    }
+
+    public void testOKIsSharedConstant() throws Exception {
+        assertSame(TextAmerica4J.OK, parse(response("<string>OK</string>")));
+        assertSame(TextAmerica4J.OK, parse(response("OK")));
+        assertEquals("OKAY", parse(response("OKAY")));
+    }
+
+    public void testWhitespaceBetweenElements() throws Exception {
+        String indented = "\r\n" + DECLARATION + "\n<methodResponse>\n  <params>\n    <param>\n"
+                + "      <value><int> 12 </int></value>\n    </param>\n  </params>\n</methodResponse>\n";
+        assertEquals(Integer.valueOf(12), parse(indented));
+
+        String noDeclaration = "<methodResponse><params><param><value><string> padded </string></value></param>"
+                + "</params></methodResponse>";
+        assertEquals(" padded ", parse(noDeclaration));
+    }
+
+    public void testEntitiesAndNonASCIITextUseParser() throws Exception {
+        assertEquals("a & b", parse(response("<string>a &amp; b</string>")));
+        assertEquals("<OK>", parse(response("&lt;OK&gt;")));
+        assertEquals("caf\u00e9", parse(response("<string>caf\u00e9</string>")));
+    }
+
+    public void testOutOfRangeIntegerIsRejected() {
+        assertMalformed(response("<int>2147483648</int>"));
+        assertMalformed(response("<i4>12a</i4>"));
+    }
+
+    public void testFaultIsThrown() throws Exception {
+        String fault = DECLARATION + "<methodResponse><fault><value><struct>"
+                + "<member><name>faultCode</name><value><int>4</int></value></member>"
+                + "<member><name>faultString</name><value><string>Too many parameters</string></value></member>"
+                + "</struct></value></fault></methodResponse>";
+
+        try {
+            parse(fault);
+            fail("Fault was returned as a value");
+        } catch (XmlRpcException e) {
+            assertEquals(4, e.code);
+            assertEquals("Too many parameters", e.getMessage());
+        }
+    }
+
+    public void testStructsAndArraysUseParser() throws Exception {
+        Object result = parse(response("<struct>"
+                + "<member><name>MoblogID</name><value><i4>7</i4></value></member>"
+                + "<member><name>title</name><value>Moblog 7</value></member>"
+                + "<member><name>values</name><value><array><data>"
+                + "<value><boolean>1</boolean></value>"
+                + "<value><double>1.5</double></value>"
+                + "<value><dateTime.iso8601>19700101T00:00:00</dateTime.iso8601></value>"
+                + "<value><base64>AQID</base64></value>"
+                + "<value><array><data><value><int>1</int></value><value>two</value></data></array></value>"
+                + "</data></array></value></member>"
+                + "</struct>"));
+
+        Hashtable struct = (Hashtable) result;
+        assertEquals(Integer.valueOf(7), struct.get("MoblogID"));
+        assertEquals("Moblog 7", struct.get("title"));
+
+        Vector values = (Vector) struct.get("values");
+        assertEquals(5, values.size());
+        assertEquals(Boolean.TRUE, values.get(0));
+        assertEquals(Double.valueOf(1.5), values.get(1));
+        assertTrue(values.get(2) instanceof Date);
+        assertTrue(Arrays.equals(new byte[]{1, 2, 3}, (byte[]) values.get(3)));
+        assertEquals(new Vector(Arrays.asList(new Object[]{Integer.valueOf(1), "two"})), values.get(4));
+    }
+
+    public void testLargeResponseIsStreamedToParser() throws Exception {
+        StringBuffer text = new StringBuffer();
+        for (int i = 0; i < 1000; i++) {
+            text.append("moblog ").append(i).append(' ');
+        }
+
+        byte[] bytes = response("<string>" + text + "</string>").getBytes("UTF-8");
+        assertEquals(text.toString(), XmlRpcResponseParser.parse(new ByteArrayInputStream(bytes)));
+    }
+
+    public void testMalformedAndTruncatedResponsesAreRejected() {
+        String complete = response("<int>42</int>");
+        for (int length = 1; length < complete.length() - "</methodResponse>".length(); length += 7) {
+            assertMalformed(complete.substring(0, length));
+        }
+
+        assertMalformed("");
+        assertMalformed("not xml");
+        assertMalformed("<html><body>Service unavailable</body></html>");
+        assertMalformed(DECLARATION + "<methodResponse><params></params></methodResponse>");
+        assertMalformed(response("<int>42</string>"));
+    }
+
+    public void testDeclaredEncodingIsHonored() throws Exception {
+        byte[] latin1 = ("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><methodResponse><params><param>"
+                + "<value><string>caf\u00e9</string></value></param></params></methodResponse>").getBytes("ISO-8859-1");
+        assertEquals("caf\u00e9", XmlRpcResponseParser.parse(latin1, latin1.length));
+
+        byte[] utf16 = ("<?xml version=\"1.0\" encoding=\"UTF-16\"?><methodResponse><params><param>"
+                + "<value><string>OK</string></value></param></params></methodResponse>").getBytes("UTF-16");
+        assertEquals(TextAmerica4J.OK, XmlRpcResponseParser.parse(utf16, utf16.length));
+    }
+
+    private static String response(String value) {
+        return DECLARATION + "<methodResponse><params><param><value>" + value
+                + "</value></param></params></methodResponse>";
+    }
+
+    private static Object parse(String response) throws Exception {
+        byte[] bytes = response.getBytes("UTF-8");
+
+        return XmlRpcResponseParser.parse(bytes, bytes.length);
+    }
+
+    private static void assertMalformed(String response) {
+        try {
+            parse(response);
+            fail("Malformed response was parsed: " + response);
+        } catch (IOException e) {
+            // Expected
+        } catch (Exception e) {
+            fail("Malformed response threw " + e);
+        }
+    }
+}
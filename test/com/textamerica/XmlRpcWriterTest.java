@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2005, David A. Czarnecki
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice,
+ *      this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *
+ * Neither the name of the "David A. Czarnecki" and "TextAmerica4J" nor the names of
+ * its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * Products derived from this software may not be called "TextAmerica4J",
+ * nor may "TextAmerica4J" appear in their name, without prior written permission of
+ * David A. Czarnecki.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.textamerica;
+
+import junit.framework.TestCase;
+import org.apache.xmlrpc.XmlRpcException;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Vector;
+
+/**
+ * Tests of the request encoding in {@link XmlRpcWriter}
+ *
+ * @author David Czarnecki
+ * @version $Id$
+ */
+public class XmlRpcWriterTest extends TestCase {
+
+    public void testEscapesMarkupAndKeepsWhitespace() throws Exception {
+        String request = write("a < b & c > d\t\r\n");
+
+        assertTrue(request, request.indexOf("<value>a &lt; b &amp; c &gt; d\t\r\n</value>") != -1);
+    }
+
+    public void testEncodesUTF8() throws Exception {
+        String request = write("caf\u00e9 \u65e5\u672c");
+
+        assertTrue(request, request.startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"));
+        assertTrue(request, request.indexOf("caf\u00e9 \u65e5\u672c") != -1);
+    }
+
+    public void testRejectsControlCharacters() throws Exception {
+        try {
+            write("bell\u0007");
+            fail("Control character was written");
+        } catch (XmlRpcException e) {
+            assertEquals("Invalid character data corresponding to XML entity &#7;", e.getMessage());
+        }
+    }
+
+    private static String write(String value) throws Exception {
+        Vector parameters = new Vector();
+        parameters.add(value);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XmlRpcWriter.write(out, XmlRpcWriter.toSegments("test.method", parameters), new UploadStatistics());
+
+        return out.toString("UTF-8");
+    }
+}